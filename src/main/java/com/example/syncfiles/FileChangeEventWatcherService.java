@@ -3,14 +3,32 @@ package com.example.syncfiles;
 import com.example.syncfiles.notifiers.FilesChangeNotifier;
 import com.example.syncfiles.notifiers.SyncFilesNotifier;
 import com.example.syncfiles.util.Util;
+import com.example.syncfiles.watch.DirectorySnapshots;
+import com.example.syncfiles.watch.EventBatcher;
+import com.example.syncfiles.watch.EventDebouncer;
+import com.example.syncfiles.watch.EventDeduplicator;
+import com.example.syncfiles.watch.MovePairer;
+import com.example.syncfiles.watch.PathFilter;
+import com.example.syncfiles.watch.PollingWatcher;
+import com.example.syncfiles.watch.ResidentHandler;
+import com.example.syncfiles.watch.ScriptRunQueue;
+import com.example.syncfiles.watch.SelfWriteGuard;
+import com.example.syncfiles.watch.SharedWatchService;
+import com.example.syncfiles.watch.VfsRefreshQueue;
+import com.example.syncfiles.watch.WatchIndex;
+import com.example.syncfiles.watch.WatchJournal;
+import com.google.gson.JsonObject;
+import com.intellij.notification.NotificationGroupManager;
+import com.intellij.notification.NotificationType;
 import com.intellij.openapi.Disposable;
 import com.intellij.openapi.application.ApplicationManager;
+import com.intellij.openapi.application.PathManager;
 import com.intellij.openapi.diagnostic.Logger;
 import com.intellij.openapi.project.Project;
 import com.intellij.openapi.util.text.StringUtil;
-import com.intellij.openapi.vfs.LocalFileSystem;
-import com.intellij.openapi.vfs.VirtualFile;
 import com.intellij.util.EnvironmentUtil;
+import com.intellij.util.concurrency.AppExecutorUtil;
+import org.jetbrains.annotations.NotNull;
 
 import java.io.BufferedReader;
 import java.io.File;
@@ -18,11 +36,13 @@ import java.io.IOException;
 import java.io.InputStreamReader;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
 import java.util.*;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListSet;
 import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.stream.Collectors;
 
 import static com.example.syncfiles.util.Util.normalizePath; // 假设 Util.normalizePath 存在且工作正常
@@ -33,23 +53,101 @@ public class FileChangeEventWatcherService implements Disposable {
     private volatile boolean isRunning = false;
     private volatile boolean isConfigLoaded = false; // 新增：标记配置是否已加载
 
-    // 使用 ConcurrentHashMap 保证线程安全
-    private final Map<WatchKey, Path> watchKeyToDirPathMap = new ConcurrentHashMap<>();
+    // 本项目在共享 WatchService 上订阅的目录（按配置路径，不做规范化）；按 dirKey 排序，子树是一段连续区间
+    private final NavigableSet<Path> registeredDirs = new ConcurrentSkipListSet<>(Comparator.comparing(FileChangeEventWatcherService::dirKey));
+    // Walks of new directories and overflow recovery, one at a time and never on the shared watcher thread
+    private final ExecutorService maintenanceExecutor = AppExecutorUtil.createBoundedApplicationPoolExecutor("SyncFiles Watch Maintenance", 1);
+    // Directories with an overflow recovery queued on the maintenance executor
+    private final Set<Path> overflowPending = ConcurrentHashMap.newKeySet();
+    private Set<Path> registeredRecursiveRoots = Set.of(); // 已完整遍历注册的递归根目录，受 synchronized 保护
+    private Set<Path> polledDirs = Set.of();            // 使用轮询后端的目录，受 synchronized 保护
+    private Set<Path> polledRecursiveRoots = Set.of();  // 使用轮询后端的递归根目录，受 synchronized 保护
+    private Set<Path> configDirs = Set.of();            // 配置文件所在目录（最高优先级），受 synchronized 保护
+    private Set<Path> explicitDirs = Set.of();          // 条目中直接列出的目录及递归根目录，受 synchronized 保护
+    // Directories polled only because the shared watch budget was used up when they were registered
+    private final Set<Path> degradedDirs = ConcurrentHashMap.newKeySet();
+    private boolean budgetNotified = false; // one notification per start, 受 synchronized 保护
     private final List<ActiveWatch> activeWatchers = new ArrayList<>(); // 受 synchronized 方法保护
     private final Set<String> watcherPath = new HashSet<>(); // 受 synchronized 方法保护
+    // Immutable snapshot of activeWatchers + watcherPath for lock-free event matching, replaced by rebuildWatchIndex()
+    private volatile WatchIndex<ActiveWatch> watchIndex = WatchIndex.empty();
+
+    // Upper bound of directories this project registers, natively or polled. Kernel watches are additionally capped
+    // for all projects together by the budget of the SharedWatchService; this bounds the walk of a huge tree.
+    private static final int MAX_WATCHED_DIRECTORIES = 4096;
+    // Source path of a "Change Move", for scripts that read the environment rather than argv
+    private static final String MOVED_FROM_ENV = "SYNCFILES_MOVED_FROM";
+
+    // Bounded: at most maxConcurrentScripts processes, at most ScriptRunQueue.MAX_QUEUED waiting runs
+    private final ScriptRunQueue scriptRunQueue;
+    // Bursts (e.g. an IDE save: CREATE + MODIFY + MODIFY) launch the script once per (script, path)
+    private final EventDebouncer debouncer = new EventDebouncer(AppExecutorUtil.getAppScheduledExecutorService(), this::fireWatchedScript);
+    // Entries in batch mode: all events of a burst go to one script run
+    private final EventBatcher batcher = new EventBatcher(AppExecutorUtil.getAppScheduledExecutorService(), this::fireWatchedBatch);
+    // Entries in resident mode: script path -> long-lived handler process
+    private final Map<String, ResidentHandler> residentHandlers = new ConcurrentHashMap<>();
+    // Directories whose entry uses the polling backend (or lie on a network/FUSE file system with "auto")
+    private final PollingWatcher pollingWatcher;
+    // Last known listing of every registered directory, diffed against a fresh one when the kernel queue overflows
+    private final DirectorySnapshots snapshots = new DirectorySnapshots();
+    // Snapshots persisted in the IDE system directory (see watchStateDir), so changes made while the watcher was not running are replayed on start
+    private final WatchJournal journal;
+    // The same change reported by the native watcher and by the VFS listener is dispatched once
+    private final EventDeduplicator deduplicator = new EventDeduplicator();
+    // Events a script causes in its own watched paths are held while it runs and suppressed, so it cannot loop
+    private final SelfWriteGuard selfWrites;
+    // VFS refreshes of event paths, deduplicated and issued as one asynchronous refresh per interval
+    private final VfsRefreshQueue refreshQueue;
+    // Delete + create of the same file (a rename) inside a short window become one "Change Move"
+    private final MovePairer movePairer;
+    // Events dropped by include/exclude globs since the service started
+    private final AtomicLong filteredEventCount = new AtomicLong();
+    // Script path -> its concurrency policy (lane in the script run queue), replaced by updateWatchersFromConfig()
+    private volatile Map<String, ScriptLane> scriptLanes = Map.of();
+    // Kernel watches live in the application-wide SharedWatchService; this project only subscribes to directories
+    private final SharedWatchService.Listener nativeListener = new SharedWatchService.Listener() {
+        @Override
+        public void onEvents(@NotNull Path dir, @NotNull List<WatchEvent<?>> events) {
+            handleNativeEvents(dir, events);
+        }
 
-    private final ExecutorService scriptExecutorService = Executors.newCachedThreadPool();
-    private WatchService nativeWatchService;
-    private Thread watcherThread;
+        @Override
+        public void onDirectoryInvalid(@NotNull Path dir) {
+            registeredDirs.remove(dir);
+            snapshots.forget(dir);
+            journal.forgetDirectory(dir);
+            LOG.info("[" + project.getName() + "] Watch for '" + dir + "' is no longer valid (directory removed or inaccessible).");
+        }
+    };
 
     public FileChangeEventWatcherService(Project project) {
         this.project = project;
+        this.scriptRunQueue = new ScriptRunQueue(project.getName());
+        this.pollingWatcher = new PollingWatcher(project.getName(), AppExecutorUtil.getAppScheduledExecutorService(), this::handlePolledChanges);
+        this.selfWrites = new SelfWriteGuard(project.getName(), AppExecutorUtil.getAppScheduledExecutorService());
+        this.refreshQueue = new VfsRefreshQueue(project.getName(), AppExecutorUtil.getAppScheduledExecutorService());
+        this.journal = new WatchJournal(project.getName(), watchStateDir(project), snapshots);
+        this.movePairer = new MovePairer(snapshots, AppExecutorUtil.getAppScheduledExecutorService(), new MovePairer.Sink() {
+            @Override
+            public void onDelete(@NotNull Path dir, @NotNull Path name) {
+                if (isRunning) handleNativeEvent(dir, EventDebouncer.CHANGE_DEL, name);
+            }
+
+            @Override
+            public void onMove(@NotNull Path from, @NotNull Path to) {
+                if (isRunning) acceptEvent(EventDeduplicator.SOURCE_NATIVE, EventDebouncer.CHANGE_MOVE, to, from);
+            }
+        });
         LOG.info("FileChangeEventWatcherService created for project: " + project.getName());
         project.getMessageBus().connect(this).subscribe(FilesChangeNotifier.TOPIC, new FilesChangeNotifier() {
 
             @Override
-            public void watchFileChanged(String scriptPathToExecute, String eventType, String affectedFilePath) {
-                executeWatchedScript(scriptPathToExecute,eventType,affectedFilePath);
+            public void fileChanged(@NotNull String eventType, @NotNull String affectedFilePath, String movedFrom) {
+                try {
+                    acceptEvent(EventDeduplicator.SOURCE_VFS, eventType, Paths.get(affectedFilePath), movedFrom != null ? Paths.get(movedFrom) : null);
+                } catch (InvalidPathException e) {
+                    LOG.debug("[" + project.getName() + "] Ignoring VFS event on an invalid path: " + e.getMessage());
+                }
             }
         });
     }
@@ -62,21 +160,15 @@ public class FileChangeEventWatcherService implements Disposable {
         }
 
         boolean newlyAdded = watcherPath.add(normalized);
+        if (newlyAdded) rebuildWatchIndex();
         LOG.info("[" + project.getName() + "] Processed addWatcherPath for: '" + normalized +
                 "'. Newly added: " + newlyAdded +
                 ". isConfigLoaded: " + isConfigLoaded +
                 ". isRunning: " + isRunning);
 
         if (newlyAdded && isConfigLoaded) {
-            LOG.info("[" + project.getName() + "] Path '" + normalized + "' newly added and config is loaded. Restarting watcher.");
-            if (isRunning) {
-                stopWatching();
-            }
-            if (!activeWatchers.isEmpty() || !watcherPath.isEmpty()) {
-                startWatching();
-            } else {
-                LOG.info("[" + project.getName() + "] No paths to watch after adding '" + normalized + "'. Watcher remains stopped.");
-            }
+            LOG.info("[" + project.getName() + "] Path '" + normalized + "' newly added and config is loaded. Updating registrations.");
+            reconcileRegistrations();
         } else if (newlyAdded && !isConfigLoaded) {
             LOG.info("[" + project.getName() + "] Path '" + normalized + "' newly added. Config not yet loaded. Watcher will be started by updateWatchersFromConfig.");
             // 初始化时，不在此处启动 watcher，等待 updateWatchersFromConfig
@@ -93,16 +185,12 @@ public class FileChangeEventWatcherService implements Disposable {
         }
 
         boolean removed = watcherPath.remove(normalized);
+        if (removed) rebuildWatchIndex();
         LOG.info("[" + project.getName() + "] Processed removeWatcherPath for: '" + normalized + "'. Actually removed: " + removed);
 
-        if (removed && isRunning) { // 只有在运行时且确实移除了路径才重启
-            LOG.info("[" + project.getName() + "] Path '" + normalized + "' removed and watcher was running. Restarting watcher.");
-            stopWatching();
-            if (!activeWatchers.isEmpty() || !watcherPath.isEmpty()) {
-                startWatching();
-            } else {
-                LOG.info("[" + project.getName() + "] No paths left to watch after removal. Watcher stopped.");
-            }
+        if (removed && isRunning) { // 只有在运行时且确实移除了路径才更新注册
+            LOG.info("[" + project.getName() + "] Path '" + normalized + "' removed and watcher was running. Updating registrations.");
+            reconcileRegistrations();
         }
     }
 
@@ -110,25 +198,22 @@ public class FileChangeEventWatcherService implements Disposable {
         String projectName = project.getName();
         LOG.info("[" + projectName + "] Updating watchers from config.");
 
-        if (isRunning) {
-            LOG.info("[" + projectName + "] Watcher is running, stopping it before updating config.");
-            stopWatching();
-        } else {
-            LOG.info("[" + projectName + "] Watcher is not running. Proceeding with config update.");
-        }
-
+        // The running watcher keeps going: the published WatchIndex still matches the old entries until the new list
+        // is complete, and reconcileRegistrations() then only changes the keys that differ.
         // 清理旧的 activeWatchers
-        // activeWatchers 的访问已通过 synchronized(this) 保护，但 clear() 本身是安全的
-        // 为清晰起见，可以显式同步，但由于整个方法已同步，此处不需要额外同步块。
         activeWatchers.clear();
         LOG.debug("[" + projectName + "] Cleared activeWatchers list.");
 
         SyncFilesConfig config = SyncFilesConfig.getInstance(project);
+        scriptRunQueue.configure(config.getMaxConcurrentScripts(), config.getScriptOverflowPolicy());
         String pythonExecutable = config.getPythonExecutablePath();
 
         if (StringUtil.isEmptyOrSpaces(pythonExecutable)) {
             LOG.warn("[" + projectName + "] Python executable is not configured. File event watching will be disabled.");
             isConfigLoaded = true; // 标记配置已尝试加载
+            syncResidentHandlers(Set.of());
+            rebuildWatchIndex();
+            reconcileRegistrations(); // config files stay watched
             return; // 不启动 watcher
         }
         try {
@@ -136,11 +221,17 @@ public class FileChangeEventWatcherService implements Disposable {
             if (!Files.isRegularFile(pythonPath)) {
                 LOG.warn("[" + projectName + "] Python executable path is invalid or not a file: '" + pythonExecutable + "'. File event watching will be disabled.");
                 isConfigLoaded = true;
+                syncResidentHandlers(Set.of());
+                rebuildWatchIndex();
+                reconcileRegistrations(); // config files stay watched
                 return;
             }
         } catch (InvalidPathException e) {
             LOG.warn("[" + projectName + "] Python executable path format is invalid: '" + pythonExecutable + "'. Error: " + e.getMessage() + ". File event watching will be disabled.");
             isConfigLoaded = true;
+            syncResidentHandlers(Set.of());
+            rebuildWatchIndex();
+            reconcileRegistrations(); // config files stay watched
             return;
         }
 
@@ -153,6 +244,8 @@ public class FileChangeEventWatcherService implements Disposable {
 
 
         String projectBasePath = project.getBasePath();
+        Set<String> residentScripts = new HashSet<>();
+        Map<String, ScriptLane> lanes = new HashMap<>();
 
         for (WatchEntry entry : configuredEntries) {
             String watchedPathInput = Util.isDirectoryAfterMacroExpansion(project, entry.watchedPath);
@@ -228,27 +321,50 @@ public class FileChangeEventWatcherService implements Disposable {
                 continue;
             }
 
+            PathFilter filter;
+            try {
+                filter = PathFilter.compile(entry.includeGlobs, entry.excludeGlobs);
+            } catch (IllegalArgumentException e) {
+                LOG.warn("[" + projectName + "] Invalid include/exclude glob for 'Path to Watch' '" + watchedPathInput +
+                        "': " + e.getMessage() + ". Skipping this watch entry.");
+                continue;
+            }
+
+            String normalizedScript = fullScriptPathToExecute.toString().replace('\\', '/');
+            if (entry.isResidentMode()) {
+                residentScripts.add(normalizedScript);
+            }
+            ScriptLane lane = new ScriptLane(entry.getConcurrencyLimit(), entry.isLatestWins());
+            ScriptLane previousLane = lanes.putIfAbsent(normalizedScript, lane);
+            if (previousLane != null && !previousLane.equals(lane)) {
+                LOG.warn("[" + projectName + "] Script '" + normalizedScript + "' is used by several watch entries with different concurrency settings; " +
+                        "the first entry's setting (" + previousLane + ") applies.");
+            }
             activeWatchers.add(new ActiveWatch(
                     finalNormalizedAbsWatchedPath,
-                    fullScriptPathToExecute.toString().replace('\\', '/'),
+                    normalizedScript,
                     isDirectoryPretended, // True if the configured path itself resolved to an existing directory
-                    pathExists
+                    pathExists,
+                    entry.recursive && isDirectoryPretended,
+                    Math.max(0, entry.debounceMillis),
+                    entry.isBatchMode(),
+                    filter,
+                    entry.backend
             ));
 
-            String typeMsg = pathExists ? (isDirectoryPretended ? " (Existing Directory)" : " (Existing File)") : " (Path currently non-existent)";
+            String typeMsg = pathExists ? (isDirectoryPretended ? (entry.recursive ? " (Existing Directory, recursive)" : " (Existing Directory)") : " (Existing File)") : " (Path currently non-existent)";
             LOG.info("[" + projectName + "] Adding to activeWatchers: '" + finalNormalizedAbsWatchedPath + "'" + typeMsg +
-                    " -> executes '" + fullScriptPathToExecute.toString().replace('\\', '/') + "'");
+                    " -> executes '" + normalizedScript + "'");
         }
 
         isConfigLoaded = true; // Mark that configuration has been loaded (or attempted)
+        scriptLanes = Map.copyOf(lanes);
+        rebuildWatchIndex();
+        syncResidentHandlers(residentScripts);
 
-        // Start watching only if there are active watchers or paths in watcherPath
-        if (!activeWatchers.isEmpty() || !watcherPath.isEmpty()) {
-            LOG.info("[" + projectName + "] Configuration processed. Attempting to start watcher as there are active/watcherPath entries.");
-            startWatching();
-        } else {
-            LOG.info("[" + projectName + "] No active watchers or watcherPath entries to start watching after processing config.");
-        }
+        // Starts the watcher if needed, otherwise only registers/cancels the directories that changed
+        LOG.info("[" + projectName + "] Configuration processed. Applying watch registrations.");
+        reconcileRegistrations();
     }
 
 
@@ -264,453 +380,525 @@ public class FileChangeEventWatcherService implements Disposable {
         }
 
         LOG.info("[" + projectName + "] Attempting to start Native FileChangeEventWatcherService...");
+        registeredDirs.clear();
+        snapshots.clear();
+        registeredRecursiveRoots = Set.of();
+        isRunning = true; // before subscribing, so the first events are not dropped
+        applyRegistrations();
 
-        try {
-            if (nativeWatchService != null) {
-                LOG.warn("[" + projectName + "] Existing nativeWatchService (identity: " + System.identityHashCode(nativeWatchService) + ") found before creating new one. Closing it first.");
-                try {
-                    nativeWatchService.close();
-                } catch (IOException e) {
-                    LOG.error("[" + projectName + "] Error closing pre-existing nativeWatchService: " + e.getMessage(), e);
-                }
-                nativeWatchService = null;
-            }
-            nativeWatchService = FileSystems.getDefault().newWatchService();
-            LOG.info("[" + projectName + "] Native WatchService created (identity: " + System.identityHashCode(nativeWatchService) + ").");
-        } catch (IOException e) {
-            LOG.error("[" + projectName + "] Failed to create native WatchService: " + e.getMessage(), e);
-            nativeWatchService = null;
+        if (registeredDirs.isEmpty()) {
+            LOG.warn("[" + projectName + "] No valid paths could be registered. Watcher will not be started.");
+            isRunning = false; // Reset as nothing is watched
             return;
         }
+        LOG.info("[" + projectName + "] Native FileChangeEventWatcherService started successfully. Watching " + registeredDirs.size() +
+                " directories (" + SharedWatchService.getInstance().getWatchedDirectoryCount() + " watched by the IDE for all projects).");
+        replayMissedChanges();
+    }
 
-        // isRunning is set to true *after* WatchService creation and before thread start
-        // watchKeyToDirPathMap is cleared here to ensure it's fresh for this new WatchService instance
-        watchKeyToDirPathMap.clear();
-        LOG.info("[" + projectName + "] watchKeyToDirPathMap cleared at the beginning of startWatching. Size: " + watchKeyToDirPathMap.size());
-
-        Set<Path> registeredDirectoriesInThisCycle = new HashSet<>(); // Tracks dirs registered in *this* startWatching call
-
-        // --- 1. Register paths from activeWatchers ---
-        LOG.debug("[" + projectName + "] Processing activeWatchers for registration. Count: " + activeWatchers.size());
-        for (ActiveWatch watch : activeWatchers) {
-            Path dirToRegister = null;
-            try {
-                Path pathObj = Paths.get(watch.watchedPath);
-
-                if (watch.pathExists && watch.isDirectoryPretended) {
-                    dirToRegister = pathObj;
-                } else if (watch.pathExists && !watch.isDirectoryPretended) {
-                    dirToRegister = pathObj.getParent();
-                } else if (!watch.pathExists && watch.isDirectoryPretended) {
-                    LOG.warn("[" + projectName + "] ActiveWatch path '" + watch.watchedPath + "' (intended as dir) does not exist. Cannot watch non-existent directory directly.");
-                    continue;
-                } else { // Not exists, file intent
-                    dirToRegister = pathObj.getParent();
-                }
-
-                if (dirToRegister == null) {
-                    LOG.warn("[" + projectName + "] Cannot determine directory for active watch '" + watch.watchedPath + "' (parent is null or path issue). Skipping.");
-                    continue;
-                }
-                if (!Files.exists(dirToRegister) || !Files.isDirectory(dirToRegister)) {
-                    LOG.warn("[" + projectName + "] Directory to register '" + dirToRegister + "' (for active watch '" + watch.watchedPath + "') does not exist or is not a directory. Skipping.");
-                    continue;
-                }
+    /**
+     * Per-project directory for the watch journal in the IDE system directory, keyed by the project location hash.
+     * It must not lie in a watched tree (e.g. {@code .idea}): every append would raise an event that is journaled again.
+     */
+    private static Path watchStateDir(Project project) {
+        try {
+            Path dir = PathManager.getSystemDir().resolve("syncfiles").resolve("watch-state").resolve(project.getLocationHash());
+            Files.createDirectories(dir);
+            return dir;
+        } catch (IOException | InvalidPathException e) {
+            LOG.warn("[" + project.getName() + "] Cannot create the watch state directory, changes made while the IDE is closed will not be replayed: " + e.getMessage());
+            return null;
+        }
+    }
 
-                if (registeredDirectoriesInThisCycle.contains(dirToRegister)) {
-                    LOG.info("[" + projectName + "] Directory '" + dirToRegister + "' (for active watch '" + watch.watchedPath + "') already processed in this startWatching cycle. Skipping duplicate registration.");
-                    continue;
-                }
+    /**
+     * Compares the snapshots persisted by the last session with the directories as they are now and feeds the
+     * differences through the normal pipeline (debounce, batch, filters), then starts a fresh journal.
+     */
+    private void replayMissedChanges() {
+        Map<Path, List<DirectorySnapshots.Change>> missed = journal.catchUp();
+        int replayed = 0;
+        for (Map.Entry<Path, List<DirectorySnapshots.Change>> dir : missed.entrySet()) {
+            for (DirectorySnapshots.Change change : dir.getValue()) {
+                handleNativeEvent(dir.getKey(), change.getEventType(), change.getName());
+                replayed++;
+            }
+        }
+        journal.save();
+        if (replayed > 0) {
+            LOG.info("[" + project.getName() + "] Replayed " + replayed + " changes in " + missed.size() +
+                    " directories made while the watcher was not running.");
+        }
+    }
 
-                WatchKey key = dirToRegister.register(nativeWatchService, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_DELETE, StandardWatchEventKinds.ENTRY_MODIFY);
-                registeredDirectoriesInThisCycle.add(dirToRegister);
-                int keyIdentityHashCode = System.identityHashCode(key);
 
-                LOG.info("[" + projectName + "] Path (from activeWatch) to be stored in map for Key (identity: " + keyIdentityHashCode + "): " +
-                        "toString: '" + dirToRegister.toString() + "', " +
-                        "hashCode: " + dirToRegister.hashCode() + ", " +
-                        "isAbsolute: " + dirToRegister.isAbsolute() + ", " +
-                        "FileSystem: " + dirToRegister.getFileSystem().toString());
-                try {
-                    LOG.info("[" + projectName + "] Path (from activeWatch) to be stored - toRealPath(): '" + dirToRegister.toRealPath().toString() + "'");
-                } catch (IOException e) {
-                    LOG.warn("[" + projectName + "] Path (from activeWatch) to be stored - toRealPath() failed for '" + dirToRegister + "': " + e.getMessage());
-                }
+    /**
+     * Brings the subscriptions at the shared WatchService in line with activeWatchers and watcherPath: directories no
+     * longer needed are unsubscribed, missing directories are subscribed, unchanged ones stay untouched. Starts the
+     * watcher if it is not running, and stops it if nothing is left to watch. Unlike a stop/start cycle this keeps all
+     * unchanged registrations, so no events are lost during reconfiguration.
+     */
+    private synchronized void reconcileRegistrations() {
+        String projectName = project.getName();
+        if (!isRunning) {
+            if (!activeWatchers.isEmpty() || !watcherPath.isEmpty()) {
+                startWatching();
+            } else {
+                LOG.info("[" + projectName + "] Nothing to watch. Watcher remains stopped.");
+            }
+            return;
+        }
+        int dirsBefore = registeredDirs.size();
+        applyRegistrations();
+        LOG.info("[" + projectName + "] Watcher reconfigured in place. Directories: " + dirsBefore + " -> " + registeredDirs.size() + ".");
+        if (registeredDirs.isEmpty()) {
+            LOG.info("[" + projectName + "] No directories left to watch. Stopping watcher.");
+            stopWatching();
+        }
+    }
 
-                Path previousPathForKey = watchKeyToDirPathMap.put(key, dirToRegister);
-                if (previousPathForKey != null) {
-                    LOG.warn("[" + projectName + "] CRITICAL: Replaced existing WatchKey mapping during active watch reg! " +
-                            "Key (identity: " + keyIdentityHashCode + ", valid: " + key.isValid() + ") was for Path: '" + previousPathForKey +
-                            "', now for Path: '" + dirToRegister + "'. Map size: " + watchKeyToDirPathMap.size());
-                } else {
-                    LOG.info("[" + projectName + "] Registered new WatchKey for active watch (identity: " + keyIdentityHashCode +
-                            ", valid: " + key.isValid() + ") for Directory: '" + dirToRegister +
-                            "' (derived from configured path: '" + watch.watchedPath + "'). Map size: " + watchKeyToDirPathMap.size());
+    /** Computes the wanted directories and applies the difference to this project's subscriptions. */
+    private synchronized void applyRegistrations() {
+        String projectName = project.getName();
+        Set<Path> configs = new LinkedHashSet<>();
+        Set<Path> plainDirs = new LinkedHashSet<>();
+        Set<Path> recursiveRoots = new LinkedHashSet<>();
+        Set<Path> polled = new HashSet<>();
+        Set<Path> polledRoots = new HashSet<>();
+        for (ActiveWatch watch : activeWatchers) {
+            Path dir = directoryToRegister(watch);
+            if (dir != null) {
+                (watch.recursive ? recursiveRoots : plainDirs).add(dir);
+                if (usesPolling(watch.backend, dir)) {
+                    (watch.recursive ? polledRoots : polled).add(dir);
                 }
-            } catch (Exception e) {
-                LOG.error("[" + projectName + "] Exception registering active watch '" + watch.watchedPath + "': " + e.getMessage(), e);
             }
         }
+        for (String confPathStr : watcherPath) {
+            Path dir = directoryToRegister(confPathStr);
+            if (dir != null) {
+                configs.add(dir);
+                if (usesPolling(WatchEntry.BACKEND_AUTO, dir)) polled.add(dir);
+            }
+        }
+        plainDirs.addAll(configs);
+        polledDirs = polled;
+        polledRecursiveRoots = polledRoots;
+        configDirs = configs;
+        Set<Path> explicit = new HashSet<>(plainDirs);
+        explicit.addAll(recursiveRoots);
+        explicitDirs = explicit;
+
+        // 1. Unsubscribe directories that no configured path needs any more, or that switch between native and polling
+        int cancelled = 0;
+        Set<Path> walkedRoots = new HashSet<>(registeredRecursiveRoots);
+        for (Path dir : new ArrayList<>(registeredDirs)) {
+            boolean needed = plainDirs.contains(dir) || isBelowAny(dir, recursiveRoots);
+            boolean polledNow = pollingWatcher.isPolled(dir);
+            // a directory degraded to polling for lack of watches stays polled until the watcher restarts
+            if (needed && (shouldPoll(dir) || degradedDirs.contains(dir)) == polledNow) continue;
+            unregisterDirectory(dir);
+            walkedRoots.removeIf(dir::startsWith); // a tree that lost directories is walked again
+            cancelled++;
+        }
 
-        // --- 2. Register paths from watcherPath (e.g., config files) ---
-        LOG.debug("[" + projectName + "] Processing watcherPath for registration. Count: " + watcherPath.size());
-        Set<String> currentWatcherPathCopy = new HashSet<>(watcherPath); // Use copy
-        for (String confPathStr : currentWatcherPathCopy) {
-            Path dirToRegisterForConfig = null;
+        // 2. Register what is missing, by priority: config directories, listed directories and recursive roots, then
+        //    the subtrees (walked only when their root is new), so a short watch budget is spent on the important ones
+        int added = 0;
+        List<Path> byPriority = new ArrayList<>(configs);
+        byPriority.addAll(plainDirs);
+        byPriority.addAll(recursiveRoots);
+        for (Path dir : byPriority) {
             try {
-                Path confPathObj = Paths.get(confPathStr);
-                if (Files.exists(confPathObj) && Files.isDirectory(confPathObj)) {
-                    dirToRegisterForConfig = confPathObj;
-                } else {
-                    dirToRegisterForConfig = confPathObj.getParent();
-                }
+                if (registerDirectory(dir)) added++;
+            } catch (IOException e) {
+                LOG.error("[" + projectName + "] Exception registering directory '" + dir + "': " + e.getMessage(), e);
+            }
+        }
+        for (Path root : recursiveRoots) {
+            if (!walkedRoots.contains(root)) {
+                int registered = registerTree(root, null);
+                added += registered;
+                LOG.info("[" + projectName + "] Registered " + registered + " directories recursively under '" + root + "'" +
+                        (polledRoots.contains(root) ? " (polling)." : "."));
+            }
+        }
+        registeredRecursiveRoots = recursiveRoots;
+        LOG.info("[" + projectName + "] Registrations applied: " + added + " added, " + cancelled + " cancelled, " +
+                registeredDirs.size() + " directories in total, " + pollingWatcher.size() + " of them polled (" +
+                degradedDirs.size() + " for lack of watches).");
+    }
 
-                if (dirToRegisterForConfig == null) {
-                    LOG.warn("[" + projectName + "] Cannot determine directory for watcherPath entry '" + confPathStr + "'. Skipping.");
-                    continue;
-                }
-                if (!Files.exists(dirToRegisterForConfig) || !Files.isDirectory(dirToRegisterForConfig)) {
-                    LOG.warn("[" + projectName + "] Directory to register '" + dirToRegisterForConfig + "' (for watcherPath '" + confPathStr + "') does not exist or is not a directory. Skipping.");
-                    continue;
-                }
+    /** Whether a directory registered for an entry with {@code backend} is polled instead of watched natively. */
+    private static boolean usesPolling(String backend, Path dir) {
+        if (WatchEntry.BACKEND_POLLING.equals(backend)) return true;
+        if (WatchEntry.BACKEND_NATIVE.equals(backend)) return false;
+        return PollingWatcher.isRemoteFileSystem(dir);
+    }
 
-                if (registeredDirectoriesInThisCycle.contains(dirToRegisterForConfig)) {
-                    LOG.info("[" + projectName + "] Directory '" + dirToRegisterForConfig + "' (for watcherPath '" + confPathStr + "') already processed in this startWatching cycle. Skipping.");
-                    continue;
-                }
+    private synchronized boolean shouldPoll(Path dir) {
+        return polledDirs.contains(dir) || isBelowAny(dir, polledRecursiveRoots);
+    }
 
-                WatchKey key = dirToRegisterForConfig.register(nativeWatchService, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_DELETE, StandardWatchEventKinds.ENTRY_MODIFY);
-                registeredDirectoriesInThisCycle.add(dirToRegisterForConfig);
-                int keyIdentityHashCode = System.identityHashCode(key);
+    private synchronized SharedWatchService.Priority priorityOf(Path dir) {
+        if (configDirs.contains(dir)) return SharedWatchService.Priority.CONFIG;
+        if (explicitDirs.contains(dir)) return SharedWatchService.Priority.EXPLICIT;
+        return SharedWatchService.Priority.SUBTREE;
+    }
 
-                LOG.info("[" + projectName + "] Path (from watcherPath) to be stored in map for Key (identity: " + keyIdentityHashCode + "): " +
-                        "toString: '" + dirToRegisterForConfig.toString() + "', " +
-                        "hashCode: " + dirToRegisterForConfig.hashCode() + ", " +
-                        "isAbsolute: " + dirToRegisterForConfig.isAbsolute() + ", " +
-                        "FileSystem: " + dirToRegisterForConfig.getFileSystem().toString());
-                try {
-                    LOG.info("[" + projectName + "] Path (from watcherPath) to be stored - toRealPath(): '" + dirToRegisterForConfig.toRealPath().toString() + "'");
-                } catch (IOException e) {
-                    LOG.warn("[" + projectName + "] Path (from watcherPath) to be stored - toRealPath() failed for '" + dirToRegisterForConfig + "': " + e.getMessage());
-                }
+    private static boolean isBelowAny(Path dir, Set<Path> roots) {
+        for (Path root : roots) {
+            if (dir.startsWith(root)) return true;
+        }
+        return false;
+    }
 
-                Path previousPathForKey = watchKeyToDirPathMap.put(key, dirToRegisterForConfig);
-                if (previousPathForKey != null) {
-                    LOG.warn("[" + projectName + "] CRITICAL: Replaced existing WatchKey mapping during watcherPath reg! " +
-                            "Key (identity: " + keyIdentityHashCode + ", valid: " + key.isValid() + ") was for Path: '" + previousPathForKey +
-                            "', now for Path: '" + dirToRegisterForConfig + "'. Map size: " + watchKeyToDirPathMap.size());
-                } else {
-                    LOG.info("[" + projectName + "] Registered new WatchKey for watcherPath entry (identity: " + keyIdentityHashCode +
-                            ", valid: " + key.isValid() + ") for Directory: '" + dirToRegisterForConfig +
-                            "' (derived from configured path: '" + confPathStr + "'). Map size: " + watchKeyToDirPathMap.size());
-                }
-            } catch (Exception e) {
-                LOG.error("[" + projectName + "] Exception registering watcherPath entry '" + confPathStr + "': " + e.getMessage(), e);
+    /** The directory to register for an active watch: the directory itself, or a file's parent. Null if not watchable. */
+    private Path directoryToRegister(ActiveWatch watch) {
+        String projectName = project.getName();
+        Path dirToRegister;
+        if (watch.isDirectoryPretended) {
+            if (!watch.pathExists) {
+                LOG.warn("[" + projectName + "] ActiveWatch path '" + watch.watchedPath + "' (intended as dir) does not exist. Cannot watch non-existent directory directly.");
+                return null;
             }
+            dirToRegister = watch.watchedPathObj;
+        } else {
+            dirToRegister = watch.watchedPathObj.getParent(); // existing file, or file that may be created later
         }
+        if (dirToRegister == null) {
+            LOG.warn("[" + projectName + "] Cannot determine directory for active watch '" + watch.watchedPath + "' (parent is null or path issue). Skipping.");
+            return null;
+        }
+        if (!Files.isDirectory(dirToRegister)) {
+            LOG.warn("[" + projectName + "] Directory to register '" + dirToRegister + "' (for active watch '" + watch.watchedPath + "') does not exist or is not a directory. Skipping.");
+            return null;
+        }
+        return dirToRegister;
+    }
 
-        isRunning = true; // Set isRunning true *before* starting the thread.
-
-        if (watchKeyToDirPathMap.isEmpty()) {
-            LOG.warn("[" + projectName + "] No valid paths could be registered. Watcher will not be started.");
-            isRunning = false; // Reset as nothing is watched
-            try {
-                if (nativeWatchService != null) {
-                    nativeWatchService.close();
-                    LOG.info("[" + projectName + "] Closed unused WatchService instance (identity: " + System.identityHashCode(nativeWatchService) + ").");
-                }
-            } catch (IOException e) {
-                LOG.warn("["+projectName+"] Error closing unused WatchService: " + e.getMessage(), e);
+    /** The directory to register for a watcherPath entry (config file or directory). Null if not watchable. */
+    private Path directoryToRegister(String confPathStr) {
+        String projectName = project.getName();
+        try {
+            Path confPathObj = Paths.get(confPathStr);
+            Path dirToRegister = Files.isDirectory(confPathObj) ? confPathObj : confPathObj.getParent();
+            if (dirToRegister == null || !Files.isDirectory(dirToRegister)) {
+                LOG.warn("[" + projectName + "] Directory to register '" + dirToRegister + "' (for watcherPath '" + confPathStr + "') does not exist or is not a directory. Skipping.");
+                return null;
             }
-            nativeWatchService = null;
-            return;
+            return dirToRegister;
+        } catch (InvalidPathException e) {
+            LOG.warn("[" + projectName + "] Invalid watcherPath entry '" + confPathStr + "': " + e.getMessage());
+            return null;
         }
+    }
 
-        if (watcherThread != null && watcherThread.isAlive()) {
-            LOG.warn("[" + projectName + "] Previous watcherThread (" + watcherThread.getName() + ", identity: " + System.identityHashCode(watcherThread) +
-                    ") is still alive. Attempting interrupt and join before starting new one.");
-            watcherThread.interrupt();
-            try {
-                watcherThread.join(1000); // Wait a bit
-                if(watcherThread.isAlive()){
-                    LOG.error("[" + projectName + "] Previous watcherThread did not terminate after interrupt and join!");
-                }
-            } catch (InterruptedException e) {
-                Thread.currentThread().interrupt();
-                LOG.warn("[" + projectName + "] Interrupted while joining previous watcher thread.");
+    /**
+     * Handles the events of one watched directory, delivered on the shared watcher thread. {@code dir} is the path
+     * this project subscribed with, so a directory configured under two paths (e.g. through a symlink) is reported
+     * under each of them.
+     */
+    private void handleNativeEvents(Path dir, List<WatchEvent<?>> events) {
+        if (!isRunning) return;
+        String projectName = project.getName();
+        LOG.debug("[" + projectName + "] Received " + events.size() + " events for dir: " + dir);
+
+        for (WatchEvent<?> event : events) {
+            WatchEvent.Kind<?> kind = event.kind();
+            if (kind == StandardWatchEventKinds.OVERFLOW) {
+                scheduleOverflowRecovery(dir);
+                continue;
+            }
+            if (!(event.context() instanceof Path)) {
+                LOG.warn("[" + projectName + "] Event context not Path. Kind: " + kind + ". Context: " + event.context() + ". Skipping.");
+                continue;
+            }
+
+            Path relativeFileName = (Path) event.context();
+            boolean held = kind == StandardWatchEventKinds.ENTRY_DELETE && movePairer.hold(dir, relativeFileName);
+            snapshots.update(dir, relativeFileName);
+            journal.record(dir, relativeFileName);
+            if (held) {
+                continue; // reaches handleNativeEvent later, or pairs with a create as a move
+            }
+            if (kind == StandardWatchEventKinds.ENTRY_CREATE && movePairer.pair(dir, relativeFileName)) {
+                continue;
+            }
+            String eventType = null;
+            if (kind == StandardWatchEventKinds.ENTRY_CREATE) eventType = "Change New";
+            else if (kind == StandardWatchEventKinds.ENTRY_DELETE) eventType = "Change Del";
+            else if (kind == StandardWatchEventKinds.ENTRY_MODIFY) eventType = "Change Mod";
+            if (eventType != null) {
+                handleNativeEvent(dir, eventType, relativeFileName);
             }
         }
+    }
 
-        watcherThread = new Thread(new WatcherRunnable(nativeWatchService, project.getName()), "NativeFileWatcherThread-" + project.getName() + "-" + System.currentTimeMillis());
-        watcherThread.setDaemon(true);
-        LOG.info("[" + projectName + "] Starting new WatcherThread (identity: " + System.identityHashCode(watcherThread) +
-                ") for WatchService (identity: " + System.identityHashCode(nativeWatchService) + ").");
-        watcherThread.start();
+    /** One create/modify/delete in {@code dir}, delivered by the kernel or reconstructed after an overflow. */
+    private void handleNativeEvent(Path dir, String eventType, Path relativeFileName) {
+        String projectName = project.getName();
+        Path absoluteAffectedPath = dir.resolve(relativeFileName).normalize();
+        String affectedPathStr = absoluteAffectedPath.toString().replace('\\', '/');
+        LOG.debug("[" + projectName + "] Native Event: " + eventType + " | Rel: " + relativeFileName + " | Abs: " + affectedPathStr + " | Dir: " + dir);
+        acceptEvent(EventDeduplicator.SOURCE_NATIVE, eventType, absoluteAffectedPath, null);
+
+        if (EventDebouncer.CHANGE_NEW.equals(eventType) && watchIndex.isUnderRecursiveWatch(absoluteAffectedPath)) {
+            maintenanceExecutor.execute(() -> registerNewDirectory(absoluteAffectedPath));
+        } else if (EventDebouncer.CHANGE_DEL.equals(eventType) && registeredDirs.contains(absoluteAffectedPath)) {
+            unregisterTree(absoluteAffectedPath);
+        }
+    }
 
-        LOG.info("[" + projectName + "] Native FileChangeEventWatcherService started successfully. Watching " +
-                watchKeyToDirPathMap.size() + " WatchKeys for " + registeredDirectoriesInThisCycle.size() +
-                " unique directories. Monitored WatchService (identity: " + System.identityHashCode(nativeWatchService) + ").");
+    /**
+     * Registers a directory created below a recursive watch, off the shared watcher thread. Files created inside it
+     * before its key existed produce no native event, so the walk reports them as "Change New" itself.
+     */
+    private void registerNewDirectory(Path dir) {
+        if (!isRunning || !Files.isDirectory(dir, LinkOption.NOFOLLOW_LINKS)) return;
+        List<Path> filesFound = new ArrayList<>();
+        int registered = registerTree(dir, filesFound);
+        LOG.debug("[" + project.getName() + "] New directory '" + dir + "': registered " + registered +
+                " directories, " + filesFound.size() + " files already present.");
+        for (Path file : filesFound) {
+            acceptEvent(EventDeduplicator.SOURCE_NATIVE, EventDebouncer.CHANGE_NEW, file, null);
+        }
     }
 
+    /**
+     * Queues {@link #recoverFromOverflow} on the maintenance executor. On Linux the JDK signals an overflow to every
+     * key at once, so a directory already waiting for recovery is not queued again.
+     */
+    private void scheduleOverflowRecovery(Path dir) {
+        if (!overflowPending.add(dir)) return;
+        maintenanceExecutor.execute(() -> {
+            overflowPending.remove(dir); // an overflow during the recovery queues another one
+            if (isRunning && registeredDirs.contains(dir)) recoverFromOverflow(dir);
+        });
+    }
 
-    private class WatcherRunnable implements Runnable {
-        private final WatchService serviceInstance; // Store the specific WatchService instance this runnable is for
-        private final String projectName;
+    /**
+     * The kernel dropped events for {@code dir}: compares a fresh listing with the last snapshot and feeds the
+     * differences through the normal pipeline as if they had been delivered. The VFS is refreshed as well.
+     */
+    private void recoverFromOverflow(Path dir) {
+        String projectName = project.getName();
+        refreshQueue.request(dir);
+        List<DirectorySnapshots.Change> changes = snapshots.diff(dir);
+        journal.recordDirectory(dir);
+        LOG.warn("[" + projectName + "] OVERFLOW for dir: " + dir + ". Recovered " + changes.size() + " missed changes from its snapshot.");
+        for (DirectorySnapshots.Change change : changes) {
+            handleNativeEvent(dir, change.getEventType(), change.getName());
+        }
+    }
 
-        WatcherRunnable(WatchService service, String projectName) {
-            this.serviceInstance = service;
-            this.projectName = projectName;
-            LOG.info("[" + projectName + "] WatcherRunnable created for WatchService (identity: " + System.identityHashCode(serviceInstance) + ")");
+    /** Changes found by the polling backend, fed through the same path as native events. */
+    private void handlePolledChanges(Path dir, List<DirectorySnapshots.Change> changes) {
+        if (!isRunning) return;
+        for (DirectorySnapshots.Change change : changes) {
+            handleNativeEvent(dir, change.getEventType(), change.getName());
         }
+    }
 
-        private String safeGetWatchablePath(WatchKey key) {
-            try {
-                if (!key.isValid()) return "N/A (key invalid on getWatchablePath entry)";
-                Watchable watchable = key.watchable();
-                if (watchable instanceof Path) {
-                    return ((Path) watchable).toString();
-                }
-                return watchable != null ? watchable.getClass().getName() + "@" + System.identityHashCode(watchable) : "null watchable";
-            } catch (Exception e) {
-                // This can happen if the key becomes invalid between isValid() and watchable() or during watchable()
-                return "Error getting watchable path: " + e.getMessage();
+    /**
+     * Subscribes {@code dir} at the shared WatchService (or the polling backend) unless this project already did; returns true if it is new for
+     * this project. Another project (or another configured path resolving to the same real directory) may already
+     * hold the kernel watch, in which case no new one is created. If the watch budget refuses the directory it is
+     * polled instead and the user is told once.
+     */
+    private synchronized boolean registerDirectory(Path dir) throws IOException {
+        if (!isRunning || registeredDirs.contains(dir)) {
+            return false;
+        }
+        if (shouldPoll(dir)) {
+            pollingWatcher.add(dir);
+            registeredDirs.add(dir);
+            return true;
+        }
+        boolean newWatch;
+        try {
+            newWatch = SharedWatchService.getInstance().subscribe(dir, nativeListener, priorityOf(dir));
+        } catch (SharedWatchService.BudgetExceededException e) {
+            pollingWatcher.add(dir);
+            registeredDirs.add(dir);
+            degradedDirs.add(dir);
+            if (degradedDirs.size() == 1) {
+                LOG.warn("[" + project.getName() + "] No native watch for '" + dir + "' (" + e.getMessage() + "). Polling it and further directories instead.");
+            }
+            if (!budgetNotified) {
+                budgetNotified = true;
+                ApplicationManager.getApplication().invokeLater(this::notifyDegradedWatches); // counts what the current pass degraded
             }
+            return true;
+        }
+        registeredDirs.add(dir);
+        snapshots.take(dir);
+        journal.recordDirectory(dir);
+        if (!newWatch) {
+            LOG.debug("[" + project.getName() + "] '" + dir + "' is already watched by the IDE; sharing its registration.");
         }
+        return true;
+    }
 
-        @Override
-        public void run() {
-            long currentThreadId = Thread.currentThread().threadId();
-            int currentThreadIdentity = System.identityHashCode(Thread.currentThread());
+    private synchronized void unregisterDirectory(Path dir) {
+        if (registeredDirs.remove(dir)) {
+            degradedDirs.remove(dir);
+            if (pollingWatcher.isPolled(dir)) {
+                pollingWatcher.remove(dir);
+            } else {
+                SharedWatchService.getInstance().unsubscribe(dir, nativeListener);
+            }
+            snapshots.forget(dir);
+            journal.forgetDirectory(dir);
+        }
+    }
 
-            LOG.info("[" + projectName + "] Native watcher thread (Java Thread ID: " + currentThreadId + ", identity: " + currentThreadIdentity + ") started for WatchService (identity: " + System.identityHashCode(serviceInstance) + "). isRunning: " + FileChangeEventWatcherService.this.isRunning);
-            try {
-                while (!Thread.currentThread().isInterrupted() && FileChangeEventWatcherService.this.isRunning) {
-                    if (serviceInstance != FileChangeEventWatcherService.this.nativeWatchService) {
-                        LOG.warn("[" + projectName + "] WatcherThread (Java Thread ID: " + currentThreadId + ", for WS identity: " + System.identityHashCode(serviceInstance) +
-                                ") detected its WatchService is no longer active (active is: " +
-                                (FileChangeEventWatcherService.this.nativeWatchService == null ? "null" : System.identityHashCode(FileChangeEventWatcherService.this.nativeWatchService)) +
-                                "). Terminating.");
-                        break;
+    /**
+     * Registers {@code root} and every directory below it with one walk (symlinks are not followed) and returns the
+     * number of newly registered directories. Stops at {@link #MAX_WATCHED_DIRECTORIES}. Regular files met on the way
+     * are added to {@code filesFound} if given. Only the single registrations lock, so a walk on the shared watcher
+     * thread does not hold this project's monitor for its whole duration.
+     */
+    private int registerTree(Path root, List<Path> filesFound) {
+        final String projectName = project.getName();
+        final int[] registered = {0};
+        try {
+            Files.walkFileTree(root, new SimpleFileVisitor<>() {
+                @Override
+                public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) throws IOException {
+                    if (registeredDirs.contains(dir)) {
+                        return FileVisitResult.CONTINUE;
                     }
-
-                    WatchKey keyFromTake;
-                    try {
-                        keyFromTake = serviceInstance.take();
-                    } catch (InterruptedException e) {
-                        LOG.info("[" + projectName + "] WatcherThread (Java Thread ID: " + currentThreadId + ", for WS identity: " + System.identityHashCode(serviceInstance) + ") interrupted (during take). Terminating.");
-                        Thread.currentThread().interrupt();
-                        break;
-                    } catch (ClosedWatchServiceException e) {
-                        LOG.info("[" + projectName + "] WatcherThread (Java Thread ID: " + currentThreadId + ", for WS identity: " + System.identityHashCode(serviceInstance) + ") detected ClosedWatchServiceException. Terminating.");
-                        break;
-                    } catch (Exception e) {
-                        LOG.error("[" + projectName + "] WatcherThread (Java Thread ID: " + currentThreadId + ", for WS identity: " + System.identityHashCode(serviceInstance) + ") error in take(): " + e.getMessage(), e);
-                        break;
+                    if (registeredDirs.size() >= MAX_WATCHED_DIRECTORIES) {
+                        LOG.warn("[" + projectName + "] Watch limit of " + MAX_WATCHED_DIRECTORIES + " directories reached while registering '" +
+                                root + "'. Changes below '" + dir + "' and its remaining siblings are not watched.");
+                        return FileVisitResult.TERMINATE;
                     }
-
-                    int keyFromTakeIdentity = System.identityHashCode(keyFromTake);
-                    boolean keyFromTakeIsValidAtReceive = keyFromTake.isValid();
-                    String watchablePathStringAtReceive = safeGetWatchablePath(keyFromTake);
-
-                    LOG.debug("[" + projectName + "] WatchService.take() returned WatchKey (identity: " + keyFromTakeIdentity +
-                            ", isValidAtReceive: " + keyFromTakeIsValidAtReceive +
-                            ", watchablePathStringAtReceive: '" + watchablePathStringAtReceive +
-                            "', from WS identity: " + System.identityHashCode(serviceInstance) + ")");
-
-                    Path actualWatchedDirForEvent = null;
-                    boolean isKeyDirectlyInMap = false;
-                    Path pathFromMapViaKeyIdentity = watchKeyToDirPathMap.get(keyFromTake);
-
-                    if (pathFromMapViaKeyIdentity != null) {
-                        actualWatchedDirForEvent = pathFromMapViaKeyIdentity;
-                        isKeyDirectlyInMap = true;
-                        LOG.debug("[" + projectName + "] Key (identity: " + keyFromTakeIdentity + ") found directly in map, points to: '" + actualWatchedDirForEvent + "'");
-                    } else {
-                        LOG.warn("[" + projectName + "] Key (identity: " + keyFromTakeIdentity + ", isValidAtReceive: " + keyFromTakeIsValidAtReceive + ") NOT in map by ID.");
-                        if (keyFromTakeIsValidAtReceive) {
-                            Watchable watchable = keyFromTake.watchable();
-                            if (watchable instanceof Path) {
-                                Path pathFromWatchableKey = (Path) watchable;
-                                LOG.info("[" + projectName + "] Path from key.watchable() (Key ID: " + keyFromTakeIdentity + "): " +
-                                        "toString: '" + pathFromWatchableKey.toString() + "', hc: " + pathFromWatchableKey.hashCode() +
-                                        ", fs: " + pathFromWatchableKey.getFileSystem().toString());
-                                try {
-                                    LOG.info("[" + projectName + "] Path from key.watchable() - toRealPath(): '" + pathFromWatchableKey.toRealPath().toString() + "'");
-                                } catch (IOException e) {
-                                    LOG.warn("[" + projectName + "] Path from key.watchable() - toRealPath() failed for '" + pathFromWatchableKey + "': " + e.getMessage());
-                                }
-
-                                if (!Files.exists(pathFromWatchableKey)) {
-                                    LOG.warn("[" + projectName + "] Key (ID: " + keyFromTakeIdentity + ") is valid, but its watchable Path '" + pathFromWatchableKey +
-                                            "' does NOT exist. Treating as effectively invalid for matching.");
-                                } else {
-                                    final Path finalPathFromWatchable = pathFromWatchableKey;
-                                    Optional<Map.Entry<WatchKey, Path>> matchingEntry = watchKeyToDirPathMap.entrySet().stream()
-                                            .filter(entry -> {
-                                                Path registeredPath = entry.getValue();
-                                                try {
-                                                    if (!Files.exists(registeredPath)) {
-                                                        LOG.warn("[" + projectName + "] Registered path '" + registeredPath + "' in map no longer exists. Cannot compare with watchable '" + finalPathFromWatchable + "'. Non-match.");
-                                                        return false;
-                                                    }
-                                                    String realPathFromWatchableStr = finalPathFromWatchable.toRealPath().toString();
-                                                    String realRegisteredPathStr = registeredPath.toRealPath().toString();
-                                                    return realPathFromWatchableStr.equals(realRegisteredPathStr);
-                                                } catch (NoSuchFileException nsfe) {
-                                                    LOG.warn("[" + projectName + "] NoSuchFileException during toRealPath() comparison. Registered: '" + registeredPath + "' or Watchable: '" + finalPathFromWatchable + "'. Error: " + nsfe.getMessage() + ". Non-match.");
-                                                    return false;
-                                                } catch (IOException e) {
-                                                    LOG.warn("[" + projectName + "] IOException during toRealPath() comparison. Registered: '" + registeredPath + "' or Watchable: '" + finalPathFromWatchable + "'. Error: " + e.getMessage() + ". Non-match.");
-                                                    return false;
-                                                }
-                                            })
-                                            .findFirst();
-
-                                    if (matchingEntry.isPresent()) {
-                                        actualWatchedDirForEvent = matchingEntry.get().getValue();
-                                        LOG.info("[" + projectName + "] Key (ID: " + keyFromTakeIdentity + ") (not in map by ID) had watchable Path '" + pathFromWatchableKey +
-                                                "' MATCH (via toRealPath) with registered map Path: '" + actualWatchedDirForEvent + "'. Processing event.");
-                                    } else {
-                                        // If matchingEntry is not present, check again if pathFromWatchableKey still exists
-                                        boolean pathStillExists = Files.exists(pathFromWatchableKey);
-                                        if (pathStillExists) {
-                                            LOG.error(new Throwable("[" + projectName + "] CRITICAL (Path Still Exists): Key (ID: " + keyFromTakeIdentity +
-                                                    ") not in map by ID. Its watchable Path '" + pathFromWatchableKey +
-                                                    "' (hc:" + pathFromWatchableKey.hashCode() + ", fs:" + pathFromWatchableKey.getFileSystem() +
-                                                    ", exists:true" +
-                                                    ") does NOT match (via toRealPath().toString()) any Path in map.values(). Rogue key or Path issue. Ignoring."));
-                                        } else {
-                                            LOG.warn("[" + projectName + "] Key (ID: " + keyFromTakeIdentity +
-                                                    ") not in map by ID. Its watchable Path '" + pathFromWatchableKey +
-                                                    "' NO LONGER EXISTS (checked after failed match). toRealPath() comparison naturally failed or was skipped. Ignoring event for this key.");
-                                        }
-                                        // actualWatchedDirForEvent remains null
-                                    }
-                                }
-                            } else {
-                                LOG.error("[" + projectName + "] Key (ID: " + keyFromTakeIdentity + ") not in map, isValid, but watchable not a Path: " + (watchable != null ? watchable.getClass().getName() : "null") + ". Ignoring.");
-                            }
-                        } else {
-                            LOG.warn("[" + projectName + "] Key (ID: " + keyFromTakeIdentity + ") not in map AND was already invalid when received. Ignoring.");
-                        }
+                    if (registerDirectory(dir)) {
+                        registered[0]++;
                     }
+                    return FileVisitResult.CONTINUE;
+                }
 
-                    if (actualWatchedDirForEvent == null) {
-                        if (!keyFromTake.reset()) {
-                            LOG.warn("[" + projectName + "] Ignored/Unresolved Key (ID: " + keyFromTakeIdentity + ", isValidAtReset: " + keyFromTake.isValid() + ") no longer valid after reset.");
-                        }
-                        continue;
+                @Override
+                public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+                    if (filesFound != null && attrs.isRegularFile()) {
+                        filesFound.add(file);
                     }
+                    return FileVisitResult.CONTINUE;
+                }
 
-                    List<? extends WatchEvent<?>> events = keyFromTake.pollEvents();
-                    LOG.debug("[" + projectName + "] Polled " + events.size() + " events for Key (ID: " + keyFromTakeIdentity + ") for dir: " + actualWatchedDirForEvent);
+                @Override
+                public FileVisitResult visitFileFailed(Path file, IOException exc) {
+                    // Unreadable or concurrently deleted entries are skipped, not fatal for the rest of the tree
+                    LOG.debug("[" + projectName + "] Cannot visit '" + file + "' while registering watches: " + exc.getMessage());
+                    return FileVisitResult.CONTINUE;
+                }
+            });
+        } catch (IOException e) {
+            LOG.warn("[" + projectName + "] Failed to register directory tree '" + root + "': " + e.getMessage());
+        }
+        return registered[0];
+    }
 
-                    for (WatchEvent<?> event : events) {
-                        WatchEvent.Kind<?> kind = event.kind();
-                        if (kind == StandardWatchEventKinds.OVERFLOW) {
-                            LOG.warn("[" + projectName + "] OVERFLOW for dir: " + actualWatchedDirForEvent);
-                            final Path dirToRefresh = actualWatchedDirForEvent;
-                            ApplicationManager.getApplication().invokeLater(() -> Util.forceRefreshVFS(dirToRefresh.toString()));
-                            continue;
-                        }
-                        if (!(event.context() instanceof Path)) {
-                            LOG.warn("[" + projectName + "] Event context not Path. Kind: " + kind + ". Context: " + event.context() + ". Skipping.");
-                            continue;
-                        }
+    /** Tells the user that part of the watched directories is polled because the watch budget is used up. */
+    private void notifyDegradedWatches() {
+        int degraded = degradedDirs.size();
+        if (project.isDisposed() || degraded == 0) return;
+        SharedWatchService shared = SharedWatchService.getInstance();
+        String content = degraded + " watched directories are polled (changes show up within seconds) because the inotify watch budget of " +
+                shared.getWatchBudget() + " is used up" + (shared.isKernelLimitReached() ? " or the kernel limit was reached" : "") +
+                ". Raise fs.inotify.max_user_watches or narrow the recursive watch entries.";
+        NotificationGroupManager.getInstance().getNotificationGroup("SyncFiles.NotificationGroup")
+                .createNotification("SyncFiles: file watches limited", content, NotificationType.WARNING)
+                .notify(project);
+    }
 
-                        @SuppressWarnings("unchecked")
-                        WatchEvent<Path> ev = (WatchEvent<Path>) event;
-                        Path relativeFileName = ev.context();
-                        Path absoluteAffectedPath = actualWatchedDirForEvent.resolve(relativeFileName).normalize();
-                        String affectedPathStr = absoluteAffectedPath.toString().replace('\\', '/');
-                        String eventType = null;
-                        if (kind == StandardWatchEventKinds.ENTRY_CREATE) eventType = "Change New";
-                        else if (kind == StandardWatchEventKinds.ENTRY_DELETE) eventType = "Change Del";
-                        else if (kind == StandardWatchEventKinds.ENTRY_MODIFY) eventType = "Change Mod";
-
-                        if (eventType != null) {
-                            LOG.debug("[" + projectName + "] Native Event: " + eventType + " | Rel: " + relativeFileName + " | Abs: " + affectedPathStr + " | Dir: " + actualWatchedDirForEvent);
-                            processNativeWatchEvent(eventType, affectedPathStr, absoluteAffectedPath);
-                        }
-                    }
+    /**
+     * Unsubscribes {@code root} and all registered directories below it (root was deleted or moved away). They are
+     * the contiguous range of {@link #registeredDirs} starting at {@code root}, so only that range is visited.
+     */
+    private synchronized void unregisterTree(Path root) {
+        String prefix = dirKey(root);
+        List<Path> below = new ArrayList<>();
+        for (Path dir : registeredDirs.tailSet(root, true)) {
+            if (!dirKey(dir).startsWith(prefix)) break;
+            below.add(dir);
+        }
+        for (Path dir : below) {
+            unregisterDirectory(dir);
+            LOG.debug("[" + project.getName() + "] Dropped watch for removed directory '" + dir + "'.");
+        }
+    }
 
-                    boolean keyStillValidAfterReset = keyFromTake.reset();
-                    if (!keyStillValidAfterReset) {
-                        LOG.info("[" + projectName + "] Key (ID: " + keyFromTakeIdentity + ", for path: '" + actualWatchedDirForEvent + "') no longer valid after reset.");
-                        if (isKeyDirectlyInMap) {
-                            Path removedPath = watchKeyToDirPathMap.remove(keyFromTake);
-                            if (removedPath != null) {
-                                LOG.info("[" + projectName + "] Removed invalid Key (ID: " + keyFromTakeIdentity + ") for path: '" + removedPath + "' from map.");
-                            } else {
-                                LOG.warn("[" + projectName + "] Tried to remove invalid Key (ID: " + keyFromTakeIdentity + ") (was directly mapped), but already gone.");
-                            }
-                        } else {
-                            LOG.info("[" + projectName + "] Key (ID: " + keyFromTakeIdentity + ") (resolved via watchable()) became invalid. Not in map by ID, no removal needed.");
-                        }
-                        if (isKeyDirectlyInMap && watchKeyToDirPathMap.isEmpty() && FileChangeEventWatcherService.this.isRunning) {
-                            LOG.info("[" + projectName + "] All directly mapped keys invalid/removed. Watcher thread may stop if no new registrations.");
-                        }
-                    }
-                }
-            } finally {
-                LOG.info("[" + projectName + "] Native watcher thread (Java Thread ID: " + currentThreadId + ", identity: " + currentThreadIdentity + ") finished for WatchService (identity: " + System.identityHashCode(serviceInstance) + ").");
-            }
-        } // end run()
+    /** Sort key of {@link #registeredDirs}: '/'-separated with a trailing '/', so a subtree shares its root's prefix. */
+    private static String dirKey(Path dir) {
+        String path = dir.toString().replace('\\', '/');
+        return path.endsWith("/") ? path : path + "/";
+    }
+
+    /**
+     * Publishes a new {@link WatchIndex} built from {@code activeWatchers} and {@code watcherPath}. Must run after every
+     * change of either; the watcher thread only ever reads the published index and needs no lock for matching.
+     */
+    private synchronized void rebuildWatchIndex() {
+        WatchIndex.Builder<ActiveWatch> builder = WatchIndex.builder();
+        for (ActiveWatch watch : activeWatchers) {
+            builder.add(watch.watchedPathObj, watch, watch.isDirectoryPretended, watch.recursive);
+        }
+        for (String path : watcherPath) {
+            builder.addConfigPath(path);
+        }
+        watchIndex = builder.build();
+        LOG.debug("[" + project.getName() + "] Watch index rebuilt: " + activeWatchers.size() + " active watches, " + watcherPath.size() + " config paths.");
+    }
+
+    /**
+     * Entry of the event pipeline, shared by both sources: the native watcher (with polling and overflow recovery
+     * behind it) and the VFS listener of {@link ProjectWatcherService}. Stages: normalise the path, drop what the
+     * other source already reported, then match and filter ({@link #processWatchEvent}, {@link #processMoveEvent}),
+     * hold self-induced events, debounce or batch, and dispatch to the script.
+     */
+    private void acceptEvent(String source, String eventType, Path path, Path movedFrom) {
+        Path absolutePath = path.toAbsolutePath().normalize();
+        String pathStr = absolutePath.toString().replace('\\', '/');
+        Path absoluteFrom = movedFrom != null ? movedFrom.toAbsolutePath().normalize() : null;
+        String fromStr = absoluteFrom != null ? absoluteFrom.toString().replace('\\', '/') : null;
+        if (deduplicator.isDuplicate(source, eventType, pathStr, fromStr)) {
+            LOG.debug("[" + project.getName() + "] Dropping " + eventType + " on '" + pathStr + "' from " + source + ": already reported by the other source.");
+            return;
+        }
+        if (absoluteFrom != null) {
+            processMoveEvent(absoluteFrom, absolutePath);
+        } else {
+            processWatchEvent(eventType, pathStr, absolutePath);
+        }
     }
 
-    private void processNativeWatchEvent(String eventType, String affectedPathStr, Path absoluteAffectedPath) {
+    private void processWatchEvent(String eventType, String affectedPathStr, Path absoluteAffectedPath) {
         final String projectName = project.getName();
         boolean configChangedByWatcherPath = false; // Flag to indicate if a config file in watcherPath changed
 
-        List<ActiveWatch> matchedActiveWatchers = new ArrayList<>();
-
         // --- 1. Match against activeWatchers (user-defined script executions) ---
-        synchronized (this) { // Synchronize to protect activeWatchers list during iteration
-            for (ActiveWatch watch : activeWatchers) {
-                // Log the comparison for debugging, can be reduced later
-                LOG.debug("[" + projectName + "] processNativeWatchEvent: Comparing affectedPath='" + affectedPathStr +
-                        "' with ActiveWatch.watchedPath='" + watch.watchedPath + "' (isDirPretended=" + watch.isDirectoryPretended + ")");
-
-                // Condition 1: Exact match for a configured file path
-                if (watch.watchedPath.equals(affectedPathStr)) {
-                    LOG.info("[" + projectName + "] Matched ActiveWatch (exact file): '" + watch.watchedPath + "' for affectedPath: '" + affectedPathStr + "'");
-                    matchedActiveWatchers.add(watch);
-                    continue; // Found a match, no need to check other conditions for THIS ActiveWatch
-                }
-
-                // Condition 2: Configured path is a directory, and affected path is its direct child
-                // This requires that 'watch.watchedPath' was indeed an existing directory when config was loaded,
-                // or if it's a general directory watch.
-                if (watch.isDirectoryPretended) { // True if the user configured this as a directory watch
-                    Path configuredWatchedDirObj = null;
-                    boolean configuredDirExistsAndIsDir = false;
-                    try {
-                        configuredWatchedDirObj = Paths.get(watch.watchedPath);
-                        configuredDirExistsAndIsDir = Files.isDirectory(configuredWatchedDirObj); // Check current state
-                    } catch (InvalidPathException e) {
-                        LOG.warn("[" + projectName + "] Invalid configured watchedPath in ActiveWatch: '" + watch.watchedPath + "'", e);
-                        continue; // Skip this ActiveWatch if path is invalid
-                    }
-
-                    if (configuredDirExistsAndIsDir) { // Only proceed if the configured watched path is currently a directory
-                        Path parentOfAffected = absoluteAffectedPath.getParent();
-                        if (parentOfAffected != null && parentOfAffected.equals(configuredWatchedDirObj)) {
-                            LOG.info("[" + projectName + "] Matched ActiveWatch (direct child): affectedPath '" + affectedPathStr +
-                                    "' is child of watched directory '" + watch.watchedPath + "'");
-                            matchedActiveWatchers.add(watch);
-                            // continue; // A single event path could potentially match multiple directory watches if nested/overlapping,
-                            // though usually one ActiveWatch corresponds to one user entry.
-                            // For simplicity, let's assume one event path matches at most relevant directory watch for now.
-                            // If multiple ActiveWatch entries could legitimately both be parents, this logic might need refinement
-                            // or the list could become a Set to avoid duplicate script executions if the same ActiveWatch object was added twice.
-                        }
-                    }
+        // Exact path, direct child of a directory watch, or below a recursive directory watch; see WatchIndex.
+        WatchIndex<ActiveWatch> index = watchIndex;
+        List<ActiveWatch> matchedActiveWatchers = index.match(absoluteAffectedPath);
+        if (!matchedActiveWatchers.isEmpty()) {
+            // Include/exclude globs: filtered events are counted but never debounced, batched or queued
+            List<ActiveWatch> accepted = new ArrayList<>(matchedActiveWatchers.size());
+            for (ActiveWatch watch : matchedActiveWatchers) {
+                if (watch.filter.accepts(watch.watchedPathObj, absoluteAffectedPath)) {
+                    accepted.add(watch);
+                } else {
+                    filteredEventCount.incrementAndGet();
+                    LOG.debug("[" + projectName + "] Event " + eventType + " on '" + affectedPathStr + "' filtered out by the globs of watch '" + watch.watchedPath + "'.");
                 }
             }
-        } // end synchronized(this) for activeWatchers
+            matchedActiveWatchers = accepted;
+        }
 
         if (!matchedActiveWatchers.isEmpty()) {
-            LOG.info("[" + projectName + "] Relevant Native Event: " + eventType + " | Path: " + affectedPathStr +
+            LOG.info("[" + projectName + "] Relevant Event: " + eventType + " | Path: " + affectedPathStr +
                     " | Matched " + matchedActiveWatchers.size() + " active watchers.");
             for (ActiveWatch watch : matchedActiveWatchers) {
                 final String pathForVFS = watch.watchedPath; // Capture for lambda
@@ -718,120 +906,331 @@ public class FileChangeEventWatcherService implements Disposable {
                 final String finalEventType = eventType; // Capture for lambda
                 final String finalAffectedPathStr = affectedPathStr; // Capture for lambda
 
-                LOG.info("[" + projectName + "] Matched active watch: '" + pathForVFS + "' -> executes '" + scriptToRun + "' for event type '" + finalEventType + "' on path '" + finalAffectedPathStr + "'");
-
-                // Refresh VFS for the *configured* watched path (could be parent dir or specific file)
-                ApplicationManager.getApplication().invokeLater(() -> {
-                    if (project.isDisposed()) return;
-                    Util.forceRefreshVFS(pathForVFS);
+                LOG.info("[" + projectName + "] Matched active watch: '" + pathForVFS + "' -> executes '" + scriptToRun + "' for event type '" + finalEventType + "' on path '" + finalAffectedPathStr + "'" +
+                        (watch.debounceMillis > 0 ? " (after " + watch.debounceMillis + " ms quiet period)" : ""));
+                selfWrites.admit(scriptToRun, finalAffectedPathStr, holdWhileBusy(scriptToRun), () -> {
+                    if (watch.batch) {
+                        batcher.submit(scriptToRun, pathForVFS, finalEventType, finalAffectedPathStr, watch.debounceMillis);
+                    } else {
+                        debouncer.submit(scriptToRun, pathForVFS, finalEventType, finalAffectedPathStr, watch.debounceMillis);
+                    }
                 });
-
-                executeWatchedScript(scriptToRun, finalEventType, finalAffectedPathStr);
             }
         }
 
         // --- 2. Match against watcherPath (typically for config file changes) ---
-        Set<String> currentWatcherPathsSnapshot;
-        synchronized (this) { // Protect watcherPath set during iteration by copying
-            currentWatcherPathsSnapshot = new HashSet<>(watcherPath);
-        }
-
-        for (String singleWatchedFileInSet : currentWatcherPathsSnapshot) {
-            if (singleWatchedFileInSet.equals(affectedPathStr)) {
-                LOG.info("[" + projectName + "] Native Event on a path in watcherPath set (e.g. config file): " +
-                        "eventType='" + eventType + "', affectedPathStr='" + affectedPathStr + "'");
-
-                final String configPathForVFS = affectedPathStr; // Capture for lambda
-                ApplicationManager.getApplication().invokeLater(() -> {
-                    if (project.isDisposed()) return;
-                    Util.forceRefreshVFS(configPathForVFS); // Refresh VFS for the config file itself
-                });
-                configChangedByWatcherPath = true; // Mark that a config file change was detected
-                break; // Assume only one config file path will match, or first match is sufficient
-            }
+        if (index.isConfigPath(affectedPathStr)) {
+            LOG.info("[" + projectName + "] Event on a path in watcherPath set (e.g. config file): " +
+                    "eventType='" + eventType + "', affectedPathStr='" + affectedPathStr + "'");
+            configChangedByWatcherPath = true; // Mark that a config file change was detected
         }
 
         // --- 3. Handle config reload if a path in watcherPath changed ---
         if (configChangedByWatcherPath) {
-            LOG.info("[" + projectName + "] Change detected on a path in watcherPath set. Scheduling configuration reload on EDT.");
-            ApplicationManager.getApplication().invokeLater(() -> {
-                if (project.isDisposed()) {
-                    LOG.info("[" + projectName + "] Project disposed, skipping config reload for path: " + affectedPathStr);
-                    return;
+            reloadConfigAfterChange(affectedPathStr);
+        }
+    }
+
+    /**
+     * A regular file was renamed or moved between watched directories. Every watch matching the old or the new path
+     * gets one "Change Move" (script args: event, new path, old path) instead of a delete and a create.
+     */
+    private void processMoveEvent(Path from, Path to) {
+        final String projectName = project.getName();
+        String fromStr = from.toString().replace('\\', '/');
+        String toStr = to.toString().replace('\\', '/');
+        WatchIndex<ActiveWatch> index = watchIndex;
+        Set<ActiveWatch> matched = new LinkedHashSet<>(index.match(to));
+        matched.addAll(index.match(from));
+        for (ActiveWatch watch : matched) {
+            if (!watch.filter.accepts(watch.watchedPathObj, to) && !watch.filter.accepts(watch.watchedPathObj, from)) {
+                filteredEventCount.incrementAndGet();
+                continue;
+            }
+            LOG.info("[" + projectName + "] Matched active watch: '" + watch.watchedPath + "' -> executes '" + watch.scriptToRun +
+                    "' for move '" + fromStr + "' -> '" + toStr + "'");
+            selfWrites.admit(watch.scriptToRun, toStr, holdWhileBusy(watch.scriptToRun), () -> {
+                if (watch.batch) {
+                    batcher.submitMove(watch.scriptToRun, watch.watchedPath, fromStr, toStr, watch.debounceMillis);
+                } else {
+                    debouncer.submitMove(watch.scriptToRun, watch.watchedPath, fromStr, toStr, watch.debounceMillis);
                 }
-                LOG.info("[" + projectName + "] Executing config reload on EDT due to change in: " + affectedPathStr);
-                Util.reloadSyncFilesConfigFromDisk(project); // This reloads the SyncFilesConfig service's state
-                project.getMessageBus().syncPublisher(SyncFilesNotifier.TOPIC).configurationChanged(); // This notifies listeners (e.g., UI)
-                LOG.info("[" + projectName + "] Configuration reloaded from disk and change notification sent.");
             });
         }
+        if (index.isConfigPath(fromStr) || index.isConfigPath(toStr)) {
+            reloadConfigAfterChange(index.isConfigPath(toStr) ? toStr : fromStr);
+        }
+    }
+
+    /** Latest-wins scripts must see new events while they run (to be restarted); others get them after the run. */
+    private boolean holdWhileBusy(String scriptPath) {
+        return !scriptLanes.getOrDefault(scriptPath, ScriptLane.DEFAULT).latestWins;
     }
 
-    private void executeWatchedScript(String scriptPathToExecute, String eventType, String affectedFilePath) {
+    /** Queues a VFS refresh of the changed config file and reloads the configuration from disk on the EDT. */
+    private void reloadConfigAfterChange(String affectedPathStr) {
+        final String projectName = project.getName();
+        refreshQueue.request(affectedPathStr); // the reload reads the file from disk, not through the VFS
+        LOG.info("[" + projectName + "] Change detected on a path in watcherPath set. Scheduling configuration reload on EDT.");
+        ApplicationManager.getApplication().invokeLater(() -> {
+            if (project.isDisposed()) {
+                LOG.info("[" + projectName + "] Project disposed, skipping config reload for path: " + affectedPathStr);
+                return;
+            }
+            LOG.info("[" + projectName + "] Executing config reload on EDT due to change in: " + affectedPathStr);
+            Util.reloadSyncFilesConfigFromDisk(project); // This reloads the SyncFilesConfig service's state
+            project.getMessageBus().syncPublisher(SyncFilesNotifier.TOPIC).configurationChanged(); // This notifies listeners (e.g., UI)
+            LOG.info("[" + projectName + "] Configuration reloaded from disk and change notification sent.");
+        });
+    }
+
+    /**
+     * Keeps one handler per resident-mode script: handlers of scripts that are no longer resident are shut down,
+     * running handlers of unchanged entries stay warm.
+     */
+    private void syncResidentHandlers(Set<String> residentScripts) {
+        residentHandlers.entrySet().removeIf(entry -> {
+            if (residentScripts.contains(entry.getKey())) return false;
+            entry.getValue().shutdown();
+            return true;
+        });
+        for (String script : residentScripts) {
+            residentHandlers.computeIfAbsent(script, s -> new ResidentHandler(project.getName(), s,
+                    () -> createScriptProcess(s, List.of("Resident"), Map.of("SYNCFILES_RESIDENT", "1")),
+                    selfWrites, new ResidentHandler.Listener() {
+                        @Override
+                        public void onAcked(@NotNull String path) {
+                            refreshAfterResidentAck(path);
+                        }
+
+                        @Override
+                        public void onOutput(@NotNull SelfWriteGuard.Run run, @NotNull String rawPath) {
+                            declareScriptOutput(run, rawPath);
+                        }
+                    }));
+        }
+    }
+
+    private void refreshAfterResidentAck(String affectedFilePath) {
+        if (project.isDisposed()) return;
+        refreshQueue.request(affectedFilePath);
+    }
+
+    /** Debouncer callback: one coalesced event per (script, path); {@code movedFrom} is set for a "Change Move". */
+    private void fireWatchedScript(String scriptPathToExecute, String refreshPath, String eventType, String affectedFilePath, String movedFrom) {
+        if (project.isDisposed()) return;
+        // Refresh VFS for the *configured* watched path (could be parent dir or specific file)
+        refreshQueue.request(refreshPath);
+        ResidentHandler resident = residentHandlers.get(scriptPathToExecute);
+        if (resident != null) {
+            resident.send(eventType, affectedFilePath, movedFrom);
+            return;
+        }
+        executeWatchedScript(scriptPathToExecute, eventType, affectedFilePath, movedFrom);
+    }
+
+    /**
+     * Batcher callback: runs the script once as {@code python script "Change Batch" <file>}, where the file holds one
+     * JSON object per line ({@code {"event": "Change Mod", "path": "..."}}, moves with an extra {@code "from"}); SYNCFILES_BATCH_FILE and
+     * SYNCFILES_BATCH_SIZE are set as well. The file is deleted when the script exits.
+     */
+    private void fireWatchedBatch(String scriptPathToExecute, String refreshPath, List<EventBatcher.Record> records) {
+        if (project.isDisposed()) return;
+        String projectName = project.getName();
+        Path batchFile;
+        try {
+            batchFile = Files.createTempFile("syncfiles-batch-", ".jsonl");
+            StringBuilder lines = new StringBuilder();
+            for (EventBatcher.Record record : records) {
+                JsonObject line = new JsonObject();
+                line.addProperty("event", record.getEventType());
+                line.addProperty("path", record.getPath());
+                if (record.getMovedFrom() != null) line.addProperty("from", record.getMovedFrom());
+                lines.append(line).append('\n');
+            }
+            Files.writeString(batchFile, lines, StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            LOG.error("[" + projectName + "] Cannot write event batch for script '" + scriptPathToExecute + "': " + e.getMessage(), e);
+            return;
+        }
+        LOG.info("[" + projectName + "] Delivering " + records.size() + " batched events to '" + scriptPathToExecute + "' via " + batchFile);
+
+        refreshQueue.request(refreshPath);
+        String batchPath = batchFile.toString().replace('\\', '/');
+        List<String> affectedPaths = records.stream().map(EventBatcher.Record::getPath).collect(Collectors.toList());
+        runWatchedScript(scriptPathToExecute, "Change Batch", batchPath,
+                Map.of("SYNCFILES_BATCH_FILE", batchPath, "SYNCFILES_BATCH_SIZE", String.valueOf(records.size())),
+                affectedPaths,
+                () -> {
+                    try {
+                        Files.deleteIfExists(batchFile);
+                    } catch (IOException e) {
+                        LOG.debug("[" + projectName + "] Could not delete batch file " + batchFile + ": " + e.getMessage());
+                    }
+                });
+    }
+
+    /**
+     * Builds {@code python script args...} with the plugin's script environment (IDE env, configured env vars,
+     * PYTHONIOENCODING, PROJECT_DIR, {@code extraEnv}) and working directory. Returns null (logged) if the
+     * interpreter or script is not usable.
+     */
+    private ProcessBuilder createScriptProcess(String scriptPathToExecute, List<String> args, Map<String, String> extraEnv) {
         String projectName = project.getName();
         SyncFilesConfig config = SyncFilesConfig.getInstance(project);
         String pythonExecutableRaw = config.getPythonExecutablePath();
 
         if (StringUtil.isEmptyOrSpaces(pythonExecutableRaw)) {
             LOG.warn("[" + projectName + "] Python executable not configured. Cannot execute script: " + scriptPathToExecute);
-            return;
+            return null;
         }
         String pythonExecutable = Util.isDirectoryAfterMacroExpansion(project, pythonExecutableRaw);
         if (StringUtil.isEmptyOrSpaces(pythonExecutable) || !Files.isRegularFile(Paths.get(pythonExecutable))) {
             LOG.warn("[" + projectName + "] Python executable path invalid or not a file: '" + pythonExecutable + "'. Cannot execute script: " + scriptPathToExecute);
-            return;
+            return null;
         }
 
         String finalScriptPathToExecute = Util.isDirectoryAfterMacroExpansion(project, scriptPathToExecute);
         if (StringUtil.isEmptyOrSpaces(finalScriptPathToExecute) || !Files.isRegularFile(Paths.get(finalScriptPathToExecute))) {
             LOG.warn("[" + projectName + "] Script path to execute is invalid or not a file: '" + finalScriptPathToExecute + "'.");
+            return null;
+        }
+
+        List<String> command = new ArrayList<>();
+        command.add(pythonExecutable);
+        command.add(finalScriptPathToExecute);
+        command.addAll(args);
+        ProcessBuilder pb = new ProcessBuilder(command);
+
+        Map<String, String> envVars = new HashMap<>(EnvironmentUtil.getEnvironmentMap());
+        envVars.putAll(config.getEnvVariables());
+        envVars.putAll(extraEnv);
+        envVars.put("PYTHONIOENCODING", "UTF-8");
+        if (project.getBasePath() != null) {
+            envVars.put("PROJECT_DIR", project.getBasePath().replace('\\', '/'));
+        }
+        pb.environment().clear();
+        pb.environment().putAll(envVars);
+
+        if (project.getBasePath() != null) {
+            pb.directory(new File(project.getBasePath()));
+        } else {
+            Path scriptFile = Paths.get(finalScriptPathToExecute);
+            if (scriptFile.getParent() != null) {
+                pb.directory(scriptFile.getParent().toFile());
+            } else {
+                LOG.warn("[" + projectName + "] Script has no parent directory and project base path is null. Using default CWD for script: " + finalScriptPathToExecute);
+            }
+        }
+        return pb;
+    }
+
+    private void executeWatchedScript(String scriptPathToExecute, String eventType, String affectedFilePath, String movedFrom) {
+        if (movedFrom != null) {
+            runWatchedScript(scriptPathToExecute, eventType, affectedFilePath, Map.of(MOVED_FROM_ENV, movedFrom),
+                    List.of(affectedFilePath, movedFrom), null);
             return;
         }
+        runWatchedScript(scriptPathToExecute, eventType, affectedFilePath, Map.of(), List.of(affectedFilePath), null);
+    }
+
+    /** Directories polled because no kernel watch was left for them. */
+    public int getDegradedDirectoryCount() {
+        return degradedDirs.size();
+    }
 
-        scriptExecutorService.submit(() -> {
+    /** Number of matched events dropped by the include/exclude globs of their watch entry. */
+    public long getFilteredEventCount() {
+        return filteredEventCount.get();
+    }
+
+    /** Number of events dropped because the native watcher and the VFS both reported them. */
+    public long getDuplicateEventCount() {
+        return deduplicator.getDuplicateCount();
+    }
+
+    /** Number of events not delivered because the triggered script itself caused them. */
+    public long getSelfWriteSuppressedCount() {
+        return selfWrites.getSuppressedCount();
+    }
+
+    /** Number of VFS refresh requests that did not need a refresh of their own (same path already queued). */
+    public long getCoalescedRefreshCount() {
+        return refreshQueue.getRequestedCount() - refreshQueue.getRefreshedCount();
+    }
+
+    /** Number of delete/create pairs delivered as one "Change Move". */
+    public long getPairedMoveCount() {
+        return movePairer.getPairedMoves();
+    }
+
+    /** The bounded queue all watch script runs of this project go through; exposes queue depth and run counters. */
+    public ScriptRunQueue getScriptRunQueue() {
+        return scriptRunQueue;
+    }
+
+    /** A {@code SYNCFILES_OUTPUT <path>} line of a running script; relative paths are relative to the project dir. */
+    private void declareScriptOutput(SelfWriteGuard.Run selfRun, String rawPath) {
+        if (rawPath.isEmpty()) return;
+        try {
+            Path path = Paths.get(rawPath);
+            if (!path.isAbsolute() && project.getBasePath() != null) {
+                path = Paths.get(project.getBasePath()).resolve(path);
+            }
+            selfRun.declareOutput(path.normalize().toString().replace('\\', '/'));
+        } catch (InvalidPathException e) {
+            LOG.warn("[" + project.getName() + "] Script declared an invalid output path: '" + rawPath + "'");
+        }
+    }
+
+    /**
+     * Runs {@code python script eventType pathArg} through the script run queue; a move (with {@link #MOVED_FROM_ENV}
+     * in {@code extraEnv}) gets its source path as a third argument. Afterwards the VFS is refreshed for
+     * {@code pathsToRefresh} and {@code afterExit} runs (also if the script could not be started or the run was
+     * dropped by the full queue).
+     */
+    private void runWatchedScript(String scriptPathToExecute, String eventType, String affectedFilePath,
+                                  Map<String, String> extraEnv, List<String> pathsToRefresh, Runnable afterExit) {
+        String projectName = project.getName();
+        String movedFrom = extraEnv.get(MOVED_FROM_ENV);
+        ProcessBuilder pb = createScriptProcess(scriptPathToExecute,
+                movedFrom != null ? List.of(eventType, affectedFilePath, movedFrom) : List.of(eventType, affectedFilePath), extraEnv);
+        if (pb == null) {
+            if (afterExit != null) afterExit.run();
+            return;
+        }
+        String finalScriptPathToExecute = pb.command().get(1);
+
+        ScriptLane lane = scriptLanes.getOrDefault(scriptPathToExecute, ScriptLane.DEFAULT);
+        scriptRunQueue.submit(scriptPathToExecute, lane.limit, lane.latestWins, scriptPathToExecute + "\n" + affectedFilePath, execution -> {
             LOG.info("[" + projectName + "] Executing script for file event: '" + finalScriptPathToExecute +
                     "' with args: [" + eventType + ", " + affectedFilePath + "]");
+            SelfWriteGuard.Run selfRun = selfWrites.runStarted(scriptPathToExecute);
             try {
-                ProcessBuilder pb = new ProcessBuilder(
-                        pythonExecutable,
-                        finalScriptPathToExecute,
-                        eventType,
-                        affectedFilePath
-                );
-
-                Map<String, String> envVars = new HashMap<>(EnvironmentUtil.getEnvironmentMap());
-                envVars.putAll(config.getEnvVariables());
-                envVars.put("PYTHONIOENCODING", "UTF-8");
-                if (project.getBasePath() != null) {
-                    envVars.put("PROJECT_DIR", project.getBasePath().replace('\\', '/'));
-                }
-                pb.environment().clear();
-                pb.environment().putAll(envVars);
-
-                if (project.getBasePath() != null) {
-                    pb.directory(new File(project.getBasePath()));
-                } else {
-                    Path scriptFile = Paths.get(finalScriptPathToExecute);
-                    if (scriptFile.getParent() != null) {
-                        pb.directory(scriptFile.getParent().toFile());
-                    } else {
-                        LOG.warn("[" + projectName + "] Script has no parent directory and project base path is null. Using default CWD for script: " + finalScriptPathToExecute);
-                    }
-                }
-
                 Process process = pb.start();
+                execution.attach(process);
                 StringBuilder output = new StringBuilder();
                 StringBuilder errorOutput = new StringBuilder();
 
                 try (BufferedReader outReader = new BufferedReader(new InputStreamReader(process.getInputStream(), StandardCharsets.UTF_8));
                      BufferedReader errReader = new BufferedReader(new InputStreamReader(process.getErrorStream(), StandardCharsets.UTF_8))) {
                     String line;
-                    while ((line = outReader.readLine()) != null) output.append(line).append(System.lineSeparator());
+                    while ((line = outReader.readLine()) != null) {
+                        if (line.startsWith(SelfWriteGuard.OUTPUT_PREFIX)) {
+                            declareScriptOutput(selfRun, line.substring(SelfWriteGuard.OUTPUT_PREFIX.length()).trim());
+                            continue;
+                        }
+                        output.append(line).append(System.lineSeparator());
+                    }
                     while ((line = errReader.readLine()) != null) errorOutput.append(line).append(System.lineSeparator());
                 }
                 int exitCode = process.waitFor();
                 String scriptFileName = Paths.get(finalScriptPathToExecute).getFileName().toString();
 
+                if (execution.isCancelled()) {
+                    LOG.info("[" + projectName + "] Script '" + scriptFileName + "' stopped for a newer event (latest-wins). Event: '" + eventType + "' on '" + affectedFilePath + "'");
+                    return;
+                }
                 if (exitCode == 0) {
                     LOG.info("[" + projectName + "] Script '" + scriptFileName + "' executed successfully. Event: '" + eventType + "' on '" + affectedFilePath + "'" +
                             (output.length() > 0 ? ". Output:\n" + output.toString().trim() : ""));
@@ -842,33 +1241,27 @@ public class FileChangeEventWatcherService implements Disposable {
                             (errorOutput.length() > 0 ? ". Error:\n" + errorOutput.toString().trim() : ""));
                 }
 
-                ApplicationManager.getApplication().invokeLater(() -> {
-                    if (project.isDisposed()) return;
-                    Path nioAffectedPath = null;
-                    try {
-                        nioAffectedPath = Paths.get(affectedFilePath);
-                    } catch (InvalidPathException e) {
-                        LOG.warn("[" + projectName + "] VFS Refresh: Invalid affectedFilePath: " + affectedFilePath, e);
-                        return;
-                    }
-                    VirtualFile virtualFile = LocalFileSystem.getInstance().refreshAndFindFileByPath(affectedFilePath); // Uses String path
-                    if (virtualFile == null) {
-                        Path parentNioPath = nioAffectedPath.getParent();
-                        if (parentNioPath != null) {
-                            LOG.debug("[" + projectName + "] VFS Refresh: Affected path '" + affectedFilePath + "' not found. Refreshing parent: " + parentNioPath);
-                            LocalFileSystem.getInstance().refreshAndFindFileByPath(parentNioPath.toString());
-                        } else {
-                            LOG.debug("[" + projectName + "] VFS Refresh: Affected path '" + affectedFilePath + "' not found and has no parent.");
-                        }
-                    } else {
-                        LOG.debug("[" + projectName + "] VFS refreshed (or found already up-to-date) for: " + virtualFile.getPath());
+                if (pathsToRefresh.size() > 1) {
+                    // Batch: refresh the affected directories instead of every single file
+                    for (String p : pathsToRefresh) {
+                        Path parent = Paths.get(p).getParent();
+                        if (parent != null) refreshQueue.request(parent);
                     }
-                });
+                } else {
+                    refreshQueue.request(pathsToRefresh.isEmpty() ? affectedFilePath : pathsToRefresh.get(0));
+                }
 
-            } catch (IOException | InterruptedException e) {
+            } catch (IOException | InterruptedException | InvalidPathException e) {
                 LOG.error("[" + projectName + "] Error executing watched script '" + finalScriptPathToExecute + "': " + e.getMessage(), e);
                 if (e instanceof InterruptedException) Thread.currentThread().interrupt();
+            } finally {
+                selfWrites.runFinished(selfRun);
+                if (afterExit != null) afterExit.run();
             }
+        }, () -> {
+            LOG.warn("[" + projectName + "] Script run dropped before it started: '" + finalScriptPathToExecute +
+                    "' [" + eventType + ", " + affectedFilePath + "]");
+            if (afterExit != null) afterExit.run();
         });
     }
 
@@ -879,57 +1272,21 @@ public class FileChangeEventWatcherService implements Disposable {
             LOG.info("[" + projectName + "] Watcher not running or already in process of stopping. Stop request ignored.");
             return;
         }
-        isRunning = false; // Signal all loops to stop
-
-        WatchService serviceToClose = this.nativeWatchService; // Capture current instance
-        Thread threadToJoin = this.watcherThread; // Capture current instance
-
-        if (threadToJoin != null && threadToJoin.isAlive()) {
-            LOG.info("[" + projectName + "] Interrupting watcher thread (Java Thread ID: " + threadToJoin.threadId() + ", identity: " + System.identityHashCode(threadToJoin) + ")");
-            threadToJoin.interrupt();
-        } else {
-            LOG.info("[" + projectName + "] Watcher thread was null or not alive at stop time.");
-        }
-
-        if (serviceToClose != null) {
-            LOG.info("[" + projectName + "] Closing native WatchService instance (identity: " + System.identityHashCode(serviceToClose) + ")");
-            try {
-                serviceToClose.close(); // This should cause take() to throw ClosedWatchServiceException
-                LOG.info("[" + projectName + "] Native WatchService (identity: " + System.identityHashCode(serviceToClose) + ") closed successfully.");
-            } catch (IOException e) {
-                LOG.error("[" + projectName + "] Error closing native WatchService (identity: " + System.identityHashCode(serviceToClose) + "): " + e.getMessage(), e);
-            }
-        } else {
-            LOG.info("[" + projectName + "] nativeWatchService was already null at stop time.");
-        }
-
-        this.nativeWatchService = null; // Null out the reference
-        this.watcherThread = null; // Null out the reference
-
-        if (threadToJoin != null) {
-            try {
-                LOG.info("[" + projectName + "] Waiting for watcher thread (Java Thread ID: " + threadToJoin.getName() + ", identity: " + System.identityHashCode(threadToJoin) + ") to join...");
-                threadToJoin.join(5000); // Wait up to 5 seconds
-                if (threadToJoin.isAlive()) {
-                    LOG.warn("[" + projectName + "] Watcher thread (identity: " + System.identityHashCode(threadToJoin) + ") did not terminate in time after interrupt and service close.");
-                } else {
-                    LOG.info("[" + projectName + "] Watcher thread (identity: " + System.identityHashCode(threadToJoin) + ") terminated.");
-                }
-            } catch (InterruptedException e) {
-                LOG.warn("[" + projectName + "] Interrupted while waiting for watcher thread (identity: " + System.identityHashCode(threadToJoin) + ") to terminate.");
-                Thread.currentThread().interrupt();
-            }
-        }
-
-        // Clear map after service and thread are handled
-        // This map is already ConcurrentHashMap, but clear() is fine.
-        int mapSizeBeforeClear = watchKeyToDirPathMap.size();
-        List<Integer> keysIdentitiesBeforeClear = watchKeyToDirPathMap.keySet().stream().map(System::identityHashCode).collect(Collectors.toList());
-        watchKeyToDirPathMap.clear();
-        LOG.info("[" + projectName + "] watchKeyToDirPathMap cleared by stopWatching. Size before: " + mapSizeBeforeClear +
-                (mapSizeBeforeClear > 0 ? ", Keys (identities): " + keysIdentitiesBeforeClear : "") +
-                ". Size after: " + watchKeyToDirPathMap.size());
-        LOG.info("[" + projectName + "] Native FileChangeEventWatcherService stopped logic completed.");
+        isRunning = false; // Events still being delivered on the shared thread are ignored from here on
+
+        int dirsBefore = registeredDirs.size();
+        SharedWatchService.getInstance().unsubscribeAll(nativeListener);
+        journal.close(); // persists the snapshots for the next start
+        pollingWatcher.clear();
+        movePairer.clear();
+        selfWrites.clear();
+        registeredDirs.clear();
+        degradedDirs.clear();
+        overflowPending.clear();
+        budgetNotified = false;
+        snapshots.clear();
+        registeredRecursiveRoots = Set.of();
+        LOG.info("[" + projectName + "] Unsubscribed " + dirsBefore + " directories from the shared WatchService. Native FileChangeEventWatcherService stopped logic completed.");
     }
 
     @Override
@@ -937,43 +1294,83 @@ public class FileChangeEventWatcherService implements Disposable {
         String projectName = project.isDisposed() ? "DisposedProject" : project.getName();
         LOG.info("Disposing FileChangeEventWatcherService for project: " + projectName);
         stopWatching(); // Ensure watcher is stopped
+        pollingWatcher.dispose();
+        debouncer.dispose();
+        batcher.dispose();
+        refreshQueue.dispose();
+        maintenanceExecutor.shutdown();
+        syncResidentHandlers(Set.of());
 
         // Clear collections, though synchronized methods should handle this if project is closing.
         // No need for explicit sync here if stopWatching is robust.
         activeWatchers.clear();
         watcherPath.clear();
+        watchIndex = WatchIndex.empty();
 
-        if (!scriptExecutorService.isShutdown()) {
-            LOG.info("[" + projectName + "] Shutting down scriptExecutorService.");
-            scriptExecutorService.shutdown();
-            try {
-                if (!scriptExecutorService.awaitTermination(5, TimeUnit.SECONDS)) {
-                    LOG.warn("[" + projectName + "] scriptExecutorService did not terminate in 5s, forcing shutdownNow().");
-                    scriptExecutorService.shutdownNow();
-                } else {
-                    LOG.info("[" + projectName + "] scriptExecutorService terminated gracefully.");
-                }
-            } catch (InterruptedException e) {
-                LOG.warn("[" + projectName + "] Interrupted during scriptExecutorService shutdown, forcing shutdownNow().");
-                scriptExecutorService.shutdownNow();
-                Thread.currentThread().interrupt();
-            }
+        LOG.info("[" + projectName + "] Shutting down script run queue (" + scriptRunQueue.getActiveRuns() + " running, " +
+                scriptRunQueue.getQueueDepth() + " waiting, " + scriptRunQueue.getRejectedRuns() + " rejected and " +
+                scriptRunQueue.getPolicyDroppedRuns() + " dropped by the overflow policy in total).");
+        if (scriptRunQueue.shutdown(TimeUnit.SECONDS.toMillis(5))) {
+            LOG.info("[" + projectName + "] Script run queue terminated gracefully.");
+        } else {
+            LOG.warn("[" + projectName + "] Scripts still running after 5s, interrupted.");
         }
         LOG.info("FileChangeEventWatcherService disposed for project: " + projectName);
     }
 
+    /** Concurrency policy of one script: how many runs may overlap, and whether a new event stops the running one. */
+    private static final class ScriptLane {
+        static final ScriptLane DEFAULT = new ScriptLane(WatchEntry.DEFAULT_MAX_PARALLEL, false);
+
+        final int limit;
+        final boolean latestWins;
+
+        ScriptLane(int limit, boolean latestWins) {
+            this.limit = limit;
+            this.latestWins = latestWins;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof ScriptLane other && limit == other.limit && latestWins == other.latestWins;
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(limit, latestWins);
+        }
+
+        @Override
+        public String toString() {
+            return latestWins ? WatchEntry.CONCURRENCY_LATEST_WINS : limit == 1 ? WatchEntry.CONCURRENCY_SERIAL : WatchEntry.CONCURRENCY_PARALLEL + " " + limit;
+        }
+    }
+
     // ActiveWatch class (ensure it's defined as discussed previously)
     private static class ActiveWatch {
         final String watchedPath;       // Configured path (absolute, normalized with /)
+        final Path watchedPathObj;      // watchedPath parsed once, used as WatchIndex key
         final String scriptToRun;       // Script to run (absolute, normalized with /)
         final boolean isDirectoryPretended; // True if the user configured this path *as if* it's a directory
         final boolean pathExists;       // True if the watchedPath existed at the time of config parsing
-
-        ActiveWatch(String watchedPath, String scriptToRun, boolean isDirectoryPretended, boolean pathExists) {
+        final boolean recursive;        // True if all nested subdirectories of the watched directory are watched too
+        final long debounceMillis;      // Quiet period before the script runs, 0 = immediately
+        final boolean batch;            // True if a burst of events is delivered to one script run
+        final PathFilter filter;        // Include/exclude globs, compiled once per configuration load
+        final String backend;           // WatchEntry.BACKEND_*: native, polling, or auto (polling on network/FUSE mounts)
+
+        ActiveWatch(String watchedPath, String scriptToRun, boolean isDirectoryPretended, boolean pathExists, boolean recursive,
+                    long debounceMillis, boolean batch, PathFilter filter, String backend) {
             this.watchedPath = watchedPath; // Should be absolute & normalized
+            this.watchedPathObj = Paths.get(watchedPath);
             this.scriptToRun = scriptToRun;   // Should be absolute & normalized
             this.isDirectoryPretended = isDirectoryPretended;
             this.pathExists = pathExists;
+            this.recursive = recursive;
+            this.debounceMillis = debounceMillis;
+            this.batch = batch;
+            this.filter = filter;
+            this.backend = backend;
         }
 
         @Override
@@ -983,6 +1380,11 @@ public class FileChangeEventWatcherService implements Disposable {
                     ", scriptToRun='" + scriptToRun + '\'' +
                     ", isDirectoryPretended=" + isDirectoryPretended +
                     ", pathExists=" + pathExists +
+                    ", recursive=" + recursive +
+                    ", debounceMillis=" + debounceMillis +
+                    ", batch=" + batch +
+                    ", filtered=" + !filter.isAcceptAll() +
+                    ", backend=" + backend +
                     '}';
         }
     }
@@ -5,12 +5,21 @@ import com.intellij.util.xmlb.annotations.Tag;
 
 @Tag("Mapping")
 public class Mapping {
+    // How /tree/ directory mappings are fetched. File mappings always use a plain download.
+    public static final String BACKEND_ZIPBALL = "zipball";
+    public static final String BACKEND_GIT = "git";
+    public static final String BACKEND_GIT_BLOBLESS = "git-blobless";
+    public static final String[] BACKENDS = {BACKEND_ZIPBALL, BACKEND_GIT, BACKEND_GIT_BLOBLESS};
+
     @Attribute("sourceUrl")
     public String sourceUrl = "";
 
     @Attribute("targetPath")
     public String targetPath = "";
 
+    @Attribute("backend")
+    public String backend = BACKEND_ZIPBALL;
+
     public Mapping() {
     }
 
@@ -19,17 +28,26 @@ public class Mapping {
         this.targetPath = targetPath != null ? targetPath : "";
     }
 
+    public Mapping(String sourceUrl, String targetPath, String backend) {
+        this(sourceUrl, targetPath);
+        this.backend = backend != null && !backend.isEmpty() ? backend : BACKEND_ZIPBALL;
+    }
+
+    public boolean usesGitMirror() {
+        return BACKEND_GIT.equals(backend) || BACKEND_GIT_BLOBLESS.equals(backend);
+    }
+
     @Override
     public boolean equals(Object o) {
         if (this == o) return true;
         if (o == null || getClass() != o.getClass()) return false;
         Mapping mapping = (Mapping) o;
-        return sourceUrl.equals(mapping.sourceUrl) && targetPath.equals(mapping.targetPath);
+        return sourceUrl.equals(mapping.sourceUrl) && targetPath.equals(mapping.targetPath) && backend.equals(mapping.backend);
     }
 
     @Override
     public int hashCode() {
-        return sourceUrl.hashCode() + targetPath.hashCode();
+        return sourceUrl.hashCode() + targetPath.hashCode() + backend.hashCode();
     }
 
     @Override
@@ -37,6 +55,7 @@ public class Mapping {
         return "Mapping{" +
                 "sourceUrl='" + sourceUrl + '\'' +
                 ", targetPath='" + targetPath + '\'' +
+                ", backend='" + backend + '\'' +
                 '}';
     }
 }
\ No newline at end of file
@@ -2,10 +2,12 @@ package com.example.syncfiles;
 
 import com.example.syncfiles.notifiers.FilesChangeNotifier;
 import com.example.syncfiles.util.Util;
+import com.example.syncfiles.watch.EventDebouncer;
+import com.example.syncfiles.watch.PathTrie;
 import com.intellij.openapi.Disposable;
 import com.intellij.openapi.diagnostic.Logger;
 import com.intellij.openapi.project.Project;
-import com.intellij.openapi.vfs.VirtualFile;
+import com.intellij.openapi.util.SystemInfo;
 import com.intellij.openapi.vfs.VirtualFileManager;
 import com.intellij.openapi.vfs.newvfs.BulkFileListener;
 import com.intellij.openapi.vfs.newvfs.events.*;
@@ -20,6 +22,8 @@ public class ProjectWatcherService implements Disposable {
     private MessageBusConnection connection;
     private boolean isRunning = false;
     private List<WatchEntry> configuredEntries = new ArrayList<>();
+    // Watched paths of configuredEntries, normalized once per configuration change; read lock-free by the VFS listener
+    private volatile PathTrie watchedPaths = PathTrie.empty();
 
     public enum EventType {
         CREATE,          // Corresponds to VFileCreateEvent
@@ -43,6 +47,12 @@ public class ProjectWatcherService implements Disposable {
 
         SyncFilesConfig config = SyncFilesConfig.getInstance(project);
         configuredEntries = config.getWatchEntries();
+        List<String> paths = new ArrayList<>();
+        for (WatchEntry entry : configuredEntries) {
+            String path = Util.ensureAbsolutePath(project, entry.watchedPath);
+            if (path != null) paths.add(path);
+        }
+        watchedPaths = PathTrie.build(paths, !(SystemInfo.isWindows || SystemInfo.isMac));
         if (!isRunning)
         {
             for (WatchEntry entry : configuredEntries){
@@ -65,55 +75,53 @@ public class ProjectWatcherService implements Disposable {
             @Override
             public void after(@NotNull List<? extends VFileEvent> events) {
                 if (!isRunning) return;
+                PathTrie trie = watchedPaths;
+                if (trie.isEmpty()) return;
 
-
+                // Runs inside VFS event delivery for every file change of the IDE: no Path parsing, no per-entry scan
                 for (VFileEvent event : events) {
-                    VirtualFile file = event.getFile();
                     EventType type = mapEventToEventType(event);
-                    LOG.info("[" + project.getName() + "]  ProjectWatcherService Before Event:" + event);
-                    if (file == null || type == EventType.UNKNOWN) continue;
-                    LOG.info("[" + project.getName() + "]  ProjectWatcherService After Event:" + event);
-
-                    String filePath = file.getPath().replace('\\', '/');
-                    filePath = Util.ensureAbsolutePath(project,filePath);
-
-                    String finalFilePath = filePath;
-                    List<WatchEntry> watchEntries = configuredEntries.stream().filter(watchEntry ->
-                            {
-                                if (finalFilePath != null && finalFilePath.equals(Util.ensureAbsolutePath(project,watchEntry.watchedPath))) return true;
-                                if (finalFilePath != null && finalFilePath.contains(Objects.requireNonNull(Util.ensureAbsolutePath(project, watchEntry.watchedPath))))
-                                    return true;
-                                if (finalFilePath != null && Objects.requireNonNull(Util.ensureAbsolutePath(project, watchEntry.watchedPath)).contains(finalFilePath)) {
-                                    return true;
-                                }
-                                return false;
-                            }
-                    ).toList();
-                    LOG.info("[" + project.getName() + "]  FinalPath :" + finalFilePath);
-                    for (WatchEntry entry : watchEntries)
-                    {
-                        LOG.info("[" + project.getName() + "]  executeWatchedScript  WatchEntry:" + entry.toString());
-                    }
-
-                    if (!watchEntries.isEmpty()) {
-                        String eventType;
-                        if (type == EventType.CREATE) eventType = "Change New";
-                        else if (type == EventType.REMOVE || type == EventType.MOVE) eventType = "Change Del";
-                        else if (type == EventType.MODIFY_CONTENT) eventType = "Change Mod";
-                        else
-                            eventType = "UnKnow";
-                        for (WatchEntry watchEntry : watchEntries) {
-                            LOG.info("[" + project.getName() + "]  Single WatchEntry :" + watchEntry.toString());
-                            project.getMessageBus().syncPublisher(FilesChangeNotifier.TOPIC).watchFileChanged(Util.ensureAbsolutePath(project,watchEntry.onEventScript), eventType, Util.ensureAbsolutePath(project,watchEntry.watchedPath));
-                        }
-
-                    }
-
+                    if (type == EventType.UNKNOWN) continue;
+                    publishFileChange(trie, event, type);
                 }
             }
         });
     }
 
+    /**
+     * Publishes a VFS event that concerns a watched path, with the file's own path; renames and moves carry their old
+     * path as well and are relevant if either side is.
+     */
+    private void publishFileChange(PathTrie trie, VFileEvent event, EventType type) {
+        String eventType;
+        String path = event.getPath(); // a copy's getFile() is the original, getPath() the new file
+        String movedFrom = null;
+        if (type == EventType.CREATE || type == EventType.COPY) {
+            eventType = EventDebouncer.CHANGE_NEW;
+        } else if (type == EventType.REMOVE) {
+            eventType = EventDebouncer.CHANGE_DEL;
+        } else if (type == EventType.MODIFY_CONTENT) {
+            eventType = EventDebouncer.CHANGE_MOD;
+        } else if (type == EventType.MOVE) {
+            VFileMoveEvent move = (VFileMoveEvent) event;
+            eventType = EventDebouncer.CHANGE_MOVE;
+            path = move.getNewPath();
+            movedFrom = move.getOldPath();
+        } else if (type == EventType.MODIFY_PROPERTY && ((VFilePropertyChangeEvent) event).isRename()) {
+            VFilePropertyChangeEvent rename = (VFilePropertyChangeEvent) event;
+            eventType = EventDebouncer.CHANGE_MOVE;
+            path = rename.getNewPath();
+            movedFrom = rename.getOldPath();
+        } else {
+            return; // permissions, encoding and other property changes do not concern watch scripts
+        }
+        if (path == null || path.contains("!/")) return; // entries inside jars and other archives
+        if (!trie.relates(path) && (movedFrom == null || !trie.relates(movedFrom))) return;
+        LOG.debug("[" + project.getName() + "] Relevant VFS event: " + eventType + " " + path + (movedFrom != null ? " (from " + movedFrom + ")" : ""));
+        project.getMessageBus().syncPublisher(FilesChangeNotifier.TOPIC).fileChanged(eventType, path.replace('\\', '/'),
+                movedFrom != null ? movedFrom.replace('\\', '/') : null);
+    }
+
     private synchronized void stopWatching() {
         if (!isRunning) return;
         LOG.info("[" + project.getName() + "] Stopping ProjectDirectoryWatcherService for script dir.");
@@ -1,7 +1,20 @@
 package com.example.syncfiles;
 
 import com.example.syncfiles.notifiers.FileDownloadFinishedNotifier;
+import com.example.syncfiles.sync.GitHubSource;
+import com.example.syncfiles.sync.GitMirror;
+import com.example.syncfiles.sync.MappingStats;
+import com.example.syncfiles.sync.SyncHistoryService;
+import com.example.syncfiles.sync.SyncPhase;
+import com.example.syncfiles.sync.SyncPlan;
+import com.example.syncfiles.sync.SyncPlanner;
+import com.example.syncfiles.sync.SyncProgress;
+import com.example.syncfiles.sync.SyncRunStats;
+import com.example.syncfiles.sync.SyncSingleFlight;
+import com.example.syncfiles.ui.SyncPlanDialog;
 import com.example.syncfiles.util.Util;
+import com.intellij.notification.NotificationGroupManager;
+import com.intellij.notification.NotificationType;
 import com.intellij.openapi.actionSystem.*;
 import com.intellij.openapi.progress.ProgressIndicator;
 import com.intellij.openapi.progress.ProgressManager;
@@ -10,8 +23,10 @@ import com.intellij.openapi.project.Project;
 import com.intellij.openapi.ui.Messages;
 import com.intellij.openapi.application.ApplicationManager;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 
 import java.io.*;
+import java.net.InetAddress;
 import java.net.URI;
 import java.net.http.HttpClient;
 import java.net.http.HttpRequest;
@@ -21,11 +36,18 @@ import java.nio.file.*;
 import java.util.Arrays;
 import java.util.Comparator;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
 import java.util.stream.Stream;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipInputStream;
 
 public class SyncAction extends AnAction {
+    // The project refresh runs on the EDT; don't hold the sync task forever if the EDT is blocked by a modal dialog
+    private static final long REFRESH_WAIT_SECONDS = 60;
 
     private boolean workflowCall = false;
     @Override
@@ -55,26 +77,79 @@ public class SyncAction extends AnAction {
 
     // Method remains mostly the same, but no longer interacts with a static watcher
     public void syncFiles(Project project) {
+        syncFiles(project, workflowCall ? "Workflow" : "Manual", null);
+    }
+
+    // trigger is recorded in the sync history; onFinished receives the finished run on the background thread
+    public void syncFiles(Project project, @NotNull String trigger, @Nullable Consumer<SyncRunStats> onFinished) {
         SyncFilesConfig config = SyncFilesConfig.getInstance(project);
         List<Mapping> mappings = config.getMappings();
 
         if (mappings.isEmpty()) {
-            Messages.showWarningDialog(project, "No mappings configured. Please check 'Settings > SyncFiles Settings'.", "Warning");
+            if (!"Auto".equals(trigger)) {
+                Messages.showWarningDialog(project, "No mappings configured. Please check 'Settings > SyncFiles Settings'.", "Warning");
+            }
+            if (onFinished != null) {
+                SyncRunStats skipped = new SyncRunStats(trigger);
+                skipped.finish(SyncRunStats.Outcome.CANCELED, "No mappings configured.");
+                onFinished.accept(skipped);
+            }
+            return;
+        }
+
+        // Single-flight: a trigger that arrives while this project is already syncing attaches to that run.
+        CompletableFuture<SyncRunStats> flight = new CompletableFuture<>();
+        CompletableFuture<SyncRunStats> running = SyncSingleFlight.register(project, flight);
+        if (running != null) {
+            System.out.println("Sync already running for " + project.getName() + ", attaching '" + trigger + "' trigger to it.");
+            running.thenAccept(run -> {
+                if (run.getOutcome() != SyncRunStats.Outcome.FAILED) {
+                    publishWorkflowFinished();
+                }
+                if (onFinished != null) {
+                    onFinished.accept(run);
+                }
+            });
             return;
         }
 
-        ProgressManager.getInstance().run(new Task.Backgroundable(project, "Syncing GitHub Files", false) {
+        SyncRunStats runStats = new SyncRunStats(trigger);
+        SyncHistoryService.getInstance(project).record(runStats);
+
+        ProgressManager.getInstance().run(new Task.Backgroundable(project, "Syncing GitHub Files", true) {
+            private final AtomicBoolean flightCompleted = new AtomicBoolean();
+
             @Override
             public void run(@NotNull ProgressIndicator indicator) {
                 indicator.setIndeterminate(false); // Allow progress reporting
                 indicator.setText("Starting synchronization...");
                 int count = 0;
                 final int total = mappings.size();
+                SyncProgress progress = new SyncProgress(indicator, total);
+                MappingStats mappingStats = null;
+                SyncSingleFlight.ProcessLock processLock = null;
 
                 try {
+                    processLock = SyncSingleFlight.lock(project, indicator);
+                    if (processLock == null) {
+                        runStats.finish(SyncRunStats.Outcome.CANCELED, "Canceled while waiting for another IDE process.");
+                        return;
+                    }
+                    if (processLock.otherProcessCompleted()) {
+                        // Another IDE process has just completed a sync of the same targets; picking up its result is enough.
+                        indicator.setText("Synced by another IDE window, refreshing...");
+                        refreshAndTime(project, runStats);
+                        runStats.finish(SyncRunStats.Outcome.COMPLETED, "Synced by another IDE process.");
+                        publishWorkflowFinished();
+                        return;
+                    }
+                    if (processLock.waitedForOtherProcess()) {
+                        System.out.println("The sync of another IDE process for " + project.getName() + " did not complete, syncing here.");
+                    }
+
                     for (Mapping mapping : mappings) {
+                        progress.startMapping(count);
                         count++;
-                        indicator.setFraction((double) count / total);
                         String shortUrl = mapping.sourceUrl.length() > 50 ? mapping.sourceUrl.substring(0, 47) + "..." : mapping.sourceUrl;
                         indicator.setText(String.format("Syncing (%d/%d): %s", count, total, shortUrl));
 
@@ -82,26 +157,33 @@ public class SyncAction extends AnAction {
                             break;
                         }
 
-                        Path targetPath = resolveTargetPath(project, mapping.targetPath);
+                        Path targetPath = Util.resolveTargetPath(project, mapping.targetPath);
                         System.out.println("Target path resolved to: " + targetPath);
+                        mappingStats = runStats.startMapping(mapping);
 
                         if (mapping.sourceUrl.contains("raw.githubusercontent.com") || mapping.sourceUrl.matches("https://github.com/.+/.+/blob/.+")) {
                             // Handle raw links or direct blob links which often redirect to raw
                             String rawUrl = mapping.sourceUrl.replace("/blob/", "/raw/"); // Convert blob to raw just in case
-                            fetchFile(rawUrl, targetPath, indicator);
+                            fetchFile(rawUrl, targetPath, progress, mappingStats);
+                        } else if (mapping.sourceUrl.contains("/tree/") && mapping.usesGitMirror()) {
+                            fetchDirectoryFromMirror(mapping, targetPath, project.getBasePath(), progress, mappingStats);
                         } else if (mapping.sourceUrl.contains("/tree/")) {
-                            fetchDirectory(mapping.sourceUrl, targetPath, project.getBasePath(), indicator);
+                            fetchDirectory(mapping.sourceUrl, targetPath, project.getBasePath(), progress, mappingStats);
                         } else {
                             String message = "Unsupported URL format: " + mapping.sourceUrl + "\nSupports raw URLs, .../tree/... directory URLs, or .../blob/... file URLs.";
                             System.err.println(message);
-                            ApplicationManager.getApplication().invokeLater(() ->
-                                    Messages.showWarningDialog(project, message, "Warning")
-                            );
+                            mappingStats.setError(message);
+                            reportProblem(project, trigger, message, NotificationType.WARNING);
                         }
+                        progress.finishMapping();
+                        System.out.println("Mapping metrics for " + mapping.sourceUrl + ": " + SyncRunStats.formatBytes(mappingStats.getBytesDownloaded()) +
+                                String.format(" at %.2f MB/s", mappingStats.getDownloadMegabytesPerSecond()) +
+                                ", written: " + mappingStats.getFilesWritten() + ", skipped: " + mappingStats.getFilesSkipped());
                     }
 
-                    // Refresh VFS - still useful after downloads
-                    Util.refreshAllFiles(project);
+                    // Refresh VFS - still useful after downloads; waited for, so the summary below includes its time
+                    indicator.setText("Refreshing project files...");
+                    refreshAndTime(project, runStats);
 
                     // Watcher update is handled by settings changes or startup, not needed here typically.
                     // If a download *creates* a directory that *should* be watched based on config,
@@ -110,56 +192,127 @@ public class SyncAction extends AnAction {
 
                     if (indicator.isCanceled()) {
                         indicator.setText("Synchronization canceled.");
+                        runStats.finish(SyncRunStats.Outcome.CANCELED, "Canceled by user.");
                     } else {
                         indicator.setText("Synchronization complete.");
+                        runStats.finish(SyncRunStats.Outcome.COMPLETED, "");
                     }
-                    if (workflowCall)
-                    {
-                        ApplicationManager.getApplication().getMessageBus()
-                                .syncPublisher(FileDownloadFinishedNotifier.TOPIC)
-                                .downloadFinished();
-                    }
+                    System.out.println("Synchronization metrics: " + runStats.formatSummary());
+                    publishWorkflowFinished();
 
 
                 } catch (Exception ex) {
                     final String errorMessage = "Synchronization failed: " + ex.getMessage();
                     System.err.println(errorMessage);
                     ex.printStackTrace(); // Log full stack trace for debugging
-                    ApplicationManager.getApplication().invokeLater(() -> {
-                        Messages.showErrorDialog(project, errorMessage, "Error");
-                    });
+                    if (mappingStats != null) {
+                        mappingStats.setError(ex.getMessage());
+                    }
+                    runStats.finish(SyncRunStats.Outcome.FAILED, errorMessage);
+                    reportProblem(project, trigger, errorMessage, NotificationType.ERROR);
                     indicator.setText("Synchronization failed.");
+                } finally {
+                    if (processLock != null) {
+                        processLock.recordOutcome(runStats);
+                        processLock.close();
+                    }
+                    completeFlight();
+                }
+            }
+
+            @Override
+            public void onFinished() {
+                // Also reached if run() never started (canceled before it began, project closed): without this the
+                // flight stays registered and every later trigger would attach to a future that never completes.
+                if (runStats.getOutcome() == SyncRunStats.Outcome.RUNNING) {
+                    runStats.finish(SyncRunStats.Outcome.CANCELED, "Sync task did not run.");
+                }
+                completeFlight();
+            }
+
+            private void completeFlight() {
+                if (!flightCompleted.compareAndSet(false, true)) return;
+                try {
+                    if (onFinished != null) {
+                        onFinished.accept(runStats);
+                    }
+                } finally {
+                    SyncSingleFlight.complete(project, flight, runStats);
                 }
             }
         });
     }
 
-    // Helper to resolve target path consistently
-    private Path resolveTargetPath(Project project, String targetPathString) {
-        Path targetPath;
-        if (targetPathString == null || targetPathString.trim().isEmpty()) {
-            throw new IllegalArgumentException("Target path cannot be empty.");
-        }
-        targetPathString = targetPathString.trim();
-        // Check if absolute (Windows C:\ or Unix /)
-        if (Paths.get(targetPathString).isAbsolute()) {
-            targetPath = Paths.get(targetPathString);
+    // Runs the usual project refresh and records how long it took before the run is finished and summarised
+    private static void refreshAndTime(Project project, SyncRunStats runStats) throws InterruptedException {
+        final long refreshStart = System.nanoTime();
+        CountDownLatch refreshed = new CountDownLatch(1);
+        Util.refreshAllFiles(project, refreshed::countDown);
+        if (refreshed.await(REFRESH_WAIT_SECONDS, TimeUnit.SECONDS)) {
+            runStats.setRefreshNanos(System.nanoTime() - refreshStart);
         } else {
-            // Relative path - resolve against project base path
-            String projectBasePath = project.getBasePath();
-            if (projectBasePath == null) {
-                throw new IllegalStateException("Project base path is null, cannot resolve relative target path.");
+            System.err.println("VFS refresh for " + project.getName() + " did not finish within " + REFRESH_WAIT_SECONDS + " s (EDT busy or a modal dialog open); REFRESH time not recorded.");
+        }
+    }
+
+    // Unattended auto-syncs must not open modal dialogs (they would repeat every probe cycle); they get a balloon instead
+    private static void reportProblem(Project project, String trigger, String message, NotificationType type) {
+        if ("Auto".equals(trigger)) {
+            NotificationGroupManager.getInstance().getNotificationGroup("SyncFiles.NotificationGroup")
+                    .createNotification("SyncFiles: auto-sync " + (type == NotificationType.ERROR ? "failed" : "problem"), message, type)
+                    .notify(project);
+            return;
+        }
+        ApplicationManager.getApplication().invokeLater(() -> {
+            if (type == NotificationType.ERROR) {
+                Messages.showErrorDialog(project, message, "Error");
+            } else {
+                Messages.showWarningDialog(project, message, "Warning");
             }
-            targetPath = Paths.get(projectBasePath, targetPathString);
+        });
+    }
+
+    private void publishWorkflowFinished() {
+        if (workflowCall)
+        {
+            ApplicationManager.getApplication().getMessageBus()
+                    .syncPublisher(FileDownloadFinishedNotifier.TOPIC)
+                    .downloadFinished();
         }
-        // Normalize the path (e.g., remove ../)
-        return targetPath.normalize();
     }
 
+    // Dry run: computes what syncFiles would change from metadata only (no content download, nothing written)
+    // and offers to start the real sync from the plan dialog.
+    public void planSync(Project project) {
+        List<Mapping> mappings = SyncFilesConfig.getInstance(project).getMappings();
+        if (mappings.isEmpty()) {
+            Messages.showWarningDialog(project, "No mappings configured. Please check 'Settings > SyncFiles Settings'.", "Warning");
+            return;
+        }
+
+        ProgressManager.getInstance().run(new Task.Backgroundable(project, "Planning GitHub Sync", true) {
+            @Override
+            public void run(@NotNull ProgressIndicator indicator) {
+                indicator.setIndeterminate(false);
+                indicator.setText("Computing sync plan for " + mappings.size() + " mappings...");
+                long start = System.nanoTime();
+                List<SyncPlan> plans = SyncPlanner.getInstance(project).plan(mappings, indicator);
+                long elapsed = System.nanoTime() - start;
+                System.out.println("Sync plan computed in " + SyncRunStats.formatNanos(elapsed));
+                ApplicationManager.getApplication().invokeLater(() -> {
+                    if (project.isDisposed()) return;
+                    if (new SyncPlanDialog(project, plans, elapsed).showAndGet()) {
+                        syncFiles(project);
+                    }
+                });
+            }
+        });
+    }
 
-    // Pass indicator to potentially cancel downloads
-    private void fetchFile(String url, Path targetPath, ProgressIndicator indicator) throws IOException, InterruptedException {
+    // Pass progress to potentially cancel downloads and to report byte-accurate progress
+    private void fetchFile(String url, Path targetPath, SyncProgress progress, MappingStats stats) throws IOException, InterruptedException {
         System.out.println("Fetching file: " + url);
+        ProgressIndicator indicator = progress.getIndicator();
         indicator.setText2("Downloading: " + url); // More detailed progress
 
         HttpClient client = HttpClient.newBuilder()
@@ -167,7 +320,10 @@ public class SyncAction extends AnAction {
                 .build();
         HttpRequest request = HttpRequest.newBuilder().uri(URI.create(url)).build();
 
+        resolveHostTimed(request.uri(), stats);
+        long connectStart = System.nanoTime();
         HttpResponse<InputStream> response = client.send(request, HttpResponse.BodyHandlers.ofInputStream());
+        stats.addPhaseNanos(SyncPhase.CONNECT, System.nanoTime() - connectStart);
 
         if (response.statusCode() != 200) {
             // Try reading error body if available
@@ -184,49 +340,73 @@ public class SyncAction extends AnAction {
         Files.createDirectories(targetPath.getParent());
 
         // Download the file content
+        progress.phase(0.0, 1.0);
         try (InputStream inputStream = response.body();
              OutputStream outputStream = Files.newOutputStream(targetPath, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            copyWithProgress(inputStream, outputStream, response, progress, stats, "Download cancelled by user.");
+        }
+        stats.fileWritten();
+        indicator.setText2(""); // Clear detailed progress
+        System.out.println("File saved to: " + targetPath);
+    }
+
+    // Times the DNS lookup separately so CONNECT measures only connect/TLS/headers; the JDK caches the result for the request.
+    private void resolveHostTimed(URI uri, MappingStats stats) {
+        if (uri.getHost() == null) return;
+        long dnsStart = System.nanoTime();
+        try {
+            InetAddress.getAllByName(uri.getHost());
+        } catch (IOException e) {
+            System.err.println("DNS lookup failed for " + uri.getHost() + ": " + e.getMessage()); // client.send will report the real error
+        }
+        stats.addPhaseNanos(SyncPhase.DNS, System.nanoTime() - dnsStart);
+    }
 
+    // Streams a response body to disk, updating the progress bar from Content-Length when the server sends it.
+    private void copyWithProgress(InputStream in, OutputStream out, HttpResponse<?> response, SyncProgress progress,
+                                  MappingStats stats, String cancelMessage) throws IOException {
+        ProgressIndicator indicator = progress.getIndicator();
+        long contentLength = response.headers().firstValueAsLong("Content-Length").orElse(-1L);
+        stats.setContentLength(contentLength);
+        long downloadStart = System.nanoTime();
+        long lastUiUpdate = 0;
+        long done = 0;
+        try {
             byte[] buffer = new byte[8192];
             int bytesRead;
-            while ((bytesRead = inputStream.read(buffer)) != -1) {
+            while ((bytesRead = in.read(buffer)) != -1) {
                 if (indicator.isCanceled()) {
-                    throw new IOException("Download cancelled by user.");
+                    throw new IOException(cancelMessage);
+                }
+                out.write(buffer, 0, bytesRead);
+                done += bytesRead;
+                long now = System.nanoTime();
+                if (now - lastUiUpdate > 100_000_000L) { // Throttle indicator updates to ~10/s
+                    lastUiUpdate = now;
+                    progress.update(done, contentLength);
+                    indicator.setText2("Downloading: " + SyncProgress.describeTransfer(done, contentLength, now - downloadStart));
                 }
-                outputStream.write(buffer, 0, bytesRead);
-                // Optional: Update indicator progress based on Content-Length if available
             }
+            progress.update(done, contentLength > 0 ? contentLength : done);
+        } finally {
+            stats.addBytesDownloaded(done);
+            stats.addPhaseNanos(SyncPhase.DOWNLOAD, System.nanoTime() - downloadStart);
         }
-        indicator.setText2(""); // Clear detailed progress
-        System.out.println("File saved to: " + targetPath);
     }
 
-    private void fetchDirectory(String repoUrl, Path targetPath, String workspacePath, ProgressIndicator indicator) throws IOException, InterruptedException {
+    private void fetchDirectory(String repoUrl, Path targetPath, String workspacePath, SyncProgress progress, MappingStats stats) throws IOException, InterruptedException {
         System.out.println("Original repoUrl: " + repoUrl);
+        ProgressIndicator indicator = progress.getIndicator();
         indicator.setText2("Parsing GitHub URL...");
-        String normalizedUrl = repoUrl.trim().replaceAll("^https?://(www\\.)?github\\.com/", "https://github.com/");
-
-        if (!normalizedUrl.contains("/tree/")) {
+        GitHubSource source = GitHubSource.parse(repoUrl);
+        if (source.getKind() != GitHubSource.Kind.TREE) {
             throw new IllegalArgumentException("Invalid GitHub directory URL. Must contain '/tree/'. URL: " + repoUrl);
         }
+        String branch = source.getRef();
+        String subPath = source.getPath();
+        System.out.println("Repo part: " + source.getRepoUrl() + ", Branch: " + branch + ", SubPath in repo: " + subPath);
 
-        String[] parts = normalizedUrl.split("/tree/", 2); // Limit split to 2 parts
-        if (parts.length != 2) {
-            throw new IllegalArgumentException("Invalid URL format. Expected format like '.../tree/branch/path'. URL: " + repoUrl);
-        }
-        String repoPart = parts[0];
-        String branchAndPath = parts[1];
-        System.out.println("Repo part: " + repoPart + ", Branch/Path part: " + branchAndPath);
-
-        String[] pathSegments = branchAndPath.split("/", 2); // Split branch from the rest of the path
-        String branch = pathSegments[0];
-        String subPath = pathSegments.length > 1 ? java.net.URLDecoder.decode(pathSegments[1], StandardCharsets.UTF_8) : "";
-        // Normalize subPath: remove leading/trailing slashes, replace backslashes
-        subPath = subPath.replaceAll("^/|/$", "").replace('\\', '/');
-        System.out.println("Branch: " + branch + ", SubPath in repo: " + subPath);
-
-        String repoApiBase = repoPart.replace("https://github.com/", "https://api.github.com/repos/");
-        String zipUrl = String.format("%s/zipball/%s", repoApiBase, branch); // Use zipball API endpoint
+        String zipUrl = source.getZipballUrl(); // Use zipball API endpoint
         System.out.println("Fetching ZIP from API: " + zipUrl);
 
         HttpClient client = HttpClient.newBuilder()
@@ -240,7 +420,10 @@ public class SyncAction extends AnAction {
                 .build();
 
         indicator.setText2("Downloading repository ZIP for branch: " + branch);
+        resolveHostTimed(request.uri(), stats);
+        long connectStart = System.nanoTime();
         HttpResponse<InputStream> response = client.send(request, HttpResponse.BodyHandlers.ofInputStream());
+        stats.addPhaseNanos(SyncPhase.CONNECT, System.nanoTime() - connectStart);
         System.out.println("HTTP Status: " + response.statusCode());
 
         if (response.statusCode() != 200) {
@@ -262,14 +445,11 @@ public class SyncAction extends AnAction {
         System.out.println("Saving ZIP to: " + zipPath);
         Files.createDirectories(zipPath.getParent());
 
+        // Download: first 60% of this mapping's progress slot
+        progress.phase(0.0, 0.6);
         try (InputStream in = response.body();
              OutputStream fos = Files.newOutputStream(zipPath, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING)) {
-            byte[] buffer = new byte[8192];
-            int bytesRead;
-            while ((bytesRead = in.read(buffer)) != -1) {
-                if (indicator.isCanceled()) throw new IOException("Download cancelled.");
-                fos.write(buffer, 0, bytesRead);
-            }
+            copyWithProgress(in, fos, response, progress, stats, "Download cancelled.");
         }
 
         if (!Files.exists(zipPath) || Files.size(zipPath) == 0) {
@@ -280,7 +460,10 @@ public class SyncAction extends AnAction {
         indicator.setText2("Extracting files...");
         // Clean extraction target first
         deleteDirectoryRecursively(tempExtractPath);
-        unzip(zipPath, tempExtractPath, indicator);
+        progress.phase(0.6, 0.8);
+        long extractStart = System.nanoTime();
+        long extractedBytes = unzip(zipPath, tempExtractPath, progress);
+        stats.addPhaseNanos(SyncPhase.EXTRACT, System.nanoTime() - extractStart);
 
         // Find the root directory *inside* the extracted zip (usually named user-repo-commitsha)
         Path extractedRootDir;
@@ -306,7 +489,9 @@ public class SyncAction extends AnAction {
 
         System.out.println("Merging from: " + sourceDir + " to target: " + targetPath);
         indicator.setText2("Merging files into target directory...");
-        mergeDirectory(sourceDir, targetPath, indicator);
+        progress.phase(0.8, 1.0);
+        // extractedBytes covers the whole repository; a subPath merge simply finishes its slot early
+        mergeDirectory(sourceDir, targetPath, progress, stats, new long[]{0L}, extractedBytes);
 
         // Cleanup
         indicator.setText2("Cleaning up temporary files...");
@@ -321,11 +506,53 @@ public class SyncAction extends AnAction {
         System.out.println("Directory synced to: " + targetPath);
     }
 
-    private void unzip(Path zipPath, Path extractPath, ProgressIndicator indicator) throws IOException {
+    // Alternative to the zipball: incremental fetch into a shared bare mirror, then check out only the mapped subPath.
+    private void fetchDirectoryFromMirror(Mapping mapping, Path targetPath, String workspacePath, SyncProgress progress, MappingStats stats) throws IOException, InterruptedException {
+        ProgressIndicator indicator = progress.getIndicator();
+        GitHubSource source = GitHubSource.parse(mapping.sourceUrl);
+        GitMirror mirror = new GitMirror(source.getRepoUrl(), Mapping.BACKEND_GIT_BLOBLESS.equals(mapping.backend));
+        System.out.println("Using git mirror " + mirror.getMirrorDir() + " for " + source);
+
+        // Fetch: first 60% of this mapping's progress slot
+        progress.phase(0.0, 0.6);
+        String commit = mirror.fetch(source.getRef(), progress, stats);
+        System.out.println("Fetched " + source.getRef() + " at " + commit);
+
+        Path tempDir = workspacePath != null ? Paths.get(workspacePath, ".syncfiles-temp") : Files.createTempDirectory("syncfiles-");
+        Path checkoutDir = tempDir.resolve("checkout");
+        deleteDirectoryRecursively(checkoutDir);
+        progress.phase(0.6, 0.8);
+        Path sourceDir = mirror.checkout(commit, source.getPath(), checkoutDir, progress, stats);
+
+        long totalBytes;
+        try (Stream<Path> walk = Files.walk(sourceDir)) {
+            totalBytes = walk.filter(Files::isRegularFile).mapToLong(p -> p.toFile().length()).sum();
+        }
+        System.out.println("Merging from: " + sourceDir + " to target: " + targetPath);
+        indicator.setText2("Merging files into target directory...");
+        progress.phase(0.8, 1.0);
+        mergeDirectory(sourceDir, targetPath, progress, stats, new long[]{0L}, totalBytes);
+
+        indicator.setText2("Cleaning up temporary files...");
+        try {
+            deleteDirectoryRecursively(tempDir);
+        } catch (IOException e) {
+            System.err.println("Failed to clean up temporary directory: " + tempDir + " - Error: " + e.getMessage());
+        }
+        indicator.setText2("");
+        System.out.println("Directory synced from mirror to: " + targetPath);
+    }
+
+    // Returns the number of uncompressed bytes written; progress is driven by compressed bytes consumed from the ZIP.
+    private long unzip(Path zipPath, Path extractPath, SyncProgress progress) throws IOException {
         System.out.println("Unzipping: " + zipPath + " to: " + extractPath);
+        ProgressIndicator indicator = progress.getIndicator();
         Files.createDirectories(extractPath); // Ensure target exists
+        final long zipSize = Files.size(zipPath);
+        long extractedBytes = 0;
 
-        try (ZipInputStream zis = new ZipInputStream(Files.newInputStream(zipPath))) {
+        try (CountingInputStream counting = new CountingInputStream(new BufferedInputStream(Files.newInputStream(zipPath)));
+             ZipInputStream zis = new ZipInputStream(counting)) {
             ZipEntry entry;
             while ((entry = zis.getNextEntry()) != null) {
                 if (indicator.isCanceled()) throw new IOException("Unzip cancelled.");
@@ -348,17 +575,56 @@ public class SyncAction extends AnAction {
                         while ((len = zis.read(buffer)) > 0) {
                             if (indicator.isCanceled()) throw new IOException("Unzip cancelled.");
                             fos.write(buffer, 0, len);
+                            extractedBytes += len;
                         }
                     }
                 }
                 zis.closeEntry();
+                progress.update(counting.getCount(), zipSize);
             }
         }
+        return extractedBytes;
+    }
+
+    // Counts bytes read from the underlying stream so extraction progress can follow the compressed size.
+    private static final class CountingInputStream extends FilterInputStream {
+        private long count = 0;
+
+        CountingInputStream(InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b != -1) count++;
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int n = super.read(b, off, len);
+            if (n > 0) count += n;
+            return n;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            long skipped = super.skip(n);
+            count += skipped;
+            return skipped;
+        }
+
+        long getCount() {
+            return count;
+        }
     }
 
-    private void mergeDirectory(Path source, Path target, ProgressIndicator indicator) throws IOException {
+    // mergedBytes is a one-element accumulator shared across the recursion; totalBytes drives the progress sub-range.
+    private void mergeDirectory(Path source, Path target, SyncProgress progress, MappingStats stats,
+                                long[] mergedBytes, long totalBytes) throws IOException {
         // System.out.println("Merging source: " + source + " -> target: " + target); // Verbose
-        if (indicator.isCanceled()) throw new IOException("Merge cancelled.");
+        if (progress.getIndicator().isCanceled()) throw new IOException("Merge cancelled.");
 
         if (Files.isDirectory(source)) {
             // Create target directory if it doesn't exist
@@ -368,17 +634,26 @@ public class SyncAction extends AnAction {
             try (Stream<Path> stream = Files.list(source)) {
                 List<Path> entries = stream.toList(); // Collect to avoid issues with stream closing during recursion
                 for (Path entry : entries) {
-                    mergeDirectory(entry, target.resolve(entry.getFileName()), indicator);
+                    mergeDirectory(entry, target.resolve(entry.getFileName()), progress, stats, mergedBytes, totalBytes);
                 }
             }
         } else if (Files.isRegularFile(source)) {
             // Handle file merge: copy if target doesn't exist or if content differs
-            if (!Files.exists(target) || !filesAreIdentical(source, target)) {
+            long compareStart = System.nanoTime();
+            boolean identical = Files.exists(target) && filesAreIdentical(source, target);
+            stats.addPhaseNanos(SyncPhase.COMPARE, System.nanoTime() - compareStart);
+            if (!identical) {
+                long copyStart = System.nanoTime();
                 Files.copy(source, target, StandardCopyOption.REPLACE_EXISTING);
+                stats.addPhaseNanos(SyncPhase.COPY, System.nanoTime() - copyStart);
+                stats.fileWritten();
                 // System.out.println("Copied/Updated file: " + target);
             } else {
+                stats.fileSkipped();
                 // System.out.println("Skipped identical file: " + target);
             }
+            mergedBytes[0] += Files.size(source);
+            progress.update(mergedBytes[0], totalBytes);
         }
         // Ignore other file types like symlinks for simplicity, or handle explicitly if needed
     }
@@ -1,5 +1,6 @@
 package com.example.syncfiles;
 
+import com.example.syncfiles.watch.ScriptRunQueue;
 import com.intellij.openapi.components.*;
 import com.intellij.openapi.project.Project;
 import com.intellij.util.xmlb.XmlSerializerUtil;
@@ -41,6 +42,18 @@ public final class SyncFilesConfig implements PersistentStateComponent<SyncFiles
         @XCollection(style = XCollection.Style.v2, elementTypes = ScriptGroup.class)
         public List<ScriptGroup> scriptGroups = new ArrayList<>();
 
+        @OptionTag("autoSyncEnabled")
+        public boolean autoSyncEnabled = false;
+
+        @OptionTag("autoSyncIntervalMinutes")
+        public int autoSyncIntervalMinutes = 15;
+
+        @OptionTag("maxConcurrentScripts")
+        public int maxConcurrentScripts = ScriptRunQueue.DEFAULT_MAX_CONCURRENT;
+
+        @OptionTag("scriptOverflowPolicy")
+        public String scriptOverflowPolicy = ScriptRunQueue.POLICY_COALESCE;
+
         // --- equals and hashCode ---
         // IMPORTANT: This assumes that Mapping, WatchEntry, and ScriptGroup
         // (and ScriptEntry if ScriptGroup.equals depends on it)
@@ -60,12 +73,17 @@ public final class SyncFilesConfig implements PersistentStateComponent<SyncFiles
                     Objects.equals(pythonScriptPath, state.pythonScriptPath) &&
                     Objects.equals(pythonExecutablePath, state.pythonExecutablePath) &&
                     Objects.equals(watchEntries, state.watchEntries) &&
-                    Objects.equals(scriptGroups, state.scriptGroups);
+                    Objects.equals(scriptGroups, state.scriptGroups) &&
+                    autoSyncEnabled == state.autoSyncEnabled &&
+                    autoSyncIntervalMinutes == state.autoSyncIntervalMinutes &&
+                    maxConcurrentScripts == state.maxConcurrentScripts &&
+                    Objects.equals(scriptOverflowPolicy, state.scriptOverflowPolicy);
         }
 
         @Override
         public int hashCode() {
-            return Objects.hash(mappings, envVariables, pythonScriptPath, pythonExecutablePath, watchEntries, scriptGroups);
+            return Objects.hash(mappings, envVariables, pythonScriptPath, pythonExecutablePath, watchEntries, scriptGroups,
+                    autoSyncEnabled, autoSyncIntervalMinutes, maxConcurrentScripts, scriptOverflowPolicy);
         }
     }
 
@@ -162,6 +180,54 @@ public final class SyncFilesConfig implements PersistentStateComponent<SyncFiles
         }
     }
 
+    public boolean isAutoSyncEnabled() {
+        synchronized (myState) {
+            return myState.autoSyncEnabled;
+        }
+    }
+
+    public void setAutoSyncEnabled(boolean autoSyncEnabled) {
+        synchronized (myState) {
+            myState.autoSyncEnabled = autoSyncEnabled;
+        }
+    }
+
+    public int getAutoSyncIntervalMinutes() {
+        synchronized (myState) {
+            return Math.max(1, myState.autoSyncIntervalMinutes);
+        }
+    }
+
+    public void setAutoSyncIntervalMinutes(int autoSyncIntervalMinutes) {
+        synchronized (myState) {
+            myState.autoSyncIntervalMinutes = Math.max(1, autoSyncIntervalMinutes);
+        }
+    }
+
+    public int getMaxConcurrentScripts() {
+        synchronized (myState) {
+            return Math.max(1, Math.min(ScriptRunQueue.MAX_CONCURRENT_LIMIT, myState.maxConcurrentScripts));
+        }
+    }
+
+    public void setMaxConcurrentScripts(int maxConcurrentScripts) {
+        synchronized (myState) {
+            myState.maxConcurrentScripts = Math.max(1, Math.min(ScriptRunQueue.MAX_CONCURRENT_LIMIT, maxConcurrentScripts));
+        }
+    }
+
+    public String getScriptOverflowPolicy() {
+        synchronized (myState) {
+            return ScriptRunQueue.isKnownPolicy(myState.scriptOverflowPolicy) ? myState.scriptOverflowPolicy : ScriptRunQueue.POLICY_COALESCE;
+        }
+    }
+
+    public void setScriptOverflowPolicy(String scriptOverflowPolicy) {
+        synchronized (myState) {
+            myState.scriptOverflowPolicy = ScriptRunQueue.isKnownPolicy(scriptOverflowPolicy) ? scriptOverflowPolicy : ScriptRunQueue.POLICY_COALESCE;
+        }
+    }
+
     public List<WatchEntry> getWatchEntries() {
         synchronized (myState) {
             return new ArrayList<>(myState.watchEntries);
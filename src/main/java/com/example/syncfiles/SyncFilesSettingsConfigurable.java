@@ -1,7 +1,10 @@
 package com.example.syncfiles;
 
 import com.example.syncfiles.notifiers.SyncFilesNotifier;
+import com.example.syncfiles.sync.AutoSyncScheduler;
 import com.example.syncfiles.util.Util;
+import com.example.syncfiles.watch.PathFilter;
+import com.example.syncfiles.watch.ScriptRunQueue;
 import com.intellij.openapi.fileChooser.FileChooser;
 import com.intellij.openapi.fileChooser.FileChooserDescriptor;
 import com.intellij.openapi.fileChooser.FileChooserDescriptorFactory;
@@ -13,6 +16,7 @@ import com.intellij.openapi.util.Comparing;
 import com.intellij.openapi.util.text.StringUtil;
 import com.intellij.openapi.vfs.VirtualFile;
 import com.intellij.ui.ToolbarDecorator;
+import com.intellij.ui.components.JBCheckBox;
 import com.intellij.ui.components.JBLabel;
 import com.intellij.ui.table.JBTable;
 import com.intellij.util.ui.JBUI;
@@ -45,6 +49,10 @@ public class SyncFilesSettingsConfigurable implements Configurable {
     private final Project project;
     private TextFieldWithBrowseButton pythonScriptPathField;
     private TextFieldWithBrowseButton pythonExecutablePathField;
+    private JBCheckBox autoSyncCheckBox;
+    private JSpinner autoSyncIntervalSpinner;
+    private JSpinner maxConcurrentScriptsSpinner;
+    private JComboBox<String> scriptOverflowPolicyComboBox;
 
     // 新增：用于监控项的表格
     private JBTable watchEntriesTable;
@@ -57,6 +65,10 @@ public class SyncFilesSettingsConfigurable implements Configurable {
     private String originalScriptPath;
     private String originalExePath;
     private List<WatchEntry> originalWatchEntries;
+    private boolean originalAutoSyncEnabled;
+    private int originalAutoSyncInterval;
+    private int originalMaxConcurrentScripts;
+    private String originalScriptOverflowPolicy;
 
 
     public SyncFilesSettingsConfigurable(Project project) {
@@ -73,15 +85,17 @@ public class SyncFilesSettingsConfigurable implements Configurable {
     @Override
     public JComponent createComponent() {
         // --- Mappings Table Setup ---
-        mappingsTableModel = new DefaultTableModel(new Object[]{"Source URL", "Target Path"}, 0) {
+        mappingsTableModel = new DefaultTableModel(new Object[]{"Source URL", "Target Path", "Directory Backend"}, 0) {
             @Override
             public boolean isCellEditable(int row, int column) {
                 return true;
             }
         };
         mappingsTable = new JBTable(mappingsTableModel);
+        // zipball: download the branch ZIP each sync; git / git-blobless: incremental fetch into a local bare mirror
+        mappingsTable.getColumnModel().getColumn(2).setCellEditor(new DefaultCellEditor(new JComboBox<>(Mapping.BACKENDS)));
         JPanel mappingsPanel = ToolbarDecorator.createDecorator(mappingsTable)
-                .setAddAction(button -> mappingsTableModel.addRow(new String[]{"", ""}))
+                .setAddAction(button -> mappingsTableModel.addRow(new String[]{"", "", Mapping.BACKEND_ZIPBALL}))
                 .setRemoveAction(button -> removeSelectedRows(mappingsTable, mappingsTableModel))
                 .setPreferredSize(new Dimension(500, 100))
                 .createPanel();
@@ -147,6 +161,9 @@ public class SyncFilesSettingsConfigurable implements Configurable {
         // --- Watch Entries Table Setup (新增) ---
         watchEntriesTableModel = new WatchEntriesTableModel(new ArrayList<>(), project, pythonScriptPathField);
         watchEntriesTable = new JBTable(watchEntriesTableModel);
+        watchEntriesTable.getColumnModel().getColumn(4).setCellEditor(new DefaultCellEditor(new JComboBox<>(WatchEntry.MODES)));
+        watchEntriesTable.getColumnModel().getColumn(5).setCellEditor(new DefaultCellEditor(new JComboBox<>(WatchEntry.CONCURRENCIES)));
+        watchEntriesTable.getColumnModel().getColumn(9).setCellEditor(new DefaultCellEditor(new JComboBox<>(WatchEntry.BACKENDS)));
         // 设置列编辑器和渲染器 (如果需要自定义浏览按钮)
         // watchEntriesTable.getColumnModel().getColumn(0).setCellEditor(new TextFieldWithBrowseButtonCellEditor(true, project));
         // watchEntriesTable.getColumnModel().getColumn(1).setCellEditor(new TextFieldWithBrowseButtonCellEditor(false, project, pythonScriptPathField));
@@ -218,6 +235,30 @@ public class SyncFilesSettingsConfigurable implements Configurable {
         gbc.insets = JBUI.insets(0, 0, 10, 0);
         mainPanel.add(pythonExecutablePathField, gbc);
 
+        // --- Auto-sync ---
+        autoSyncCheckBox = new JBCheckBox("Sync automatically when upstream changes, checking every");
+        autoSyncIntervalSpinner = new JSpinner(new SpinnerNumberModel(15, 1, 24 * 60, 1));
+        autoSyncIntervalSpinner.setEnabled(false);
+        autoSyncCheckBox.addActionListener(e -> autoSyncIntervalSpinner.setEnabled(autoSyncCheckBox.isSelected()));
+        JPanel autoSyncPanel = new JPanel(new FlowLayout(FlowLayout.LEFT, JBUI.scale(5), 0));
+        autoSyncPanel.add(autoSyncCheckBox);
+        autoSyncPanel.add(autoSyncIntervalSpinner);
+        autoSyncPanel.add(new JBLabel("minutes (idle checks back off up to 8x)"));
+        gbc.weightx = 1.0;
+        gbc.fill = GridBagConstraints.HORIZONTAL;
+        gbc.insets = JBUI.insets(0, 0, 10, 0);
+        mainPanel.add(autoSyncPanel, gbc);
+
+        // --- Watch script limits ---
+        maxConcurrentScriptsSpinner = new JSpinner(new SpinnerNumberModel(ScriptRunQueue.DEFAULT_MAX_CONCURRENT, 1, ScriptRunQueue.MAX_CONCURRENT_LIMIT, 1));
+        scriptOverflowPolicyComboBox = new JComboBox<>(ScriptRunQueue.POLICIES);
+        JPanel scriptLimitsPanel = new JPanel(new FlowLayout(FlowLayout.LEFT, JBUI.scale(5), 0));
+        scriptLimitsPanel.add(new JBLabel("Run at most"));
+        scriptLimitsPanel.add(maxConcurrentScriptsSpinner);
+        scriptLimitsPanel.add(new JBLabel("watch scripts at once; when " + ScriptRunQueue.MAX_QUEUED + " runs are waiting:"));
+        scriptLimitsPanel.add(scriptOverflowPolicyComboBox);
+        mainPanel.add(scriptLimitsPanel, gbc);
+
         gbc.weighty = 1.0; // Filler
         mainPanel.add(new JPanel(), gbc);
 
@@ -250,7 +291,13 @@ public class SyncFilesSettingsConfigurable implements Configurable {
         // ★★★ 修改结束 ★★★
         boolean watchEntriesChanged = !Comparing.equal(currentUIEntries, originalWatchEntries);
 
-        return mappingsChanged || envVarsChanged || scriptPathChanged || exePathChanged || watchEntriesChanged;
+        boolean autoSyncChanged = autoSyncCheckBox.isSelected() != originalAutoSyncEnabled
+                || (Integer) autoSyncIntervalSpinner.getValue() != originalAutoSyncInterval;
+        boolean scriptLimitsChanged = (Integer) maxConcurrentScriptsSpinner.getValue() != originalMaxConcurrentScripts
+                || !Objects.equals(scriptOverflowPolicyComboBox.getSelectedItem(), originalScriptOverflowPolicy);
+
+        return mappingsChanged || envVarsChanged || scriptPathChanged || exePathChanged || watchEntriesChanged || autoSyncChanged
+                || scriptLimitsChanged;
     }
 
     // ... 在 SyncFilesSettingsConfigurable.java 的 apply() 方法中 ...
@@ -279,8 +326,11 @@ public class SyncFilesSettingsConfigurable implements Configurable {
             if (StringUtil.isEmptyOrSpaces(mapping.targetPath)) {
                 throw new ConfigurationException("Mapping Entry #" + (i + 1) + ": 'Target Path' cannot be empty.");
             }
-            if (!mapping.sourceUrl.matches("^https?://.*")) { // 简单URL格式校验
-                throw new ConfigurationException("Mapping Entry #" + (i + 1) + ": Invalid 'Source URL' format. Must start with http:// or https://.");
+            if (!mapping.sourceUrl.matches("^https?://.*") && !(mapping.usesGitMirror() && mapping.sourceUrl.startsWith("file:"))) { // 简单URL格式校验
+                throw new ConfigurationException("Mapping Entry #" + (i + 1) + ": Invalid 'Source URL' format. Must start with http:// or https:// (file:// is allowed for the git backends).");
+            }
+            if (mapping.usesGitMirror() && !mapping.sourceUrl.contains("/tree/")) {
+                throw new ConfigurationException("Mapping Entry #" + (i + 1) + ": The '" + mapping.backend + "' backend only applies to '.../tree/branch/path' directory URLs.");
             }
             try {
                 Paths.get(mapping.targetPath.replace('\\', '/'));
@@ -400,6 +450,17 @@ public class SyncFilesSettingsConfigurable implements Configurable {
             if (StringUtil.isEmptyOrSpaces(entryOnEventScript)) {
                 throw new ConfigurationException("Watch Entry #" + (i + 1) + ": 'Python Script on Modify' cannot be empty.");
             }
+            if (entry.debounceMillis < 0 || entry.debounceMillis > WatchEntry.MAX_DEBOUNCE_MILLIS) {
+                throw new ConfigurationException("Watch Entry #" + (i + 1) + ": 'Debounce (ms)' must be between 0 and " + WatchEntry.MAX_DEBOUNCE_MILLIS + ".");
+            }
+            if (entry.maxParallel < 1 || entry.maxParallel > ScriptRunQueue.MAX_CONCURRENT_LIMIT) {
+                throw new ConfigurationException("Watch Entry #" + (i + 1) + ": 'Max Parallel' must be between 1 and " + ScriptRunQueue.MAX_CONCURRENT_LIMIT + ".");
+            }
+            try {
+                PathFilter.compile(entry.includeGlobs, entry.excludeGlobs);
+            } catch (IllegalArgumentException e) {
+                throw new ConfigurationException("Watch Entry #" + (i + 1) + ": invalid glob pattern: " + e.getMessage());
+            }
 
                 Path watchPath =  Paths.get(entryWatchedPath);
                 if (!watchPath.isAbsolute())
@@ -453,6 +514,14 @@ public class SyncFilesSettingsConfigurable implements Configurable {
         LOG.debug("[" + projectName + "][Settings] Watch entries applied. Count: " + watchEntriesFromUI.size());
 
 
+        // 6. 处理 Auto-sync
+        config.setAutoSyncEnabled(autoSyncCheckBox.isSelected());
+        config.setAutoSyncIntervalMinutes((Integer) autoSyncIntervalSpinner.getValue());
+
+        // 7. 处理脚本并发上限
+        config.setMaxConcurrentScripts((Integer) maxConcurrentScriptsSpinner.getValue());
+        config.setScriptOverflowPolicy((String) scriptOverflowPolicyComboBox.getSelectedItem());
+
         // 通知配置已更改
         project.getMessageBus().syncPublisher(SyncFilesNotifier.TOPIC).configurationChanged();
         LOG.info("[" + projectName + "][Settings] configurationChanged notification published.");
@@ -471,6 +540,7 @@ public class SyncFilesSettingsConfigurable implements Configurable {
             fileChangeEventWatcher.updateWatchersFromConfig();
         }
         LOG.info("[" + projectName + "][Settings] Watcher services instructed to update from new config.");
+        AutoSyncScheduler.getInstance(project).reschedule();
 
         updateOriginalState(); // 保存后更新原始状态，以便 isModified() 正确工作
         LOG.info("[" + projectName + "][Settings] Apply complete.");
@@ -486,13 +556,17 @@ public class SyncFilesSettingsConfigurable implements Configurable {
         originalExePath = config.getPythonExecutablePath() != null ? config.getPythonExecutablePath() : "";
         List<WatchEntry> loadedWatchEntries = config.getWatchEntries();
         this.originalWatchEntries = loadedWatchEntries.stream()
-                .map(entry -> new WatchEntry(entry.watchedPath, entry.onEventScript)) // 为每个 WatchEntry 创建新实例
+                .map(entry -> new WatchEntry(entry)) // 为每个 WatchEntry 创建新实例
                 .collect(Collectors.toCollection(ArrayList::new));
+        originalAutoSyncEnabled = config.isAutoSyncEnabled();
+        originalAutoSyncInterval = config.getAutoSyncIntervalMinutes();
+        originalMaxConcurrentScripts = config.getMaxConcurrentScripts();
+        originalScriptOverflowPolicy = config.getScriptOverflowPolicy();
 
 
         mappingsTableModel.setRowCount(0);
         for (Mapping mapping : originalMappings) {
-            mappingsTableModel.addRow(new Object[]{mapping.sourceUrl, mapping.targetPath});
+            mappingsTableModel.addRow(new Object[]{mapping.sourceUrl, mapping.targetPath, mapping.backend});
         }
 
         envVarsTableModel.setRowCount(0);
@@ -503,9 +577,14 @@ public class SyncFilesSettingsConfigurable implements Configurable {
         pythonScriptPathField.setText(originalScriptPath);
         pythonExecutablePathField.setText(originalExePath);
         List<WatchEntry> watchEntriesForTableModel = loadedWatchEntries.stream()
-                .map(entry -> new WatchEntry(entry.watchedPath, entry.onEventScript))
+                .map(entry -> new WatchEntry(entry))
                 .collect(Collectors.toCollection(ArrayList::new));
         watchEntriesTableModel.setEntries(watchEntriesForTableModel);
+        autoSyncCheckBox.setSelected(originalAutoSyncEnabled);
+        autoSyncIntervalSpinner.setValue(originalAutoSyncInterval);
+        autoSyncIntervalSpinner.setEnabled(originalAutoSyncEnabled);
+        maxConcurrentScriptsSpinner.setValue(originalMaxConcurrentScripts);
+        scriptOverflowPolicyComboBox.setSelectedItem(originalScriptOverflowPolicy);
     }
 
     private void updateOriginalState() {
@@ -516,8 +595,12 @@ public class SyncFilesSettingsConfigurable implements Configurable {
         originalExePath = pythonExecutablePathField.getText().trim();
         List<WatchEntry> currentEntriesInModel = watchEntriesTableModel.getEntries();
         originalWatchEntries = currentEntriesInModel.stream()
-                .map(entry -> new WatchEntry(entry.watchedPath, entry.onEventScript)) // 深拷贝
+                .map(entry -> new WatchEntry(entry)) // 深拷贝
                 .collect(Collectors.toCollection(ArrayList::new));
+        originalAutoSyncEnabled = autoSyncCheckBox.isSelected();
+        originalAutoSyncInterval = (Integer) autoSyncIntervalSpinner.getValue();
+        originalMaxConcurrentScripts = (Integer) maxConcurrentScriptsSpinner.getValue();
+        originalScriptOverflowPolicy = (String) scriptOverflowPolicyComboBox.getSelectedItem();
     }
 
 
@@ -532,6 +615,10 @@ public class SyncFilesSettingsConfigurable implements Configurable {
         watchEntriesTableModel = null;
         pythonScriptPathField = null;
         pythonExecutablePathField = null;
+        autoSyncCheckBox = null;
+        autoSyncIntervalSpinner = null;
+        maxConcurrentScriptsSpinner = null;
+        scriptOverflowPolicyComboBox = null;
         originalMappings = null;
         originalEnvVars = null;
         originalScriptPath = null;
@@ -544,8 +631,9 @@ public class SyncFilesSettingsConfigurable implements Configurable {
         for (int i = 0; i < mappingsTableModel.getRowCount(); i++) {
             String sourceUrl = ((String) mappingsTableModel.getValueAt(i, 0)).trim();
             String targetPath = ((String) mappingsTableModel.getValueAt(i, 1)).trim();
+            String backend = (String) mappingsTableModel.getValueAt(i, 2);
             if (!sourceUrl.isEmpty() || !targetPath.isEmpty()) { // 允许部分为空，apply时校验
-                mappings.add(new Mapping(sourceUrl, targetPath));
+                mappings.add(new Mapping(sourceUrl, targetPath, backend));
             }
         }
         return mappings;
@@ -565,7 +653,7 @@ public class SyncFilesSettingsConfigurable implements Configurable {
 
     // WatchEntriesTableModel 的实现
     private static class WatchEntriesTableModel extends AbstractTableModel {
-        private final List<String> columnNames = Arrays.asList("Path to Watch (File or Directory)", "Python Script on Modify");
+        private final List<String> columnNames = Arrays.asList("Path to Watch (File or Directory)", "Python Script on Modify", "Recursive", "Debounce (ms)", "Execution Mode", "Concurrency", "Max Parallel", "Include Globs (;)", "Exclude Globs (;)", "Watch Backend");
         private List<WatchEntry> entries;
         private final Project project;
         private final TextFieldWithBrowseButton pythonScriptPathGlobalField; // 用于获取全局Python脚本目录
@@ -579,13 +667,13 @@ public class SyncFilesSettingsConfigurable implements Configurable {
         public List<WatchEntry> getEntries() {
             // 返回副本以避免外部修改
             return entries.stream()
-                    .map(entry -> new WatchEntry(entry.watchedPath, entry.onEventScript))
+                    .map(entry -> new WatchEntry(entry))
                     .collect(Collectors.toList());
         }
 
         public void setEntries(List<WatchEntry> newEntries) {
             this.entries = newEntries.stream()
-                    .map(entry -> new WatchEntry(entry.watchedPath, entry.onEventScript)) // 深拷贝
+                    .map(entry -> new WatchEntry(entry)) // 深拷贝
                     .collect(Collectors.toCollection(ArrayList::new));
             fireTableDataChanged();
         }
@@ -625,6 +713,22 @@ public class SyncFilesSettingsConfigurable implements Configurable {
                     return entry.watchedPath;
                 case 1:
                     return entry.onEventScript;
+                case 2:
+                    return entry.recursive;
+                case 3:
+                    return entry.debounceMillis;
+                case 4:
+                    return entry.mode;
+                case 5:
+                    return entry.concurrency;
+                case 6:
+                    return entry.maxParallel;
+                case 7:
+                    return entry.includeGlobs;
+                case 8:
+                    return entry.excludeGlobs;
+                case 9:
+                    return entry.backend;
                 default:
                     return null;
             }
@@ -641,10 +745,41 @@ public class SyncFilesSettingsConfigurable implements Configurable {
                 case 1:
                     entry.onEventScript = valueStr;
                     break;
+                case 2:
+                    entry.recursive = Boolean.TRUE.equals(aValue);
+                    break;
+                case 3:
+                    entry.debounceMillis = aValue instanceof Integer ? (Integer) aValue : WatchEntry.DEFAULT_DEBOUNCE_MILLIS;
+                    break;
+                case 4:
+                    entry.mode = valueStr.isEmpty() ? WatchEntry.MODE_PER_EVENT : valueStr;
+                    break;
+                case 5:
+                    entry.concurrency = valueStr.isEmpty() ? WatchEntry.CONCURRENCY_PARALLEL : valueStr;
+                    break;
+                case 6:
+                    entry.maxParallel = aValue instanceof Integer ? (Integer) aValue : WatchEntry.DEFAULT_MAX_PARALLEL;
+                    break;
+                case 7:
+                    entry.includeGlobs = aValue == null ? "" : aValue.toString().trim();
+                    break;
+                case 8:
+                    entry.excludeGlobs = aValue == null ? "" : aValue.toString().trim();
+                    break;
+                case 9:
+                    entry.backend = valueStr.isEmpty() ? WatchEntry.BACKEND_AUTO : valueStr;
+                    break;
             }
             fireTableCellUpdated(rowIndex, columnIndex);
         }
 
+        @Override
+        public Class<?> getColumnClass(int columnIndex) {
+            if (columnIndex == 2) return Boolean.class; // Recursive 列显示为复选框
+            if (columnIndex == 3 || columnIndex == 6) return Integer.class;
+            return String.class;
+        }
+
         @Override
         public boolean isCellEditable(int rowIndex, int columnIndex) {
             return true; // 所有单元格都可直接编辑，或通过自定义编辑器
@@ -6,6 +6,8 @@ import com.example.syncfiles.font.TerminalFontSettingsProvider;
 import com.example.syncfiles.util.TerminalFontUtil;
 import com.example.syncfiles.notifiers.SyncFilesNotifier;
 import com.example.syncfiles.ui.LoadSmartWorkflowAction;
+import com.example.syncfiles.ui.PlanSyncAction;
+import com.example.syncfiles.ui.ShowSyncHistoryAction;
 import com.example.syncfiles.util.Util;
 import com.intellij.icons.AllIcons;
 import com.intellij.openapi.Disposable;
@@ -123,6 +125,8 @@ public class SyncFilesToolWindowFactory implements com.intellij.openapi.wm.ToolW
                 return ActionUpdateThread.BGT;
             }
         });
+        actionGroup.add(new PlanSyncAction());
+        actionGroup.add(new ShowSyncHistoryAction());
         actionGroup.add(new Separator());
         actionGroup.add(new LoadSmartWorkflowAction());
         actionGroup.add(new FontSelectorAction());
@@ -13,6 +13,55 @@ public class WatchEntry {
     @Attribute("onEventScript") // Relative to project Path
     public String onEventScript = "";
 
+    @Attribute("recursive") // Directory entries only: also watch all nested subdirectories
+    public boolean recursive = false;
+
+    @Attribute("debounceMillis") // Quiet period before the script runs; bursts of events on one path fire once
+    public int debounceMillis = DEFAULT_DEBOUNCE_MILLIS;
+
+    @Attribute("includeGlobs") // ';'-separated; empty = every file (see watch.PathFilter)
+    public String includeGlobs = "";
+
+    @Attribute("excludeGlobs") // ';'-separated, e.g. "*.pyc; *~; *.swp; __pycache__"
+    public String excludeGlobs = "";
+
+    // per-event: one script run per (debounced) event; batch: one run per burst, events listed in a JSON-lines file;
+    // resident: one long-lived handler process per script, events sent as JSON lines on stdin
+    public static final String MODE_PER_EVENT = "per-event";
+    public static final String MODE_BATCH = "batch";
+    public static final String MODE_RESIDENT = "resident";
+    public static final String[] MODES = {MODE_PER_EVENT, MODE_BATCH, MODE_RESIDENT};
+
+    @Attribute("mode")
+    public String mode = MODE_PER_EVENT;
+
+    // serial: one run of the script at a time, further events wait; parallel: up to maxParallel overlapping runs;
+    // latest-wins: a new event stops the running process and replaces any waiting run
+    public static final String CONCURRENCY_SERIAL = "serial";
+    public static final String CONCURRENCY_PARALLEL = "parallel";
+    public static final String CONCURRENCY_LATEST_WINS = "latest-wins";
+    public static final String[] CONCURRENCIES = {CONCURRENCY_PARALLEL, CONCURRENCY_SERIAL, CONCURRENCY_LATEST_WINS};
+
+    @Attribute("concurrency")
+    public String concurrency = CONCURRENCY_PARALLEL;
+
+    @Attribute("maxParallel") // Only used with "parallel"
+    public int maxParallel = DEFAULT_MAX_PARALLEL;
+
+    // auto: native notifications, polling on network and FUSE file systems (NFS, SSHFS, CIFS, ...);
+    // native / polling: forced
+    public static final String BACKEND_AUTO = "auto";
+    public static final String BACKEND_NATIVE = "native";
+    public static final String BACKEND_POLLING = "polling";
+    public static final String[] BACKENDS = {BACKEND_AUTO, BACKEND_NATIVE, BACKEND_POLLING};
+
+    @Attribute("backend")
+    public String backend = BACKEND_AUTO;
+
+    public static final int DEFAULT_MAX_PARALLEL = 4;
+    public static final int DEFAULT_DEBOUNCE_MILLIS = 300;
+    public static final int MAX_DEBOUNCE_MILLIS = 60_000;
+
     public WatchEntry() {}
 
     public WatchEntry(String watchedPath, String onEventScript) {
@@ -20,22 +69,60 @@ public class WatchEntry {
         this.onEventScript = onEventScript != null ? onEventScript.replace('\\', '/') : "";
     }
 
-    // equals and hashCode based on both fields
+    public WatchEntry(String watchedPath, String onEventScript, boolean recursive) {
+        this(watchedPath, onEventScript);
+        this.recursive = recursive;
+    }
+
+    public WatchEntry(WatchEntry other) {
+        this(other.watchedPath, other.onEventScript, other.recursive);
+        this.debounceMillis = other.debounceMillis;
+        this.mode = other.mode;
+        this.concurrency = other.concurrency;
+        this.maxParallel = other.maxParallel;
+        this.includeGlobs = other.includeGlobs;
+        this.excludeGlobs = other.excludeGlobs;
+        this.backend = other.backend;
+    }
+
+    public boolean isBatchMode() {
+        return MODE_BATCH.equals(mode);
+    }
+
+    public boolean isResidentMode() {
+        return MODE_RESIDENT.equals(mode);
+    }
+
+    public boolean isLatestWins() {
+        return CONCURRENCY_LATEST_WINS.equals(concurrency);
+    }
+
+    /** Number of runs of this entry's script that may overlap. */
+    public int getConcurrencyLimit() {
+        return CONCURRENCY_PARALLEL.equals(concurrency) || concurrency == null || concurrency.isEmpty() ? Math.max(1, maxParallel) : 1;
+    }
+
+    // equals and hashCode based on all fields
     @Override
     public boolean equals(Object o) {
         if (this == o) return true;
         if (o == null || getClass() != o.getClass()) return false;
         WatchEntry that = (WatchEntry) o;
-        return Objects.equals(watchedPath, that.watchedPath) && Objects.equals(onEventScript, that.onEventScript);
+        return Objects.equals(watchedPath, that.watchedPath) && Objects.equals(onEventScript, that.onEventScript) && recursive == that.recursive
+                && debounceMillis == that.debounceMillis && Objects.equals(mode, that.mode)
+                && Objects.equals(concurrency, that.concurrency) && maxParallel == that.maxParallel
+                && Objects.equals(includeGlobs, that.includeGlobs) && Objects.equals(excludeGlobs, that.excludeGlobs)
+                && Objects.equals(backend, that.backend);
     }
 
     @Override
     public int hashCode() {
-        return Objects.hash(watchedPath, onEventScript);
+        return Objects.hash(watchedPath, onEventScript, recursive, debounceMillis, mode, concurrency, maxParallel, includeGlobs, excludeGlobs, backend);
     }
 
     @Override
     public String toString() {
-        return "WatchedPath: " + watchedPath + ",onEventScript: " + onEventScript +" .";
+        return "WatchedPath: " + watchedPath + ",onEventScript: " + onEventScript + ",recursive: " + recursive + ",debounceMillis: " + debounceMillis + ",mode: " + mode + ",concurrency: " + concurrency + ",maxParallel: " + maxParallel +
+                ",includeGlobs: " + includeGlobs + ",excludeGlobs: " + excludeGlobs + ",backend: " + backend + " .";
     }
 }
\ No newline at end of file
@@ -1,5 +1,6 @@
 package com.example.syncfiles;
 
+import com.example.syncfiles.sync.AutoSyncScheduler;
 import com.example.syncfiles.util.Util;
 import com.intellij.openapi.diagnostic.Logger; // 使用 Logger
 import com.intellij.openapi.project.Project;
@@ -47,6 +48,9 @@ public class WatcherInitializerActivity implements ProjectActivity { // 或者 c
             LOG.error("[" + projectName + "] Failed to get FileChangeEventWatcherService instance during project startup.");
         }
 
+        // 3. 启动后台自动同步调度 (未启用时不做任何事)
+        AutoSyncScheduler.getInstance(project).reschedule();
+
         return Unit.INSTANCE; // 对于 ProjectActivity (Kotlin suspend function)
         // 如果是旧的 StartupActivity (Java interface), 方法是 public void runActivity(@NotNull Project project)
     }
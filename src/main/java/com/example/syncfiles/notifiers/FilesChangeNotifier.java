@@ -1,11 +1,13 @@
 package com.example.syncfiles.notifiers;
 
 import com.intellij.util.messages.Topic;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 
 public interface FilesChangeNotifier {
     // 定义一个 Topic，每个项目一个实例
     Topic<FilesChangeNotifier> TOPIC = Topic.create("Files Change Notification", FilesChangeNotifier.class, Topic.BroadcastDirection.TO_CHILDREN);
 
-    // 定义通知方法
-    void watchFileChanged(String scriptPathToExecute, String eventType, String affectedFilePath);
+    // 定义通知方法: VFS 看到的一个文件变化（"Change New/Mod/Del/Move"），由 FileChangeEventWatcherService 的事件管道统一匹配和分发
+    void fileChanged(@NotNull String eventType, @NotNull String affectedFilePath, @Nullable String movedFrom);
 }
\ No newline at end of file
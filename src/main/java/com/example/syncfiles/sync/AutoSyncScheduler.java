@@ -0,0 +1,279 @@
+package com.example.syncfiles.sync;
+
+import com.example.syncfiles.Mapping;
+import com.example.syncfiles.SyncAction;
+import com.example.syncfiles.SyncFilesConfig;
+import com.example.syncfiles.util.Util;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonParser;
+import com.intellij.ide.PowerSaveMode;
+import com.intellij.openapi.Disposable;
+import com.intellij.openapi.application.ApplicationManager;
+import com.intellij.openapi.components.Service;
+import com.intellij.openapi.diagnostic.Logger;
+import com.intellij.openapi.project.Project;
+import com.intellij.util.concurrency.AppExecutorUtil;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.IOException;
+import java.net.URLEncoder;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Background auto-sync. Every interval each mapping's upstream is probed with one conditional request
+ * (GitHub: latest commit touching the mapped path; other hosts: HEAD validators) and a sync is started
+ * only if a probe changed since the last completed sync.
+ * <p>
+ * Idle rounds and failed probes stretch the interval exponentially (up to {@code 2^MAX_BACKOFF_SHIFT} times),
+ * every delay gets ±20% jitter, checks are skipped in power-save mode, and no check runs while any sync is running.
+ * The first probe after IDE start only establishes the baseline, unless a mapping's target does not exist yet.
+ */
+@Service(Service.Level.PROJECT)
+public final class AutoSyncScheduler implements Disposable {
+    private static final Logger LOG = Logger.getInstance(AutoSyncScheduler.class);
+    private static final int MAX_BACKOFF_SHIFT = 3;
+    private static final double JITTER = 0.2;
+    private static final long FIRST_CHECK_MAX_DELAY_MS = TimeUnit.MINUTES.toMillis(1);
+
+    private final Project project;
+    // mapping key -> last probe result (fingerprint + ETag for the next conditional request)
+    private final Map<String, Probe> probes = new ConcurrentHashMap<>();
+    // mapping key -> fingerprint the target was last synced to
+    private final Map<String, String> syncedFingerprints = new ConcurrentHashMap<>();
+    private ScheduledFuture<?> nextCheck;
+    private int idleRounds = 0;
+    private boolean syncInFlight = false;
+    private volatile boolean disposed = false;
+
+    public AutoSyncScheduler(@NotNull Project project) {
+        this.project = project;
+    }
+
+    public static AutoSyncScheduler getInstance(@NotNull Project project) {
+        return project.getService(AutoSyncScheduler.class);
+    }
+
+    /** (Re)starts the schedule from the current settings; call after startup and whenever settings are applied. */
+    public synchronized void reschedule() {
+        cancelNextCheck();
+        idleRounds = 0;
+        SyncFilesConfig config = SyncFilesConfig.getInstance(project);
+        if (disposed || !config.isAutoSyncEnabled()) {
+            LOG.info("[" + project.getName() + "] Auto-sync is disabled.");
+            return;
+        }
+        long interval = TimeUnit.MINUTES.toMillis(config.getAutoSyncIntervalMinutes());
+        LOG.info("[" + project.getName() + "] Auto-sync enabled, checking upstream every " + config.getAutoSyncIntervalMinutes() + " min.");
+        schedule(Math.min(interval, FIRST_CHECK_MAX_DELAY_MS));
+    }
+
+    private synchronized void scheduleNext(boolean backOff) {
+        if (disposed || syncInFlight) return;
+        SyncFilesConfig config = SyncFilesConfig.getInstance(project);
+        if (!config.isAutoSyncEnabled()) return;
+        if (backOff) {
+            idleRounds = Math.min(idleRounds + 1, MAX_BACKOFF_SHIFT);
+        }
+        schedule(TimeUnit.MINUTES.toMillis(config.getAutoSyncIntervalMinutes()) << idleRounds);
+    }
+
+    private void schedule(long delayMs) {
+        cancelNextCheck();
+        long jittered = (long) (delayMs * (1 + ThreadLocalRandom.current().nextDouble(-JITTER, JITTER)));
+        LOG.debug("[" + project.getName() + "] Next auto-sync check in " + jittered / 1000 + " s.");
+        // The scheduled executor must not block, so the network probes run on the pooled executor.
+        nextCheck = AppExecutorUtil.getAppScheduledExecutorService().schedule(
+                () -> AppExecutorUtil.getAppExecutorService().execute(this::check), jittered, TimeUnit.MILLISECONDS);
+    }
+
+    private void cancelNextCheck() {
+        if (nextCheck != null) {
+            nextCheck.cancel(false);
+            nextCheck = null;
+        }
+    }
+
+    private void check() {
+        if (disposed || project.isDisposed()) return;
+        boolean syncStarted = false;
+        boolean backOff = true;
+        try {
+            if (PowerSaveMode.isEnabled()) {
+                LOG.debug("[" + project.getName() + "] Power save mode, skipping auto-sync check.");
+                backOff = false;
+                return;
+            }
+            SyncHistoryService history = SyncHistoryService.getInstance(project);
+            if (history.isSyncRunning()) {
+                backOff = false;
+                return;
+            }
+
+            List<Mapping> mappings = SyncFilesConfig.getInstance(project).getMappings();
+            String token = GitHubApi.token(project);
+            long lastCompletedStart = history.getLastCompletedStartMillis();
+            Map<String, String> current = new HashMap<>();
+            boolean changed = false;
+            boolean failed = false;
+            for (Mapping mapping : mappings) {
+                String key = mapping.sourceUrl + "\n" + mapping.targetPath;
+                Probe probe;
+                try {
+                    probe = probe(key, mapping, token);
+                } catch (IOException | RuntimeException e) {
+                    // RuntimeException: bad URL, or an unexpected JSON body from the API
+                    LOG.info("[" + project.getName() + "] Auto-sync probe failed for " + mapping.sourceUrl + ": " + e.getMessage());
+                    failed = true;
+                    continue;
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+                current.put(key, probe.fingerprint);
+
+                String synced = syncedFingerprints.get(key);
+                if (synced == null || (!synced.equals(probe.fingerprint) && lastCompletedStart >= probe.firstSeenMillis)) {
+                    // Baseline after IDE start, or another sync (manual/workflow) already ran after the change appeared.
+                    syncedFingerprints.put(key, probe.fingerprint);
+                    synced = probe.fingerprint;
+                }
+                if (!synced.equals(probe.fingerprint) || !targetExists(mapping)) {
+                    LOG.info("[" + project.getName() + "] Auto-sync needed for " + mapping.sourceUrl);
+                    changed = true;
+                }
+            }
+
+            if (!changed) {
+                return; // nothing to do (or probe errors): back off
+            }
+            if (failed) {
+                LOG.debug("[" + project.getName() + "] Some probes failed; syncing the changed mappings anyway.");
+            }
+            syncStarted = startSync(current);
+        } catch (RuntimeException e) {
+            LOG.warn("[" + project.getName() + "] Auto-sync check failed: " + e.getMessage(), e);
+        } finally {
+            // Every check ends in the next one being scheduled, unless a sync does that when it finishes.
+            if (!syncStarted) scheduleNext(backOff);
+        }
+    }
+
+    /** Returns false if no sync was started (so the caller schedules the next check). */
+    private boolean startSync(Map<String, String> fingerprints) {
+        synchronized (this) {
+            if (disposed || syncInFlight) return false;
+            syncInFlight = true;
+            idleRounds = 0;
+        }
+        ApplicationManager.getApplication().invokeLater(() -> {
+            if (project.isDisposed()) return;
+            try {
+                new SyncAction().syncFiles(project, "Auto", run -> {
+                    if (run.getOutcome() == SyncRunStats.Outcome.COMPLETED) {
+                        syncedFingerprints.putAll(fingerprints);
+                    }
+                    syncFinished(run.getOutcome() != SyncRunStats.Outcome.COMPLETED);
+                });
+            } catch (RuntimeException e) {
+                LOG.warn("[" + project.getName() + "] Auto-sync could not be started: " + e.getMessage(), e);
+                syncFinished(true);
+            }
+        });
+        return true;
+    }
+
+    private void syncFinished(boolean backOff) {
+        synchronized (this) {
+            syncInFlight = false;
+        }
+        scheduleNext(backOff);
+    }
+
+    private boolean targetExists(Mapping mapping) {
+        try {
+            return Files.exists(Util.resolveTargetPath(project, mapping.targetPath));
+        } catch (RuntimeException e) {
+            return true; // an invalid target is reported by the sync itself, not retried here
+        }
+    }
+
+    private Probe probe(String key, Mapping mapping, @Nullable String token) throws IOException, InterruptedException {
+        GitHubSource source = GitHubSource.parse(mapping.sourceUrl);
+        Probe previous = probes.get(key);
+        if (mapping.usesGitMirror() && source.getKind() == GitHubSource.Kind.TREE) {
+            // Git backends may point at any git remote (including file://); ls-remote only transfers the ref list.
+            String commit = GitMirror.lsRemote(source.getRepoUrl(), source.getRef());
+            if (commit == null) throw new IOException("Ref '" + source.getRef() + "' not found in " + source.getRepoUrl());
+            long firstSeen = previous != null && previous.fingerprint.equals(commit) ? previous.firstSeenMillis : System.currentTimeMillis();
+            Probe probe = new Probe(commit, null, firstSeen);
+            probes.put(key, probe);
+            return probe;
+        }
+        HttpRequest.Builder builder;
+        if (source.isGitHub()) {
+            // Latest commit touching the mapped path, so changes elsewhere in the repository do not trigger a sync.
+            String url = source.getApiBase() + "/commits?per_page=1&sha=" + URLEncoder.encode(source.getRef(), StandardCharsets.UTF_8)
+                    + (source.getPath().isEmpty() ? "" : "&path=" + URLEncoder.encode(source.getPath(), StandardCharsets.UTF_8));
+            builder = GitHubApi.request(url, token).header("Accept", "application/vnd.github+json");
+        } else {
+            builder = GitHubApi.request(source.getSourceUrl(), null).method("HEAD", HttpRequest.BodyPublishers.noBody());
+        }
+        if (previous != null && previous.etag != null) {
+            builder.header("If-None-Match", previous.etag); // a 304 does not count against the GitHub rate limit
+        }
+
+        HttpResponse<String> response = GitHubApi.client().send(builder.build(), HttpResponse.BodyHandlers.ofString());
+        if (response.statusCode() == 304 && previous != null) {
+            return previous;
+        }
+        if (response.statusCode() != 200) {
+            throw new IOException("Status " + response.statusCode());
+        }
+
+        String etag = response.headers().firstValue("ETag").orElse(null);
+        String fingerprint;
+        if (source.isGitHub()) {
+            JsonArray commits = JsonParser.parseString(response.body()).getAsJsonArray();
+            JsonElement latest = commits.isEmpty() ? null : commits.get(0);
+            fingerprint = latest != null ? latest.getAsJsonObject().get("sha").getAsString() : "none";
+        } else {
+            fingerprint = etag != null ? etag
+                    : response.headers().firstValue("Last-Modified").orElse("")
+                    + "/" + response.headers().firstValue("Content-Length").orElse("");
+        }
+        long firstSeen = previous != null && previous.fingerprint.equals(fingerprint) ? previous.firstSeenMillis : System.currentTimeMillis();
+        Probe probe = new Probe(fingerprint, etag, firstSeen);
+        probes.put(key, probe);
+        return probe;
+    }
+
+    @Override
+    public synchronized void dispose() {
+        disposed = true;
+        cancelNextCheck();
+    }
+
+    private static final class Probe {
+        final String fingerprint;
+        final @Nullable String etag;
+        final long firstSeenMillis;
+
+        Probe(String fingerprint, @Nullable String etag, long firstSeenMillis) {
+            this.fingerprint = fingerprint;
+            this.etag = etag;
+            this.firstSeenMillis = firstSeenMillis;
+        }
+    }
+}
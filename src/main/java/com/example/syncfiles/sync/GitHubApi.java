@@ -0,0 +1,104 @@
+package com.example.syncfiles.sync;
+
+import com.example.syncfiles.SyncFilesConfig;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonParser;
+import com.intellij.openapi.project.Project;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+
+/**
+ * Small helper for the metadata-only GitHub REST calls used by planning and change checks.
+ * A {@code GITHUB_TOKEN} from the SyncFiles environment variables (or the IDE's environment) is sent
+ * when present, which raises the unauthenticated limit of 60 requests per hour.
+ */
+public final class GitHubApi {
+    public static final String TOKEN_VARIABLE = "GITHUB_TOKEN";
+    private static final Duration REQUEST_TIMEOUT = Duration.ofSeconds(20);
+
+    private static final HttpClient CLIENT = HttpClient.newBuilder()
+            .followRedirects(HttpClient.Redirect.NORMAL)
+            .connectTimeout(Duration.ofSeconds(10))
+            .build();
+
+    private GitHubApi() {
+    }
+
+    public static HttpClient client() {
+        return CLIENT;
+    }
+
+    public static @Nullable String token(@NotNull Project project) {
+        String token = SyncFilesConfig.getInstance(project).getEnvVariables().get(TOKEN_VARIABLE);
+        if (token == null || token.isBlank()) {
+            token = System.getenv(TOKEN_VARIABLE);
+        }
+        return token == null || token.isBlank() ? null : token.trim();
+    }
+
+    public static HttpRequest.Builder request(@NotNull String url, @Nullable String token) {
+        HttpRequest.Builder builder = HttpRequest.newBuilder()
+                .uri(URI.create(url))
+                .timeout(REQUEST_TIMEOUT)
+                .header("User-Agent", "IntelliJ-SyncFiles-Plugin"); // GitHub API requires a User-Agent
+        if (token != null && url.startsWith("https://api.github.com/")) {
+            builder.header("Authorization", "Bearer " + token);
+        }
+        return builder;
+    }
+
+    /** Resolves a branch, tag or SHA to the full commit SHA; the {@code .sha} media type keeps the response to 40 bytes. */
+    public static String resolveCommit(@NotNull GitHubSource source, @Nullable String token) throws IOException, InterruptedException {
+        HttpRequest request = request(source.getApiBase() + "/commits/" + encodeSegments(source.getRef()), token)
+                .header("Accept", "application/vnd.github.sha")
+                .build();
+        HttpResponse<String> response = CLIENT.send(request, HttpResponse.BodyHandlers.ofString());
+        if (response.statusCode() != 200) {
+            throw new IOException("Failed to resolve '" + source.getRef() + "' in " + source.getRepoUrl() + ". Status: " + response.statusCode() + describeLimit(response));
+        }
+        return response.body().trim();
+    }
+
+    public static JsonElement getJson(@NotNull String url, @Nullable String token) throws IOException, InterruptedException {
+        HttpRequest request = request(url, token).header("Accept", "application/vnd.github+json").build();
+        HttpResponse<String> response = CLIENT.send(request, HttpResponse.BodyHandlers.ofString());
+        if (response.statusCode() == 404) {
+            throw new NotFoundException(url);
+        }
+        if (response.statusCode() != 200) {
+            throw new IOException("GitHub API request failed. Status: " + response.statusCode() + describeLimit(response) + "\nURL: " + url);
+        }
+        return JsonParser.parseString(response.body());
+    }
+
+    /** URL-encodes each segment of a repository path while keeping the separators. */
+    public static String encodeSegments(@NotNull String path) {
+        StringBuilder sb = new StringBuilder();
+        for (String segment : path.split("/")) {
+            if (sb.length() > 0) sb.append('/');
+            sb.append(java.net.URLEncoder.encode(segment, java.nio.charset.StandardCharsets.UTF_8).replace("+", "%20"));
+        }
+        return sb.toString();
+    }
+
+    private static String describeLimit(HttpResponse<?> response) {
+        String remaining = response.headers().firstValue("X-RateLimit-Remaining").orElse(null);
+        if ("0".equals(remaining)) {
+            return " (GitHub API rate limit exhausted; set " + TOKEN_VARIABLE + " in SyncFiles environment variables)";
+        }
+        return "";
+    }
+
+    public static final class NotFoundException extends IOException {
+        public NotFoundException(String url) {
+            super("Not found: " + url);
+        }
+    }
+}
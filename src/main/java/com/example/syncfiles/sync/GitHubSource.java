@@ -0,0 +1,150 @@
+package com.example.syncfiles.sync;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Parsed form of a mapping's source URL. Supports the same URL shapes as {@code SyncAction}:
+ * raw.githubusercontent.com file links, {@code .../blob/...} file links and {@code .../tree/...} directory links.
+ */
+public final class GitHubSource {
+    public enum Kind { FILE, TREE }
+
+    private static final String GITHUB = "https://github.com/";
+    private static final String RAW_HOST = "raw.githubusercontent.com/";
+
+    private final Kind kind;
+    private final String sourceUrl;
+    private final String repoUrl;
+    private final @Nullable String owner;
+    private final @Nullable String repo;
+    private final String ref;
+    private final String path;
+
+    private GitHubSource(Kind kind, String sourceUrl, String repoUrl, String ref, String path) {
+        this.kind = kind;
+        this.sourceUrl = sourceUrl;
+        this.repoUrl = repoUrl;
+        this.ref = ref;
+        this.path = path;
+        if (repoUrl.startsWith(GITHUB)) {
+            String[] ownerRepo = repoUrl.substring(GITHUB.length()).split("/");
+            this.owner = ownerRepo.length > 0 ? ownerRepo[0] : null;
+            this.repo = ownerRepo.length > 1 ? ownerRepo[1] : null;
+        } else {
+            this.owner = null;
+            this.repo = null;
+        }
+    }
+
+    /** Returns true if the URL is one of the supported shapes, without throwing. */
+    public static boolean isSupported(@Nullable String sourceUrl) {
+        if (sourceUrl == null) return false;
+        try {
+            parse(sourceUrl);
+            return true;
+        } catch (IllegalArgumentException e) {
+            return false;
+        }
+    }
+
+    public static @NotNull GitHubSource parse(@NotNull String sourceUrl) {
+        String url = sourceUrl.trim();
+        if (url.contains(RAW_HOST)) {
+            // https://raw.githubusercontent.com/{owner}/{repo}/{ref}/{path}, ref may be spelled refs/heads/{branch}
+            String[] segments = url.substring(url.indexOf(RAW_HOST) + RAW_HOST.length()).split("/", 3);
+            if (segments.length < 3) {
+                throw new IllegalArgumentException("Invalid raw GitHub URL. Expected '.../owner/repo/branch/path'. URL: " + sourceUrl);
+            }
+            return fileSource(sourceUrl, GITHUB + segments[0] + "/" + segments[1], segments[2]);
+        }
+
+        String normalizedUrl = url.replaceAll("^https?://(www\\.)?github\\.com/", GITHUB);
+        if (normalizedUrl.matches("https://github.com/[^/]+/[^/]+/(blob|raw)/.+")) {
+            String marker = normalizedUrl.contains("/blob/") ? "/blob/" : "/raw/";
+            String[] parts = normalizedUrl.split(marker, 2);
+            return fileSource(sourceUrl, parts[0], parts[1]);
+        }
+
+        if (normalizedUrl.contains("/tree/")) {
+            String[] parts = normalizedUrl.split("/tree/", 2); // Limit split to 2 parts
+            if (parts.length != 2 || parts[1].isEmpty()) {
+                throw new IllegalArgumentException("Invalid URL format. Expected format like '.../tree/branch/path'. URL: " + sourceUrl);
+            }
+            String[] pathSegments = parts[1].split("/", 2); // Split branch from the rest of the path
+            String subPath = pathSegments.length > 1 ? decodePath(pathSegments[1]) : "";
+            return new GitHubSource(Kind.TREE, sourceUrl, parts[0], pathSegments[0], subPath);
+        }
+
+        throw new IllegalArgumentException("Unsupported URL format: " + sourceUrl + "\nSupports raw URLs, .../tree/... directory URLs, or .../blob/... file URLs.");
+    }
+
+    private static GitHubSource fileSource(String sourceUrl, String repoUrl, String refAndPath) {
+        String rest = refAndPath;
+        if (rest.startsWith("refs/heads/")) {
+            rest = rest.substring("refs/heads/".length());
+        }
+        String[] segments = rest.split("/", 2);
+        if (segments.length < 2 || segments[1].isEmpty()) {
+            throw new IllegalArgumentException("File URL does not contain a path after the branch. URL: " + sourceUrl);
+        }
+        return new GitHubSource(Kind.FILE, sourceUrl, repoUrl, segments[0], decodePath(segments[1]));
+    }
+
+    // Remove leading/trailing slashes, replace backslashes
+    private static String decodePath(String rawPath) {
+        return URLDecoder.decode(rawPath, StandardCharsets.UTF_8).replace('\\', '/').replaceAll("^/+|/+$", "");
+    }
+
+    public Kind getKind() {
+        return kind;
+    }
+
+    public String getSourceUrl() {
+        return sourceUrl;
+    }
+
+    /** Repository part of the URL, e.g. {@code https://github.com/owner/repo}. */
+    public String getRepoUrl() {
+        return repoUrl;
+    }
+
+    public @Nullable String getOwner() {
+        return owner;
+    }
+
+    public @Nullable String getRepo() {
+        return repo;
+    }
+
+    /** Branch, tag or commit named in the URL. A branch containing '/' is only supported for tree URLs' first segment. */
+    public String getRef() {
+        return ref;
+    }
+
+    /** Path inside the repository: the file for {@link Kind#FILE}, the sub directory (possibly empty) for {@link Kind#TREE}. */
+    public String getPath() {
+        return path;
+    }
+
+    /** True if the repository is hosted on github.com, so the REST API can be used for it. */
+    public boolean isGitHub() {
+        return owner != null && repo != null;
+    }
+
+    public String getApiBase() {
+        return repoUrl.replace(GITHUB, "https://api.github.com/repos/");
+    }
+
+    public String getZipballUrl() {
+        return String.format("%s/zipball/%s", getApiBase(), ref);
+    }
+
+    @Override
+    public String toString() {
+        return kind + " " + repoUrl + "@" + ref + (path.isEmpty() ? "" : ":" + path);
+    }
+}
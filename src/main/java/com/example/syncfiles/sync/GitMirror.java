@@ -0,0 +1,247 @@
+package com.example.syncfiles.sync;
+
+import com.intellij.openapi.application.PathManager;
+import com.intellij.openapi.diagnostic.Logger;
+import com.intellij.openapi.progress.ProgressIndicator;
+import com.intellij.util.concurrency.AppExecutorUtil;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+
+/**
+ * Bare git mirror of one upstream repository, kept under the IDE system directory and shared by all projects.
+ * The first use clones it (optionally blobless, i.e. {@code --filter=blob:none}); later syncs only run an
+ * incremental {@code git fetch} of the mapped ref, so just the new objects are transferred. The mapped sub path is
+ * then checked out into a scratch directory with a throw-away index, which also fetches missing blobs of a
+ * blobless mirror in one batch. Works with any URL git understands, including local {@code file://} bare repositories.
+ */
+public final class GitMirror {
+    private static final Logger LOG = Logger.getInstance(GitMirror.class);
+    private static final Pattern PERCENT = Pattern.compile("(\\d{1,3})%");
+    private static final Map<Path, Object> MIRROR_LOCKS = new ConcurrentHashMap<>();
+
+    private final String repoUrl;
+    private final boolean blobless;
+    private final Path mirrorDir;
+
+    public GitMirror(@NotNull String repoUrl, boolean blobless) {
+        this.repoUrl = repoUrl;
+        this.blobless = blobless;
+        this.mirrorDir = PathManager.getSystemDir().resolve("syncfiles-mirrors").resolve(mirrorName(repoUrl));
+    }
+
+    public Path getMirrorDir() {
+        return mirrorDir;
+    }
+
+    /** Mirror directory name: readable repository name plus a hash of the full URL to keep different hosts apart. */
+    private static String mirrorName(String repoUrl) {
+        String trimmed = repoUrl.replaceAll("/+$", "").replaceAll("\\.git$", "");
+        String name = trimmed.substring(trimmed.lastIndexOf('/') + 1).replaceAll("[^A-Za-z0-9._-]", "_");
+        try {
+            byte[] hash = MessageDigest.getInstance("SHA-1").digest(repoUrl.getBytes(StandardCharsets.UTF_8));
+            return name + "-" + HexFormat.of().formatHex(hash, 0, 6) + ".git";
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-1 not available", e);
+        }
+    }
+
+    /**
+     * Clones the mirror if it does not exist yet, then fetches {@code ref} (branch, tag or commit SHA) and returns
+     * the fetched commit SHA. Timed as {@link SyncPhase#DOWNLOAD}; the bytes are the growth of the mirror's packs.
+     */
+    public String fetch(@NotNull String ref, @NotNull SyncProgress progress, @NotNull MappingStats stats) throws IOException, InterruptedException {
+        synchronized (MIRROR_LOCKS.computeIfAbsent(mirrorDir, k -> new Object())) {
+            long packBytesBefore = packBytes();
+            long start = System.nanoTime();
+            try {
+                if (!Files.isDirectory(mirrorDir.resolve("objects"))) {
+                    Files.createDirectories(mirrorDir.getParent());
+                    List<String> clone = new ArrayList<>(List.of("clone", "--bare", "--progress", "--no-tags"));
+                    if (blobless) clone.add("--filter=blob:none");
+                    clone.addAll(List.of(repoUrl, mirrorDir.toString()));
+                    progress.getIndicator().setText2("Cloning mirror of " + repoUrl);
+                    runGit(null, Map.of(), progress, clone.toArray(new String[0]));
+                }
+                // Fetch into a private ref so the next fetch can negotiate from it and only transfer new objects.
+                progress.getIndicator().setText2("Fetching " + ref + " into mirror");
+                String localRef = "refs/syncfiles/" + ref.replaceAll("[^A-Za-z0-9._/-]", "_");
+                List<String> fetch = new ArrayList<>(List.of("fetch", "--progress", "--no-tags", "--force"));
+                if (blobless) fetch.add("--filter=blob:none");
+                fetch.addAll(List.of("origin", ref + ":" + localRef));
+                runGit(mirrorDir, Map.of(), progress, fetch.toArray(new String[0]));
+                return runGit(mirrorDir, Map.of(), null, "rev-parse", localRef + "^{commit}").trim();
+            } finally {
+                stats.addPhaseNanos(SyncPhase.DOWNLOAD, System.nanoTime() - start);
+                stats.addBytesDownloaded(Math.max(0, packBytes() - packBytesBefore));
+            }
+        }
+    }
+
+    /**
+     * Writes the files of {@code subPath} (whole tree if empty) at {@code commit} below {@code checkoutDir}, without
+     * line-ending conversion so the result matches the repository content, and returns the sub path's directory.
+     */
+    public Path checkout(@NotNull String commit, @NotNull String subPath, @NotNull Path checkoutDir,
+                         @NotNull SyncProgress progress, @NotNull MappingStats stats) throws IOException, InterruptedException {
+        synchronized (MIRROR_LOCKS.computeIfAbsent(mirrorDir, k -> new Object())) {
+            long start = System.nanoTime();
+            Path index = Files.createTempFile("syncfiles-index", null);
+            try {
+                Files.delete(index); // git refuses an empty file as index
+                Files.createDirectories(checkoutDir);
+                progress.getIndicator().setText2("Checking out " + (subPath.isEmpty() ? "repository" : subPath) + " at " + commit.substring(0, Math.min(12, commit.length())));
+                runGit(mirrorDir, Map.of("GIT_INDEX_FILE", index.toString()), progress,
+                        "-c", "core.autocrlf=false", "-c", "core.eol=lf", "--work-tree=" + checkoutDir,
+                        "checkout", "--progress", "-f", commit, "--", subPath.isEmpty() ? "." : subPath);
+            } finally {
+                Files.deleteIfExists(index);
+                stats.addPhaseNanos(SyncPhase.EXTRACT, System.nanoTime() - start);
+            }
+            Path sourceDir = subPath.isEmpty() ? checkoutDir : checkoutDir.resolve(subPath);
+            if (!Files.isDirectory(sourceDir)) {
+                throw new IOException("SubPath '" + subPath + "' does not exist at commit " + commit + ".");
+            }
+            return sourceDir;
+        }
+    }
+
+    /** Cheap upstream check: the commit {@code ref} points to on the remote, via {@code git ls-remote}; null if unknown. */
+    public static @Nullable String lsRemote(@NotNull String repoUrl, @NotNull String ref) throws IOException, InterruptedException {
+        String output = runGit(null, Map.of(), null, "ls-remote", repoUrl, ref);
+        for (String line : output.split("\n")) {
+            String[] parts = line.split("\t");
+            // Prefer the peeled commit of an annotated tag
+            if (parts.length == 2 && parts[1].endsWith("^{}")) return parts[0];
+        }
+        String first = output.split("\n")[0].trim();
+        if (!first.isEmpty()) return first.split("\t")[0];
+        return ref.matches("[0-9a-f]{40}") ? ref : null;
+    }
+
+    private long packBytes() {
+        Path packDir = mirrorDir.resolve("objects").resolve("pack");
+        if (!Files.isDirectory(packDir)) return 0;
+        try (Stream<Path> files = Files.list(packDir)) {
+            return files.mapToLong(p -> {
+                try {
+                    return Files.size(p);
+                } catch (IOException e) {
+                    return 0;
+                }
+            }).sum();
+        } catch (IOException e) {
+            return 0;
+        }
+    }
+
+    /**
+     * Runs git (against {@code gitDir} if given) and returns its stdout. Progress lines on stderr
+     * ("Receiving objects:  42% ...") drive the indicator; the process is destroyed when the indicator is canceled.
+     */
+    private static String runGit(@Nullable Path gitDir, Map<String, String> env, @Nullable SyncProgress progress, String... args)
+            throws IOException, InterruptedException {
+        List<String> command = new ArrayList<>();
+        command.add("git");
+        if (gitDir != null) {
+            command.add("--git-dir=" + gitDir);
+        }
+        command.addAll(Arrays.asList(args));
+        ProcessBuilder pb = new ProcessBuilder(command);
+        pb.environment().put("GIT_TERMINAL_PROMPT", "0"); // never block on a credential prompt
+        pb.environment().putAll(env);
+        LOG.debug("Running: " + String.join(" ", command));
+
+        Process process;
+        try {
+            process = pb.start();
+        } catch (IOException e) {
+            throw new IOException("Could not start git. Make sure git is installed and on the PATH: " + e.getMessage(), e);
+        }
+        ProgressIndicator indicator = progress != null ? progress.getIndicator() : null;
+        Deque<String> lastErrorLines = new ArrayDeque<>();
+        Future<?> stderrReader = AppExecutorUtil.getAppExecutorService().submit(() -> readProgress(process.getErrorStream(), progress, lastErrorLines));
+        Future<byte[]> stdoutReader = AppExecutorUtil.getAppExecutorService().submit(() -> readAll(process.getInputStream()));
+
+        while (!process.waitFor(100, TimeUnit.MILLISECONDS)) {
+            if (indicator != null && indicator.isCanceled()) {
+                process.destroy();
+                throw new IOException("git cancelled by user.");
+            }
+        }
+        String stdout;
+        try {
+            stderrReader.get();
+            stdout = new String(stdoutReader.get(), StandardCharsets.UTF_8);
+        } catch (ExecutionException e) {
+            throw new IOException("Failed to read git output: " + e.getCause().getMessage(), e.getCause());
+        }
+        if (process.exitValue() != 0) {
+            String errors;
+            synchronized (lastErrorLines) {
+                errors = String.join("\n", lastErrorLines);
+            }
+            throw new IOException("git exited with code " + process.exitValue() + ": " + String.join(" ", command) + "\n" + errors);
+        }
+        return stdout;
+    }
+
+    private static byte[] readAll(InputStream in) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        in.transferTo(out);
+        return out.toByteArray();
+    }
+
+    // git separates progress updates with '\r' and messages with '\n'
+    private static Void readProgress(InputStream err, @Nullable SyncProgress progress, Deque<String> lastLines) throws IOException {
+        StringBuilder line = new StringBuilder();
+        try (Reader reader = new InputStreamReader(err, StandardCharsets.UTF_8)) {
+            int c;
+            while ((c = reader.read()) != -1) {
+                if (c != '\r' && c != '\n') {
+                    line.append((char) c);
+                    continue;
+                }
+                if (line.length() == 0) continue;
+                String text = line.toString();
+                line.setLength(0);
+                if (progress != null) {
+                    progress.getIndicator().setText2(text);
+                    Matcher matcher = PERCENT.matcher(text);
+                    if (matcher.find()) {
+                        progress.update(Integer.parseInt(matcher.group(1)), 100);
+                    }
+                }
+                synchronized (lastLines) {
+                    lastLines.addLast(text);
+                    if (lastLines.size() > 10) lastLines.removeFirst();
+                }
+            }
+        }
+        return null;
+    }
+}
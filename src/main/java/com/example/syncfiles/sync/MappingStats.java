@@ -0,0 +1,85 @@
+package com.example.syncfiles.sync;
+
+import java.util.EnumMap;
+import java.util.Map;
+
+/**
+ * Metrics for a single mapping inside a sync run.
+ * Written by the sync task thread, read by the history dialog on the EDT, hence synchronized accessors.
+ */
+public final class MappingStats {
+    private final String sourceUrl;
+    private final String targetPath;
+    private final Map<SyncPhase, Long> phaseNanos = new EnumMap<>(SyncPhase.class);
+    private long bytesDownloaded = 0;
+    private long contentLength = -1; // -1 when the server did not send Content-Length
+    private int filesWritten = 0;
+    private int filesSkipped = 0;
+    private String error = null;
+
+    public MappingStats(String sourceUrl, String targetPath) {
+        this.sourceUrl = sourceUrl;
+        this.targetPath = targetPath;
+    }
+
+    public String getSourceUrl() {
+        return sourceUrl;
+    }
+
+    public String getTargetPath() {
+        return targetPath;
+    }
+
+    public synchronized void addPhaseNanos(SyncPhase phase, long nanos) {
+        phaseNanos.merge(phase, nanos, Long::sum);
+    }
+
+    public synchronized long getPhaseNanos(SyncPhase phase) {
+        return phaseNanos.getOrDefault(phase, 0L);
+    }
+
+    public synchronized void addBytesDownloaded(long bytes) {
+        bytesDownloaded += bytes;
+    }
+
+    public synchronized long getBytesDownloaded() {
+        return bytesDownloaded;
+    }
+
+    public synchronized void setContentLength(long contentLength) {
+        this.contentLength = contentLength;
+    }
+
+    public synchronized long getContentLength() {
+        return contentLength;
+    }
+
+    public synchronized void fileWritten() {
+        filesWritten++;
+    }
+
+    public synchronized void fileSkipped() {
+        filesSkipped++;
+    }
+
+    public synchronized int getFilesWritten() {
+        return filesWritten;
+    }
+
+    public synchronized int getFilesSkipped() {
+        return filesSkipped;
+    }
+
+    public synchronized void setError(String error) {
+        this.error = error;
+    }
+
+    public synchronized String getError() {
+        return error;
+    }
+
+    /** Download throughput in MB/s, measured over the DOWNLOAD phase only. */
+    public synchronized double getDownloadMegabytesPerSecond() {
+        return SyncRunStats.megabytesPerSecond(bytesDownloaded, phaseNanos.getOrDefault(SyncPhase.DOWNLOAD, 0L));
+    }
+}
@@ -0,0 +1,58 @@
+package com.example.syncfiles.sync;
+
+import com.intellij.openapi.components.Service;
+import com.intellij.openapi.project.Project;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+
+/**
+ * Keeps the metrics of the last {@link #MAX_RUNS} sync runs of a project so they can be inspected
+ * from the tool window. In-memory only; the history starts empty with every IDE session.
+ */
+@Service(Service.Level.PROJECT)
+public final class SyncHistoryService {
+    public static final int MAX_RUNS = 20;
+
+    private final Deque<SyncRunStats> runs = new ArrayDeque<>();
+
+    public static SyncHistoryService getInstance(@NotNull Project project) {
+        return project.getService(SyncHistoryService.class);
+    }
+
+    /** Records a run as soon as it starts, so a running sync is already visible in the history. */
+    public synchronized void record(@NotNull SyncRunStats run) {
+        runs.addFirst(run);
+        while (runs.size() > MAX_RUNS) {
+            runs.removeLast();
+        }
+    }
+
+    /** Most recent run first. */
+    public synchronized List<SyncRunStats> getRecentRuns() {
+        return new ArrayList<>(runs);
+    }
+
+    /** True while a recorded run has not finished yet. */
+    public synchronized boolean isSyncRunning() {
+        for (SyncRunStats run : runs) {
+            if (run.getOutcome() == SyncRunStats.Outcome.RUNNING) return true;
+        }
+        return false;
+    }
+
+    /** Start time of the most recent run that completed successfully, or -1 if there is none. */
+    public synchronized long getLastCompletedStartMillis() {
+        for (SyncRunStats run : runs) {
+            if (run.getOutcome() == SyncRunStats.Outcome.COMPLETED) return run.getStartedAtMillis();
+        }
+        return -1;
+    }
+
+    public synchronized void clear() {
+        runs.clear();
+    }
+}
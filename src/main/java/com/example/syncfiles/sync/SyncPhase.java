@@ -0,0 +1,25 @@
+package com.example.syncfiles.sync;
+
+/**
+ * Phases of a sync run that are timed separately.
+ * DNS/CONNECT/DOWNLOAD/EXTRACT/COMPARE/COPY are accumulated per mapping, REFRESH once per run.
+ */
+public enum SyncPhase {
+    DNS("DNS"),
+    CONNECT("Connect"), // TCP/TLS connect plus waiting for the response headers
+    DOWNLOAD("Download"),
+    EXTRACT("Extract"),
+    COMPARE("Compare"),
+    COPY("Copy"),
+    REFRESH("Refresh");
+
+    private final String displayName;
+
+    SyncPhase(String displayName) {
+        this.displayName = displayName;
+    }
+
+    public String getDisplayName() {
+        return displayName;
+    }
+}
@@ -0,0 +1,166 @@
+package com.example.syncfiles.sync;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * What a sync of one mapping would do, computed by {@link SyncPlanner} from metadata only.
+ * Filled in by a single planner thread and read after the planner has finished.
+ */
+public final class SyncPlan {
+    public enum ChangeKind {
+        ADD("Add"),
+        UPDATE("Update"),
+        /** Present locally but not upstream. The merge keeps these files; a mirror would remove them. */
+        DELETE("Local only");
+
+        private final String displayName;
+
+        ChangeKind(String displayName) {
+            this.displayName = displayName;
+        }
+
+        public String getDisplayName() {
+            return displayName;
+        }
+    }
+
+    public static final class Change {
+        private final ChangeKind kind;
+        private final String path;
+        private final long size;
+
+        public Change(@NotNull ChangeKind kind, @NotNull String path, long size) {
+            this.kind = kind;
+            this.path = path;
+            this.size = size;
+        }
+
+        public ChangeKind getKind() {
+            return kind;
+        }
+
+        /** Path relative to the mapping's target, '/' separated. */
+        public String getPath() {
+            return path;
+        }
+
+        /** Upstream size for adds/updates, local size for deletes; -1 if unknown. */
+        public long getSize() {
+            return size;
+        }
+    }
+
+    private final String sourceUrl;
+    private final String targetPath;
+    private final List<Change> changes = new ArrayList<>();
+    private final List<String> notes = new ArrayList<>();
+    private String upstreamId = "";
+    private int unchanged = 0;
+    private int hashedFiles = 0;
+    private int cachedHashes = 0;
+    private long elapsedNanos = 0;
+    private @Nullable String error;
+
+    public SyncPlan(@NotNull String sourceUrl, @NotNull String targetPath) {
+        this.sourceUrl = sourceUrl;
+        this.targetPath = targetPath;
+    }
+
+    void addChange(ChangeKind kind, String path, long size) {
+        changes.add(new Change(kind, path, size));
+    }
+
+    void addNote(String note) {
+        notes.add(note);
+    }
+
+    void unchanged() {
+        unchanged++;
+    }
+
+    void hashed(boolean fromCache) {
+        if (fromCache) cachedHashes++;
+        else hashedFiles++;
+    }
+
+    void setUpstreamId(String upstreamId) {
+        this.upstreamId = upstreamId;
+    }
+
+    void setElapsedNanos(long elapsedNanos) {
+        this.elapsedNanos = elapsedNanos;
+    }
+
+    void setError(@Nullable String error) {
+        this.error = error;
+    }
+
+    public String getSourceUrl() {
+        return sourceUrl;
+    }
+
+    public String getTargetPath() {
+        return targetPath;
+    }
+
+    /** Commit SHA, blob SHA or HTTP validator that identifies the upstream content the plan was made against. */
+    public String getUpstreamId() {
+        return upstreamId;
+    }
+
+    public List<Change> getChanges() {
+        return Collections.unmodifiableList(changes);
+    }
+
+    public List<String> getNotes() {
+        return Collections.unmodifiableList(notes);
+    }
+
+    public int count(ChangeKind kind) {
+        int count = 0;
+        for (Change change : changes) {
+            if (change.getKind() == kind) count++;
+        }
+        return count;
+    }
+
+    public int getUnchanged() {
+        return unchanged;
+    }
+
+    /** Files whose git blob SHA had to be computed from disk. */
+    public int getHashedFiles() {
+        return hashedFiles;
+    }
+
+    /** Files whose git blob SHA came from the planner's cache. */
+    public int getCachedHashes() {
+        return cachedHashes;
+    }
+
+    /** Sum of the upstream sizes of added and updated files (uncompressed). */
+    public long getBytesToTransfer() {
+        long bytes = 0;
+        for (Change change : changes) {
+            if (change.getKind() != ChangeKind.DELETE && change.getSize() > 0) bytes += change.getSize();
+        }
+        return bytes;
+    }
+
+    public boolean hasChanges() {
+        return count(ChangeKind.ADD) > 0 || count(ChangeKind.UPDATE) > 0;
+    }
+
+    public long getElapsedNanos() {
+        return elapsedNanos;
+    }
+
+    public @Nullable String getError() {
+        return error;
+    }
+}
@@ -0,0 +1,349 @@
+package com.example.syncfiles.sync;
+
+import com.example.syncfiles.Mapping;
+import com.example.syncfiles.util.Util;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.intellij.openapi.components.Service;
+import com.intellij.openapi.diagnostic.Logger;
+import com.intellij.openapi.progress.ProcessCanceledException;
+import com.intellij.openapi.progress.ProgressIndicator;
+import com.intellij.openapi.project.Project;
+import com.intellij.util.concurrency.AppExecutorUtil;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.stream.Stream;
+
+/**
+ * Computes a {@link SyncPlan} per mapping without downloading file content.
+ * <p>
+ * The upstream side comes from two GitHub API calls per mapping: the ref is resolved to a commit SHA and the
+ * (sub)tree of that commit is listed with blob SHAs and sizes. The local side is compared by size first and,
+ * only when sizes match, by the git blob SHA of the local file. Those hashes are cached by path, size and
+ * modification time, so planning the same target again only hashes files that changed since.
+ */
+@Service(Service.Level.PROJECT)
+public final class SyncPlanner {
+    private static final Logger LOG = Logger.getInstance(SyncPlanner.class);
+    private static final String CANCELED = "Planning canceled.";
+
+    private final Project project;
+    private final Map<Path, LocalBlob> blobCache = new ConcurrentHashMap<>();
+
+    public SyncPlanner(@NotNull Project project) {
+        this.project = project;
+    }
+
+    public static SyncPlanner getInstance(@NotNull Project project) {
+        return project.getService(SyncPlanner.class);
+    }
+
+    /**
+     * Plans all mappings in parallel and returns the plans in mapping order.
+     * Errors are reported per plan; only cancellation of the indicator aborts the whole call.
+     */
+    public List<SyncPlan> plan(@NotNull List<Mapping> mappings, @NotNull ProgressIndicator indicator) {
+        String token = GitHubApi.token(project);
+        List<CompletableFuture<SyncPlan>> futures = new ArrayList<>();
+        for (Mapping mapping : mappings) {
+            futures.add(CompletableFuture.supplyAsync(() -> planMapping(mapping, token, indicator), AppExecutorUtil.getAppExecutorService()));
+        }
+
+        List<SyncPlan> plans = new ArrayList<>();
+        for (CompletableFuture<SyncPlan> future : futures) {
+            while (true) {
+                indicator.checkCanceled();
+                try {
+                    plans.add(future.get(100, TimeUnit.MILLISECONDS));
+                    break;
+                } catch (TimeoutException ignored) {
+                    // keep polling so cancellation stays responsive
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new ProcessCanceledException();
+                } catch (ExecutionException e) {
+                    throw new IllegalStateException("Planner task failed unexpectedly", e.getCause());
+                }
+            }
+            indicator.setFraction((double) plans.size() / futures.size());
+            indicator.setText2(String.format("Planned %d of %d mappings", plans.size(), futures.size()));
+        }
+        return plans;
+    }
+
+    private SyncPlan planMapping(Mapping mapping, @Nullable String token, ProgressIndicator indicator) {
+        SyncPlan plan = new SyncPlan(mapping.sourceUrl, mapping.targetPath);
+        long start = System.nanoTime();
+        try {
+            GitHubSource source = GitHubSource.parse(mapping.sourceUrl);
+            Path target = Util.resolveTargetPath(project, mapping.targetPath);
+            if (!source.isGitHub()) {
+                plan.setError("Planning is only supported for github.com repositories: " + source.getRepoUrl());
+            } else if (source.getKind() == GitHubSource.Kind.FILE) {
+                planFile(plan, source, target, token);
+            } else {
+                planTree(plan, source, target, token, indicator);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            plan.setError(CANCELED);
+        } catch (Exception e) {
+            LOG.info("[" + project.getName() + "] Planning failed for " + mapping.sourceUrl + ": " + e.getMessage());
+            plan.setError(e.getMessage());
+        }
+        plan.setElapsedNanos(System.nanoTime() - start);
+        return plan;
+    }
+
+    private void planTree(SyncPlan plan, GitHubSource source, Path target, @Nullable String token, ProgressIndicator indicator)
+            throws IOException, InterruptedException {
+        String commit = GitHubApi.resolveCommit(source, token);
+        plan.setUpstreamId(commit);
+        String treeish = source.getPath().isEmpty() ? commit : commit + ":" + GitHubApi.encodeSegments(source.getPath());
+        JsonObject tree;
+        try {
+            tree = GitHubApi.getJson(source.getApiBase() + "/git/trees/" + treeish + "?recursive=1", token).getAsJsonObject();
+        } catch (GitHubApi.NotFoundException e) {
+            throw new IOException("SubPath '" + source.getPath() + "' does not exist at " + source.getRef() + " (" + shortSha(commit) + ").");
+        }
+
+        Map<String, UpstreamBlob> upstream = new HashMap<>();
+        for (JsonElement element : tree.getAsJsonArray("tree")) {
+            JsonObject entry = element.getAsJsonObject();
+            if (!"blob".equals(entry.get("type").getAsString())) continue; // trees and submodules ("commit") carry no content
+            upstream.put(entry.get("path").getAsString(), new UpstreamBlob(entry.get("sha").getAsString(), entry.get("size").getAsLong()));
+        }
+        boolean truncated = tree.has("truncated") && tree.get("truncated").getAsBoolean();
+
+        Map<String, BasicFileAttributes> local = listLocalFiles(target, indicator);
+        List<Path> toHash = new ArrayList<>();
+        List<String> toHashNames = new ArrayList<>();
+        for (Map.Entry<String, UpstreamBlob> entry : upstream.entrySet()) {
+            BasicFileAttributes attributes = local.get(entry.getKey());
+            long size = entry.getValue().size;
+            if (attributes == null) {
+                plan.addChange(SyncPlan.ChangeKind.ADD, entry.getKey(), size);
+            } else if (attributes.size() != size) {
+                plan.addChange(SyncPlan.ChangeKind.UPDATE, entry.getKey(), size);
+            } else {
+                toHash.add(target.resolve(entry.getKey()));
+                toHashNames.add(entry.getKey());
+            }
+        }
+        compareHashes(plan, toHash, toHashNames, upstream, indicator);
+
+        if (truncated) {
+            plan.addNote("GitHub truncated the tree listing; adds/updates are partial and local-only files were not computed. Narrow the mapping's sub path for a complete plan.");
+        } else {
+            for (Map.Entry<String, BasicFileAttributes> entry : local.entrySet()) {
+                if (!upstream.containsKey(entry.getKey())) {
+                    plan.addChange(SyncPlan.ChangeKind.DELETE, entry.getKey(), entry.getValue().size());
+                }
+            }
+        }
+        plan.addNote("Directory mappings download the whole repository ZIP for " + source.getRef() + "; the byte count is the content that would change.");
+    }
+
+    // Same-size candidates are hashed in parallel; hashing is the only step that reads file content.
+    private void compareHashes(SyncPlan plan, List<Path> files, List<String> names, Map<String, UpstreamBlob> upstream,
+                               ProgressIndicator indicator) throws IOException {
+        List<LocalHash> localHashes;
+        try {
+            localHashes = files.parallelStream().map(file -> {
+                if (indicator.isCanceled()) throw new UncheckedIOException(new IOException(CANCELED));
+                try {
+                    return gitBlobSha(file);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }).toList();
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+        for (int i = 0; i < names.size(); i++) {
+            UpstreamBlob blob = upstream.get(names.get(i));
+            LocalHash localHash = localHashes.get(i);
+            plan.hashed(localHash.fromCache);
+            if (localHash.sha.equals(blob.sha)) {
+                plan.unchanged();
+            } else {
+                plan.addChange(SyncPlan.ChangeKind.UPDATE, names.get(i), blob.size);
+            }
+        }
+    }
+
+    private void planFile(SyncPlan plan, GitHubSource source, Path target, @Nullable String token) throws IOException, InterruptedException {
+        String filePath = source.getPath();
+        int slash = filePath.lastIndexOf('/');
+        String parent = slash >= 0 ? filePath.substring(0, slash) : "";
+        String name = filePath.substring(slash + 1);
+
+        UpstreamBlob blob = null;
+        String commit;
+        try {
+            commit = GitHubApi.resolveCommit(source, token);
+            String treeish = parent.isEmpty() ? commit : commit + ":" + GitHubApi.encodeSegments(parent);
+            JsonObject tree = GitHubApi.getJson(source.getApiBase() + "/git/trees/" + treeish, token).getAsJsonObject();
+            for (JsonElement element : tree.getAsJsonArray("tree")) {
+                JsonObject entry = element.getAsJsonObject();
+                if (name.equals(entry.get("path").getAsString()) && "blob".equals(entry.get("type").getAsString())) {
+                    blob = new UpstreamBlob(entry.get("sha").getAsString(), entry.get("size").getAsLong());
+                    break;
+                }
+            }
+        } catch (IOException e) {
+            // A branch containing '/' makes the URL ambiguous; the file's own HTTP validators still give a size check.
+            LOG.info("[" + project.getName() + "] Tree lookup failed for " + source.getSourceUrl() + ", falling back to HEAD: " + e.getMessage());
+            planFileByHead(plan, source, target);
+            return;
+        }
+        if (blob == null) {
+            throw new IOException("File '" + filePath + "' does not exist at " + source.getRef() + " (" + shortSha(commit) + ").");
+        }
+        plan.setUpstreamId(commit + " / blob " + blob.sha);
+
+        String relative = target.getFileName() != null ? target.getFileName().toString() : filePath;
+        if (!Files.isRegularFile(target)) {
+            plan.addChange(SyncPlan.ChangeKind.ADD, relative, blob.size);
+        } else if (Files.size(target) != blob.size) {
+            plan.addChange(SyncPlan.ChangeKind.UPDATE, relative, blob.size);
+        } else {
+            LocalHash localHash = gitBlobSha(target);
+            plan.hashed(localHash.fromCache);
+            if (localHash.sha.equals(blob.sha)) {
+                plan.unchanged();
+            } else {
+                plan.addChange(SyncPlan.ChangeKind.UPDATE, relative, blob.size);
+            }
+        }
+    }
+
+    private void planFileByHead(SyncPlan plan, GitHubSource source, Path target) throws IOException, InterruptedException {
+        String url = source.getSourceUrl().replace("/blob/", "/raw/"); // Same conversion SyncAction uses for downloads
+        HttpRequest request = GitHubApi.request(url, null).method("HEAD", HttpRequest.BodyPublishers.noBody()).build();
+        HttpResponse<Void> response = GitHubApi.client().send(request, HttpResponse.BodyHandlers.discarding());
+        if (response.statusCode() != 200) {
+            throw new IOException("HEAD request failed. Status: " + response.statusCode() + "\nURL: " + url);
+        }
+        long size = response.headers().firstValueAsLong("Content-Length").orElse(-1L);
+        plan.setUpstreamId(response.headers().firstValue("ETag").orElse("(no ETag)"));
+
+        String relative = target.getFileName() != null ? target.getFileName().toString() : source.getPath();
+        if (!Files.isRegularFile(target)) {
+            plan.addChange(SyncPlan.ChangeKind.ADD, relative, size);
+        } else if (size < 0 || Files.size(target) != size) {
+            plan.addChange(SyncPlan.ChangeKind.UPDATE, relative, size);
+        } else {
+            plan.unchanged();
+            plan.addNote("Compared by size only (no commit could be resolved for this URL); same-size edits are not detected.");
+        }
+    }
+
+    // Relative '/'-separated path -> attributes of every regular file under target
+    private Map<String, BasicFileAttributes> listLocalFiles(Path target, ProgressIndicator indicator) throws IOException {
+        Map<String, BasicFileAttributes> files = new HashMap<>();
+        if (!Files.isDirectory(target)) return files;
+        try (Stream<Path> walk = Files.walk(target)) {
+            for (Path file : (Iterable<Path>) walk::iterator) {
+                if (indicator.isCanceled()) throw new IOException(CANCELED);
+                BasicFileAttributes attributes = Files.readAttributes(file, BasicFileAttributes.class);
+                if (attributes.isRegularFile()) {
+                    files.put(Util.toUnixPath(target.relativize(file).toString()), attributes);
+                }
+            }
+        }
+        return files;
+    }
+
+    /** Git blob SHA-1 of a local file: {@code sha1("blob <size>\0" + content)}. */
+    private LocalHash gitBlobSha(Path file) throws IOException {
+        Path key = file.toAbsolutePath().normalize();
+        BasicFileAttributes attributes = Files.readAttributes(key, BasicFileAttributes.class);
+        long modified = attributes.lastModifiedTime().toMillis();
+        LocalBlob cached = blobCache.get(key);
+        if (cached != null && cached.size == attributes.size() && cached.modified == modified) {
+            return new LocalHash(cached.sha, true);
+        }
+
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-1");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-1 not available", e);
+        }
+        digest.update(("blob " + attributes.size() + "\0").getBytes(StandardCharsets.US_ASCII));
+        try (InputStream in = Files.newInputStream(key)) {
+            byte[] buffer = new byte[65536];
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                digest.update(buffer, 0, read);
+            }
+        }
+        String sha = HexFormat.of().formatHex(digest.digest());
+        blobCache.put(key, new LocalBlob(attributes.size(), modified, sha));
+        return new LocalHash(sha, false);
+    }
+
+    private static String shortSha(String sha) {
+        return sha.length() > 12 ? sha.substring(0, 12) : sha;
+    }
+
+    /** Drops cached local hashes, e.g. after files were rewritten with preserved timestamps. */
+    public void clearCache() {
+        blobCache.clear();
+    }
+
+    private static final class UpstreamBlob {
+        final String sha;
+        final long size;
+
+        UpstreamBlob(String sha, long size) {
+            this.sha = sha;
+            this.size = size;
+        }
+    }
+
+    private static final class LocalHash {
+        final String sha;
+        final boolean fromCache;
+
+        LocalHash(String sha, boolean fromCache) {
+            this.sha = sha;
+            this.fromCache = fromCache;
+        }
+    }
+
+    private static final class LocalBlob {
+        final long size;
+        final long modified;
+        final String sha;
+
+        LocalBlob(long size, long modified, String sha) {
+            this.size = size;
+            this.modified = modified;
+            this.sha = sha;
+        }
+    }
+}
@@ -0,0 +1,60 @@
+package com.example.syncfiles.sync;
+
+import com.intellij.openapi.progress.ProgressIndicator;
+
+/**
+ * Maps byte counts onto the {@link ProgressIndicator} fraction.
+ * Every mapping owns an equal slot of the bar; inside the slot the current phase owns a sub-range
+ * (e.g. download 0.0-0.6, extract 0.6-0.8, merge 0.8-1.0) that is filled by done/total bytes.
+ */
+public final class SyncProgress {
+    private final ProgressIndicator indicator;
+    private final int mappingCount;
+    private int mappingIndex = 0;
+    private double phaseStart = 0.0;
+    private double phaseEnd = 1.0;
+
+    public SyncProgress(ProgressIndicator indicator, int mappingCount) {
+        this.indicator = indicator;
+        this.mappingCount = Math.max(1, mappingCount);
+    }
+
+    public ProgressIndicator getIndicator() {
+        return indicator;
+    }
+
+    public void startMapping(int index) {
+        this.mappingIndex = index;
+        phase(0.0, 0.0);
+    }
+
+    /** Selects the sub-range of the current mapping slot that subsequent {@link #update} calls fill. */
+    public void phase(double start, double end) {
+        this.phaseStart = start;
+        this.phaseEnd = end;
+        setSlotFraction(start);
+    }
+
+    /** Fills the current phase by {@code done / total}; an unknown total (&lt;= 0) leaves the bar where it is. */
+    public void update(long done, long total) {
+        if (total <= 0) return;
+        double ratio = Math.min(1.0, (double) done / total);
+        setSlotFraction(phaseStart + (phaseEnd - phaseStart) * ratio);
+    }
+
+    public void finishMapping() {
+        setSlotFraction(1.0);
+    }
+
+    private void setSlotFraction(double withinSlot) {
+        indicator.setFraction((mappingIndex + withinSlot) / mappingCount);
+    }
+
+    /** "1.2 MB / 3.4 MB (2.10 MB/s)" style detail text for a transfer. */
+    public static String describeTransfer(long done, long total, long elapsedNanos) {
+        String amount = total > 0
+                ? SyncRunStats.formatBytes(done) + " / " + SyncRunStats.formatBytes(total)
+                : SyncRunStats.formatBytes(done);
+        return String.format("%s (%.2f MB/s)", amount, SyncRunStats.megabytesPerSecond(done, elapsedNanos));
+    }
+}
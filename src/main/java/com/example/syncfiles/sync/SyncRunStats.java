@@ -0,0 +1,116 @@
+package com.example.syncfiles.sync;
+
+import com.example.syncfiles.Mapping;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Metrics for one invocation of {@code SyncAction.syncFiles}: one {@link MappingStats} per mapping
+ * plus run-level outcome, wall time and VFS refresh time.
+ */
+public final class SyncRunStats {
+    public enum Outcome { RUNNING, COMPLETED, CANCELED, FAILED }
+
+    private final long startedAtMillis = System.currentTimeMillis();
+    private final long startedAtNanos = System.nanoTime();
+    private final String trigger;
+    private final List<MappingStats> mappings = new CopyOnWriteArrayList<>();
+    private volatile Outcome outcome = Outcome.RUNNING;
+    private volatile String message = "";
+    private volatile long durationNanos = -1;
+    private volatile long refreshNanos = 0;
+
+    public SyncRunStats(String trigger) {
+        this.trigger = trigger;
+    }
+
+    public MappingStats startMapping(Mapping mapping) {
+        MappingStats stats = new MappingStats(mapping.sourceUrl, mapping.targetPath);
+        mappings.add(stats);
+        return stats;
+    }
+
+    public void finish(Outcome outcome, String message) {
+        this.durationNanos = System.nanoTime() - startedAtNanos;
+        this.message = message != null ? message : "";
+        this.outcome = outcome;
+    }
+
+    public void setRefreshNanos(long refreshNanos) {
+        this.refreshNanos = refreshNanos;
+    }
+
+    public long getStartedAtMillis() {
+        return startedAtMillis;
+    }
+
+    public String getTrigger() {
+        return trigger;
+    }
+
+    public List<MappingStats> getMappings() {
+        return List.copyOf(mappings);
+    }
+
+    public Outcome getOutcome() {
+        return outcome;
+    }
+
+    public String getMessage() {
+        return message;
+    }
+
+    /** Wall time of the run, or the time elapsed so far while it is still running. */
+    public long getDurationNanos() {
+        long d = durationNanos;
+        return d >= 0 ? d : System.nanoTime() - startedAtNanos;
+    }
+
+    public long getPhaseNanos(SyncPhase phase) {
+        if (phase == SyncPhase.REFRESH) {
+            return refreshNanos;
+        }
+        return mappings.stream().mapToLong(m -> m.getPhaseNanos(phase)).sum();
+    }
+
+    public long getTotalBytes() {
+        return mappings.stream().mapToLong(MappingStats::getBytesDownloaded).sum();
+    }
+
+    public int getFilesWritten() {
+        return mappings.stream().mapToInt(MappingStats::getFilesWritten).sum();
+    }
+
+    public int getFilesSkipped() {
+        return mappings.stream().mapToInt(MappingStats::getFilesSkipped).sum();
+    }
+
+    public double getDownloadMegabytesPerSecond() {
+        return megabytesPerSecond(getTotalBytes(), getPhaseNanos(SyncPhase.DOWNLOAD));
+    }
+
+    public String formatSummary() {
+        return String.format("%s in %s, %.2f MB/s, %d written, %d skipped",
+                formatBytes(getTotalBytes()), formatNanos(getDurationNanos()),
+                getDownloadMegabytesPerSecond(), getFilesWritten(), getFilesSkipped());
+    }
+
+    static double megabytesPerSecond(long bytes, long nanos) {
+        if (bytes <= 0 || nanos <= 0) return 0.0;
+        return (bytes / 1_000_000.0) / (nanos / 1_000_000_000.0);
+    }
+
+    public static String formatBytes(long bytes) {
+        if (bytes < 1024) return bytes + " B";
+        if (bytes < 1024 * 1024) return String.format("%.1f KB", bytes / 1024.0);
+        if (bytes < 1024L * 1024 * 1024) return String.format("%.1f MB", bytes / (1024.0 * 1024));
+        return String.format("%.2f GB", bytes / (1024.0 * 1024 * 1024));
+    }
+
+    public static String formatNanos(long nanos) {
+        long millis = nanos / 1_000_000;
+        if (millis < 1000) return millis + " ms";
+        return String.format("%.2f s", millis / 1000.0);
+    }
+}
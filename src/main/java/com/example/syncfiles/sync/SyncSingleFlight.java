@@ -0,0 +1,187 @@
+package com.example.syncfiles.sync;
+
+import com.intellij.openapi.diagnostic.Logger;
+import com.intellij.openapi.progress.ProgressIndicator;
+import com.intellij.openapi.project.Project;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Single-flight for syncs of one project directory.
+ * <p>
+ * Inside the IDE process a registry keyed by the project's base path lets a second trigger (workflow, auto-sync,
+ * a second click) attach to the running sync's result instead of starting another one. Across IDE processes an OS
+ * file lock in the temp directory serialises syncs. The holder writes its outcome and finish time into the lock file
+ * before releasing it; a process that had to wait reuses a COMPLETED result instead of downloading again, and only
+ * syncs itself after a FAILED or CANCELED one.
+ */
+public final class SyncSingleFlight {
+    private static final Logger LOG = Logger.getInstance(SyncSingleFlight.class);
+    private static final long LOCK_POLL_MS = 500;
+    private static final long LOCK_WAIT_TIMEOUT_MS = 10 * 60 * 1000;
+    private static final Map<String, CompletableFuture<SyncRunStats>> RUNNING = new ConcurrentHashMap<>();
+
+    private SyncSingleFlight() {
+    }
+
+    private static String key(@NotNull Project project) {
+        String basePath = project.getBasePath();
+        return basePath != null ? Paths.get(basePath).toAbsolutePath().normalize().toString() : project.getLocationHash();
+    }
+
+    /**
+     * Registers {@code flight} as the running sync of the project. Returns null if it was registered, or the
+     * future of the sync that is already running (the caller should attach to it and not start a new one).
+     */
+    public static @Nullable CompletableFuture<SyncRunStats> register(@NotNull Project project, @NotNull CompletableFuture<SyncRunStats> flight) {
+        return RUNNING.putIfAbsent(key(project), flight);
+    }
+
+    /** Unregisters the flight and hands its result to everyone who attached. */
+    public static void complete(@NotNull Project project, @NotNull CompletableFuture<SyncRunStats> flight, @NotNull SyncRunStats run) {
+        RUNNING.remove(key(project), flight);
+        flight.complete(run);
+    }
+
+    /**
+     * Takes the cross-process lock of the project, waiting while another IDE process holds it.
+     * Returns null if the indicator was canceled while waiting; fails after {@link #LOCK_WAIT_TIMEOUT_MS} if the
+     * other process never lets go. If the lock file cannot be used at all the sync proceeds unlocked rather than failing.
+     */
+    public static @Nullable ProcessLock lock(@NotNull Project project, @NotNull ProgressIndicator indicator)
+            throws InterruptedException, TimeoutException {
+        Path lockFile = Paths.get(System.getProperty("java.io.tmpdir"), "syncfiles-" + hash(key(project)) + ".lock");
+        FileChannel channel;
+        try {
+            channel = FileChannel.open(lockFile, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        } catch (IOException e) {
+            LOG.warn("[" + project.getName() + "] Cannot open sync lock file " + lockFile + ", syncing without cross-process lock: " + e.getMessage());
+            return new ProcessLock(null, null, false, false);
+        }
+
+        boolean waited = false;
+        long waitStartedMillis = 0;
+        long deadline = System.currentTimeMillis() + LOCK_WAIT_TIMEOUT_MS;
+        try {
+            while (true) {
+                FileLock lock;
+                try {
+                    lock = channel.tryLock();
+                } catch (OverlappingFileLockException e) {
+                    lock = null; // held by this JVM through another channel
+                }
+                if (lock != null) {
+                    return new ProcessLock(channel, lock, waited, waited && completedSince(channel, waitStartedMillis));
+                }
+                if (!waited) {
+                    waitStartedMillis = System.currentTimeMillis();
+                    LOG.info("[" + project.getName() + "] Another IDE process is syncing this project, waiting for it to finish.");
+                    indicator.setText("Waiting for a sync running in another IDE window...");
+                    waited = true;
+                }
+                if (indicator.isCanceled()) {
+                    channel.close();
+                    return null;
+                }
+                if (System.currentTimeMillis() > deadline) {
+                    channel.close();
+                    throw new TimeoutException("Another IDE process has held the sync lock " + lockFile + " for more than " +
+                            LOCK_WAIT_TIMEOUT_MS / 60_000 + " minutes.");
+                }
+                Thread.sleep(LOCK_POLL_MS);
+            }
+        } catch (IOException e) {
+            LOG.warn("[" + project.getName() + "] Cannot lock " + lockFile + ", syncing without cross-process lock: " + e.getMessage());
+            try {
+                channel.close();
+            } catch (IOException ignored) {
+            }
+            return new ProcessLock(null, null, false, false);
+        }
+    }
+
+    /** True if the lock file records a COMPLETED sync that finished at or after {@code sinceMillis}. */
+    private static boolean completedSince(FileChannel channel, long sinceMillis) {
+        try {
+            ByteBuffer buffer = ByteBuffer.allocate(64);
+            channel.read(buffer, 0);
+            String[] record = new String(buffer.array(), 0, buffer.position(), StandardCharsets.UTF_8).trim().split(" ");
+            return record.length == 2 && SyncRunStats.Outcome.COMPLETED.name().equals(record[0])
+                    && Long.parseLong(record[1]) >= sinceMillis;
+        } catch (IOException | NumberFormatException e) {
+            return false; // unreadable or from an older version: sync again
+        }
+    }
+
+    private static String hash(String value) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-1").digest(value.getBytes(StandardCharsets.UTF_8));
+            return HexFormat.of().formatHex(digest, 0, 8);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-1 not available", e);
+        }
+    }
+
+    public static final class ProcessLock implements AutoCloseable {
+        private final @Nullable FileChannel channel;
+        private final @Nullable FileLock lock;
+        private final boolean waited;
+        private final boolean otherCompleted;
+
+        private ProcessLock(@Nullable FileChannel channel, @Nullable FileLock lock, boolean waited, boolean otherCompleted) {
+            this.channel = channel;
+            this.lock = lock;
+            this.waited = waited;
+            this.otherCompleted = otherCompleted;
+        }
+
+        /** True if another IDE process held the lock when this sync started. */
+        public boolean waitedForOtherProcess() {
+            return waited;
+        }
+
+        /** True if the process this sync waited for completed its sync, so the targets are up to date. */
+        public boolean otherProcessCompleted() {
+            return otherCompleted;
+        }
+
+        /** Writes the outcome of this process's run into the lock file for processes waiting on it; call before {@link #close}. */
+        public void recordOutcome(@NotNull SyncRunStats run) {
+            if (channel == null) return;
+            try {
+                byte[] record = (run.getOutcome().name() + " " + System.currentTimeMillis() + "\n").getBytes(StandardCharsets.UTF_8);
+                channel.truncate(0);
+                channel.write(ByteBuffer.wrap(record), 0);
+            } catch (IOException e) {
+                LOG.warn("Failed to record the sync outcome in the lock file: " + e.getMessage());
+            }
+        }
+
+        @Override
+        public void close() {
+            try {
+                if (lock != null) lock.release();
+                if (channel != null) channel.close();
+            } catch (IOException e) {
+                LOG.warn("Failed to release sync lock: " + e.getMessage());
+            }
+        }
+    }
+}
@@ -0,0 +1,33 @@
+package com.example.syncfiles.ui;
+
+import com.example.syncfiles.SyncAction;
+import com.intellij.icons.AllIcons;
+import com.intellij.openapi.actionSystem.ActionUpdateThread;
+import com.intellij.openapi.actionSystem.AnAction;
+import com.intellij.openapi.actionSystem.AnActionEvent;
+import com.intellij.openapi.project.Project;
+import org.jetbrains.annotations.NotNull;
+
+public class PlanSyncAction extends AnAction {
+
+    public PlanSyncAction() {
+        super("Plan Sync (Dry Run)...", "Show what a sync would add or update, without downloading or writing files", AllIcons.Actions.Preview);
+    }
+
+    @Override
+    public void actionPerformed(@NotNull AnActionEvent e) {
+        Project project = e.getProject();
+        if (project == null) return;
+        new SyncAction().planSync(project);
+    }
+
+    @Override
+    public void update(@NotNull AnActionEvent e) {
+        e.getPresentation().setEnabledAndVisible(e.getProject() != null);
+    }
+
+    @Override
+    public @NotNull ActionUpdateThread getActionUpdateThread() {
+        return ActionUpdateThread.BGT;
+    }
+}
@@ -0,0 +1,124 @@
+package com.example.syncfiles.ui;
+
+import com.example.syncfiles.sync.MappingStats;
+import com.example.syncfiles.sync.SyncHistoryService;
+import com.example.syncfiles.sync.SyncPhase;
+import com.example.syncfiles.sync.SyncRunStats;
+import com.intellij.openapi.project.Project;
+import com.intellij.openapi.ui.DialogWrapper;
+import com.intellij.ui.JBSplitter;
+import com.intellij.ui.ScrollPaneFactory;
+import com.intellij.ui.table.JBTable;
+import com.intellij.util.ui.JBUI;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import javax.swing.*;
+import javax.swing.table.DefaultTableModel;
+import java.awt.*;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+/**
+ * Shows the last {@link SyncHistoryService#MAX_RUNS} sync runs (top) and the per-mapping,
+ * per-phase metrics of the selected run (bottom).
+ */
+public class SyncHistoryDialog extends DialogWrapper {
+    private static final SyncPhase[] MAPPING_PHASES = {
+            SyncPhase.DNS, SyncPhase.CONNECT, SyncPhase.DOWNLOAD, SyncPhase.EXTRACT, SyncPhase.COMPARE, SyncPhase.COPY
+    };
+
+    private final List<SyncRunStats> runs;
+    private DefaultTableModel mappingsModel;
+
+    public SyncHistoryDialog(@NotNull Project project) {
+        super(project);
+        this.runs = SyncHistoryService.getInstance(project).getRecentRuns();
+        setTitle("Sync History (last " + SyncHistoryService.MAX_RUNS + " runs)");
+        init();
+    }
+
+    @Override
+    protected @Nullable JComponent createCenterPanel() {
+        List<String> runColumns = new ArrayList<>(List.of("Started", "Trigger", "Outcome", "Duration", "Downloaded", "MB/s", "Written", "Skipped"));
+        runColumns.add(SyncPhase.REFRESH.getDisplayName());
+        DefaultTableModel runsModel = new ReadOnlyTableModel(runColumns.toArray());
+        SimpleDateFormat timeFormat = new SimpleDateFormat("yyyy/MM/dd HH:mm:ss");
+        for (SyncRunStats run : runs) {
+            runsModel.addRow(new Object[]{
+                    timeFormat.format(new Date(run.getStartedAtMillis())),
+                    run.getTrigger(),
+                    run.getOutcome() + (run.getMessage().isEmpty() ? "" : ": " + run.getMessage()),
+                    SyncRunStats.formatNanos(run.getDurationNanos()),
+                    SyncRunStats.formatBytes(run.getTotalBytes()),
+                    String.format("%.2f", run.getDownloadMegabytesPerSecond()),
+                    run.getFilesWritten(),
+                    run.getFilesSkipped(),
+                    SyncRunStats.formatNanos(run.getPhaseNanos(SyncPhase.REFRESH))
+            });
+        }
+        JBTable runsTable = new JBTable(runsModel);
+        runsTable.setSelectionMode(ListSelectionModel.SINGLE_SELECTION);
+
+        List<String> mappingColumns = new ArrayList<>(List.of("Source URL", "Downloaded", "MB/s"));
+        for (SyncPhase phase : MAPPING_PHASES) {
+            mappingColumns.add(phase.getDisplayName());
+        }
+        mappingColumns.addAll(List.of("Written", "Skipped", "Error"));
+        mappingsModel = new ReadOnlyTableModel(mappingColumns.toArray());
+        JBTable mappingsTable = new JBTable(mappingsModel);
+
+        runsTable.getSelectionModel().addListSelectionListener(e -> {
+            if (e.getValueIsAdjusting()) return;
+            int row = runsTable.getSelectedRow();
+            showMappings(row >= 0 ? runs.get(runsTable.convertRowIndexToModel(row)) : null);
+        });
+        if (!runs.isEmpty()) {
+            runsTable.getSelectionModel().setSelectionInterval(0, 0);
+        }
+
+        JBSplitter splitter = new JBSplitter(true, 0.45f);
+        splitter.setFirstComponent(ScrollPaneFactory.createScrollPane(runsTable));
+        splitter.setSecondComponent(ScrollPaneFactory.createScrollPane(mappingsTable));
+        splitter.setPreferredSize(new Dimension(JBUI.scale(900), JBUI.scale(450)));
+        return splitter;
+    }
+
+    private void showMappings(@Nullable SyncRunStats run) {
+        mappingsModel.setRowCount(0);
+        if (run == null) return;
+        for (MappingStats mapping : run.getMappings()) {
+            List<Object> row = new ArrayList<>();
+            row.add(mapping.getSourceUrl());
+            long contentLength = mapping.getContentLength();
+            row.add(SyncRunStats.formatBytes(mapping.getBytesDownloaded()) +
+                    (contentLength > 0 && contentLength != mapping.getBytesDownloaded() ? " / " + SyncRunStats.formatBytes(contentLength) : ""));
+            row.add(String.format("%.2f", mapping.getDownloadMegabytesPerSecond()));
+            for (SyncPhase phase : MAPPING_PHASES) {
+                row.add(SyncRunStats.formatNanos(mapping.getPhaseNanos(phase)));
+            }
+            row.add(mapping.getFilesWritten());
+            row.add(mapping.getFilesSkipped());
+            row.add(mapping.getError() != null ? mapping.getError() : "");
+            mappingsModel.addRow(row.toArray());
+        }
+    }
+
+    @Override
+    protected Action @NotNull [] createActions() {
+        return new Action[]{getOKAction()};
+    }
+
+    private static class ReadOnlyTableModel extends DefaultTableModel {
+        ReadOnlyTableModel(Object[] columns) {
+            super(columns, 0);
+        }
+
+        @Override
+        public boolean isCellEditable(int row, int column) {
+            return false;
+        }
+    }
+}
@@ -0,0 +1,125 @@
+package com.example.syncfiles.ui;
+
+import com.example.syncfiles.sync.SyncPlan;
+import com.example.syncfiles.sync.SyncRunStats;
+import com.intellij.openapi.project.Project;
+import com.intellij.openapi.ui.DialogWrapper;
+import com.intellij.ui.JBSplitter;
+import com.intellij.ui.ScrollPaneFactory;
+import com.intellij.ui.table.JBTable;
+import com.intellij.util.ui.JBUI;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import javax.swing.*;
+import javax.swing.table.DefaultTableModel;
+import java.awt.*;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Shows the result of a dry run: one row per mapping (top) and the individual changes of the
+ * selected mapping (bottom). OK starts the real sync.
+ */
+public class SyncPlanDialog extends DialogWrapper {
+    private final List<SyncPlan> plans;
+    private DefaultTableModel changesModel;
+
+    public SyncPlanDialog(@NotNull Project project, @NotNull List<SyncPlan> plans, long elapsedNanos) {
+        super(project);
+        this.plans = plans;
+        setTitle("Sync Plan (computed in " + SyncRunStats.formatNanos(elapsedNanos) + ", nothing written)");
+        setOKButtonText("Sync Now");
+        setCancelButtonText("Close");
+        init();
+    }
+
+    @Override
+    protected @Nullable JComponent createCenterPanel() {
+        DefaultTableModel plansModel = new ReadOnlyTableModel(new Object[]{
+                "Source URL", "Target", "Upstream", "Add", "Update", "Local only", "Unchanged", "To transfer", "Hashed / cached", "Time", "Notes"
+        });
+        for (SyncPlan plan : plans) {
+            plansModel.addRow(new Object[]{
+                    plan.getSourceUrl(),
+                    plan.getTargetPath(),
+                    plan.getUpstreamId(),
+                    plan.count(SyncPlan.ChangeKind.ADD),
+                    plan.count(SyncPlan.ChangeKind.UPDATE),
+                    plan.count(SyncPlan.ChangeKind.DELETE),
+                    plan.getUnchanged(),
+                    SyncRunStats.formatBytes(plan.getBytesToTransfer()),
+                    plan.getHashedFiles() + " / " + plan.getCachedHashes(),
+                    SyncRunStats.formatNanos(plan.getElapsedNanos()),
+                    plan.getError() != null ? "Error: " + plan.getError() : String.join(" ", plan.getNotes())
+            });
+        }
+        JBTable plansTable = new JBTable(plansModel);
+        plansTable.setSelectionMode(ListSelectionModel.SINGLE_SELECTION);
+
+        changesModel = new ReadOnlyTableModel(new Object[]{"Change", "Path", "Size"});
+        JBTable changesTable = new JBTable(changesModel);
+
+        plansTable.getSelectionModel().addListSelectionListener(e -> {
+            if (e.getValueIsAdjusting()) return;
+            int row = plansTable.getSelectedRow();
+            showChanges(row >= 0 ? plans.get(plansTable.convertRowIndexToModel(row)) : null);
+        });
+        if (!plans.isEmpty()) {
+            plansTable.getSelectionModel().setSelectionInterval(0, 0);
+        }
+
+        JBSplitter splitter = new JBSplitter(true, 0.4f);
+        splitter.setFirstComponent(ScrollPaneFactory.createScrollPane(plansTable));
+        splitter.setSecondComponent(ScrollPaneFactory.createScrollPane(changesTable));
+        splitter.setPreferredSize(new Dimension(JBUI.scale(950), JBUI.scale(500)));
+
+        JPanel panel = new JPanel(new BorderLayout(0, JBUI.scale(6)));
+        panel.add(new JLabel(describeTotals()), BorderLayout.NORTH);
+        panel.add(splitter, BorderLayout.CENTER);
+        panel.add(new JLabel("\"Local only\" files exist in the target but not upstream; the sync merges and keeps them."), BorderLayout.SOUTH);
+        return panel;
+    }
+
+    private String describeTotals() {
+        int adds = 0, updates = 0, deletes = 0;
+        long bytes = 0;
+        int failed = 0;
+        for (SyncPlan plan : plans) {
+            adds += plan.count(SyncPlan.ChangeKind.ADD);
+            updates += plan.count(SyncPlan.ChangeKind.UPDATE);
+            deletes += plan.count(SyncPlan.ChangeKind.DELETE);
+            bytes += plan.getBytesToTransfer();
+            if (plan.getError() != null) failed++;
+        }
+        return String.format("%d mappings: %d to add, %d to update (%s), %d local only%s",
+                plans.size(), adds, updates, SyncRunStats.formatBytes(bytes), deletes,
+                failed > 0 ? ", " + failed + " could not be planned" : "");
+    }
+
+    private void showChanges(@Nullable SyncPlan plan) {
+        changesModel.setRowCount(0);
+        if (plan == null) return;
+        List<SyncPlan.Change> changes = new ArrayList<>(plan.getChanges());
+        changes.sort(Comparator.comparing(SyncPlan.Change::getKind).thenComparing(SyncPlan.Change::getPath));
+        for (SyncPlan.Change change : changes) {
+            changesModel.addRow(new Object[]{
+                    change.getKind().getDisplayName(),
+                    change.getPath(),
+                    change.getSize() >= 0 ? SyncRunStats.formatBytes(change.getSize()) : "?"
+            });
+        }
+    }
+
+    private static class ReadOnlyTableModel extends DefaultTableModel {
+        ReadOnlyTableModel(Object[] columns) {
+            super(columns, 0);
+        }
+
+        @Override
+        public boolean isCellEditable(int row, int column) {
+            return false;
+        }
+    }
+}
@@ -35,6 +35,15 @@ public class Util {
      * Useful after external changes or downloads.
      */
     public static void refreshAllFiles(@NotNull Project project) {
+        refreshAllFiles(project, null);
+    }
+
+    /**
+     * Same as {@link #refreshAllFiles(Project)}, but runs {@code onFinished} on the EDT once the project-specific
+     * refresh has completed (or right away if the base directory cannot be refreshed).
+     * Used by the sync metrics to time the REFRESH phase.
+     */
+    public static void refreshAllFiles(@NotNull Project project, @Nullable Runnable onFinished) {
         ApplicationManager.getApplication().invokeLater(() -> {
             // 1. 尝试全局刷新 (异步)
             // 这会尝试刷新所有已知的VFS根，而不仅仅是当前项目
@@ -62,6 +71,9 @@ public class Util {
                 System.err.println("[" + project.getName() + "] Project base path is null, cannot perform project-specific VFS refresh.");
                 // LOG.warn("[" + project.getName() + "] Project base path is null, cannot refresh VFS.");
             }
+            if (onFinished != null) {
+                onFinished.run();
+            }
         });
     }
 
@@ -234,6 +246,29 @@ public class Util {
         }
         return  pathWithMaybeMacros;
     }
+
+    // Resolves a mapping target path consistently: absolute as-is, relative against the project base path
+    public static @NotNull Path resolveTargetPath(@NotNull Project project, String targetPathString) {
+        Path targetPath;
+        if (targetPathString == null || targetPathString.trim().isEmpty()) {
+            throw new IllegalArgumentException("Target path cannot be empty.");
+        }
+        targetPathString = targetPathString.trim();
+        // Check if absolute (Windows C:\ or Unix /)
+        if (Paths.get(targetPathString).isAbsolute()) {
+            targetPath = Paths.get(targetPathString);
+        } else {
+            // Relative path - resolve against project base path
+            String projectBasePath = project.getBasePath();
+            if (projectBasePath == null) {
+                throw new IllegalStateException("Project base path is null, cannot resolve relative target path.");
+            }
+            targetPath = Paths.get(projectBasePath, targetPathString);
+        }
+        // Normalize the path (e.g., remove ../)
+        return targetPath.normalize();
+    }
+
     @Nullable
     public static String ensureAbsolutePath(@NotNull Project project, @Nullable String pathString) {
         // 1. 检查输入的路径字符串是否为空或null
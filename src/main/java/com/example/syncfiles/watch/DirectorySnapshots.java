@@ -0,0 +1,208 @@
+package com.example.syncfiles.watch;
+
+import com.intellij.openapi.diagnostic.Logger;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Last known listing (name, size, mtime, file key) of each watched directory, so that events lost to a kernel queue
+ * overflow can be reconstructed: on OVERFLOW the directory is listed again and {@link #diff} reports what was created,
+ * modified and deleted meanwhile. Listings are kept current by {@link #update} for every delivered event. The file
+ * key is the inode (plus device) on Unix file systems and not available on Windows, where size and mtime decide.
+ * <p>
+ * Directories with more than {@link #MAX_ENTRIES} entries are not recorded; an overflow there can only be answered
+ * with a VFS refresh.
+ * <p>
+ * {@link WatchJournal} persists the listings, and {@link #changesSince} compares a persisted listing with the current
+ * one after a restart.
+ */
+public final class DirectorySnapshots {
+    private static final Logger LOG = Logger.getInstance(DirectorySnapshots.class);
+    public static final int MAX_ENTRIES = 10_000;
+
+    /** One difference found by {@link #diff}. */
+    public static final class Change {
+        private final String eventType;
+        private final Path name;
+        private final boolean directory;
+
+        Change(String eventType, Path name, boolean directory) {
+            this.eventType = eventType;
+            this.name = name;
+            this.directory = directory;
+        }
+
+        /** {@link EventDebouncer#CHANGE_NEW}, {@link EventDebouncer#CHANGE_MOD} or {@link EventDebouncer#CHANGE_DEL}. */
+        public String getEventType() {
+            return eventType;
+        }
+
+        /** Entry name relative to the directory, like a native event's context. */
+        public Path getName() {
+            return name;
+        }
+
+        public boolean isDirectory() {
+            return directory;
+        }
+    }
+
+    private final Map<Path, Map<Path, Entry>> snapshots = new ConcurrentHashMap<>();
+
+    /** Records the current listing of {@code dir}, replacing an older one. */
+    public void take(@NotNull Path dir) {
+        Map<Path, Entry> listing = list(dir);
+        if (listing != null) {
+            snapshots.put(dir, listing);
+        } else {
+            snapshots.remove(dir);
+        }
+    }
+
+    /** Re-reads one entry after a delivered event on {@code dir/name}. */
+    public void update(@NotNull Path dir, @NotNull Path name) {
+        Map<Path, Entry> listing = snapshots.get(dir);
+        if (listing == null) return;
+        Entry entry = read(dir.resolve(name));
+        if (entry == null) {
+            listing.remove(name);
+        } else if (listing.size() < MAX_ENTRIES || listing.containsKey(name)) {
+            listing.put(name, entry);
+        } else {
+            snapshots.remove(dir); // grew too large to track
+        }
+    }
+
+    /** The recorded entry for {@code dir/name}, null if the directory has no snapshot or the entry is unknown. */
+    Entry get(Path dir, Path name) {
+        Map<Path, Entry> listing = snapshots.get(dir);
+        return listing != null ? listing.get(name) : null;
+    }
+
+    public void forget(@NotNull Path dir) {
+        snapshots.remove(dir);
+    }
+
+    public void clear() {
+        snapshots.clear();
+    }
+
+    /**
+     * Lists {@code dir} again, returns the changes since the recorded listing and records the new one. Returns an
+     * empty list if there was no recorded listing.
+     */
+    public @NotNull List<Change> diff(@NotNull Path dir) {
+        Map<Path, Entry> before = snapshots.get(dir);
+        Map<Path, Entry> after = list(dir);
+        if (after != null) {
+            snapshots.put(dir, after);
+        } else {
+            snapshots.remove(dir);
+        }
+        if (before == null) return Collections.emptyList();
+        return changes(before, after != null ? after : Map.of());
+    }
+
+    /**
+     * Changes from {@code before} (a listing persisted by an earlier session) to the listing recorded now; empty if
+     * {@code dir} has no recorded listing.
+     */
+    @NotNull List<Change> changesSince(@NotNull Path dir, @NotNull Map<Path, Entry> before) {
+        Map<Path, Entry> after = snapshots.get(dir);
+        return after != null ? changes(before, after) : Collections.emptyList();
+    }
+
+    /** All recorded listings, live; for persisting them. */
+    Map<Path, Map<Path, Entry>> listings() {
+        return snapshots;
+    }
+
+    private static List<Change> changes(Map<Path, Entry> before, Map<Path, Entry> after) {
+        List<Change> changes = new ArrayList<>();
+        for (Map.Entry<Path, Entry> current : after.entrySet()) {
+            Entry previous = before.get(current.getKey());
+            if (previous == null || previous.directory != current.getValue().directory) {
+                if (previous != null) changes.add(new Change(EventDebouncer.CHANGE_DEL, current.getKey(), previous.directory));
+                changes.add(new Change(EventDebouncer.CHANGE_NEW, current.getKey(), current.getValue().directory));
+            } else if (!current.getValue().directory && !previous.sameContentAs(current.getValue())) {
+                changes.add(new Change(EventDebouncer.CHANGE_MOD, current.getKey(), false));
+            }
+        }
+        for (Map.Entry<Path, Entry> previous : before.entrySet()) {
+            if (!after.containsKey(previous.getKey())) {
+                changes.add(new Change(EventDebouncer.CHANGE_DEL, previous.getKey(), previous.getValue().directory));
+            }
+        }
+        return changes;
+    }
+
+    /** Null if the directory cannot be listed or has too many entries. */
+    private static Map<Path, Entry> list(Path dir) {
+        Map<Path, Entry> listing = new HashMap<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(dir)) {
+            for (Path child : stream) {
+                if (listing.size() >= MAX_ENTRIES) {
+                    LOG.debug("Not snapshotting '" + dir + "': more than " + MAX_ENTRIES + " entries.");
+                    return null;
+                }
+                Entry entry = read(child);
+                if (entry != null) listing.put(child.getFileName(), entry);
+            }
+        } catch (IOException e) {
+            LOG.debug("Cannot list '" + dir + "' for its snapshot: " + e.getMessage());
+            return null;
+        }
+        return new ConcurrentHashMap<>(listing);
+    }
+
+    static Entry read(Path path) {
+        try {
+            BasicFileAttributes attrs = Files.readAttributes(path, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+            return new Entry(attrs.size(), attrs.lastModifiedTime().toMillis(), attrs.fileKey(), attrs.isDirectory());
+        } catch (IOException e) {
+            return null; // deleted between listing and stat, or not readable
+        }
+    }
+
+    static final class Entry {
+        final long size;
+        final long modifiedMillis;
+        final Object fileKey;
+        final boolean directory;
+
+        /** {@code fileKey} is null where the platform has none and for entries read back from disk. */
+        Entry(long size, long modifiedMillis, Object fileKey, boolean directory) {
+            this.size = size;
+            this.modifiedMillis = modifiedMillis;
+            this.fileKey = fileKey;
+            this.directory = directory;
+        }
+
+        boolean sameContentAs(Entry other) {
+            return size == other.size && modifiedMillis == other.modifiedMillis
+                    && (fileKey == null || other.fileKey == null || fileKey.equals(other.fileKey));
+        }
+
+        /**
+         * True if {@code other} is most likely this regular file under another name: a rename keeps size, mtime and
+         * the inode. Size and mtime are compared even when both have a file key, because a freed inode is reused.
+         */
+        boolean sameFileAs(Entry other) {
+            if (directory || other.directory) return false;
+            if (fileKey != null && other.fileKey != null && !fileKey.equals(other.fileKey)) return false;
+            return size == other.size && modifiedMillis == other.modifiedMillis;
+        }
+    }
+}
@@ -0,0 +1,173 @@
+package com.example.syncfiles.watch;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Batch mode of a watch entry: collects all events for one script over a quiet period and hands them over as a
+ * single list, so a branch switch touching thousands of files runs the script once instead of once per file.
+ * Events for the same path inside a batch are merged like {@link EventDebouncer} does; a batch is cut at
+ * {@link #MAX_BATCH_SIZE} distinct paths and fires at the latest {@link EventDebouncer#maxLatencyMillis} after
+ * its first event. Moves are recorded under their destination with their source, following the same rules.
+ */
+public final class EventBatcher {
+    public static final int MAX_BATCH_SIZE = 1000;
+    /** Minimum collection window, so "batch" with a debounce of 0 still groups a burst. */
+    private static final long MIN_WINDOW_MS = 100;
+
+    public interface Sink {
+        void fire(@NotNull String scriptPath, @NotNull String refreshPath, @NotNull List<Record> records);
+    }
+
+    public static final class Record {
+        private final String eventType;
+        private final String path;
+        private final String movedFrom;
+
+        public Record(@NotNull String eventType, @NotNull String path, @Nullable String movedFrom) {
+            this.eventType = eventType;
+            this.path = path;
+            this.movedFrom = movedFrom;
+        }
+
+        public String getEventType() {
+            return eventType;
+        }
+
+        public String getPath() {
+            return path;
+        }
+
+        /** Source path of a {@link EventDebouncer#CHANGE_MOVE}, null otherwise. */
+        public @Nullable String getMovedFrom() {
+            return movedFrom;
+        }
+    }
+
+    private final ScheduledExecutorService scheduler;
+    private final Sink sink;
+    private final Map<String, Batch> batches = new HashMap<>(); // script -> open batch, guarded by this
+    private boolean disposed = false;
+
+    public EventBatcher(@NotNull ScheduledExecutorService scheduler, @NotNull Sink sink) {
+        this.scheduler = scheduler;
+        this.sink = sink;
+    }
+
+    public void submit(@NotNull String scriptPath, @NotNull String refreshPath, @NotNull String eventType,
+                       @NotNull String affectedPath, long quietMillis) {
+        add(scriptPath, refreshPath, eventType, affectedPath, null, quietMillis);
+    }
+
+    /** Records a move of {@code fromPath} to {@code toPath}. */
+    public void submitMove(@NotNull String scriptPath, @NotNull String refreshPath, @NotNull String fromPath,
+                           @NotNull String toPath, long quietMillis) {
+        add(scriptPath, refreshPath, EventDebouncer.CHANGE_MOVE, toPath, fromPath, quietMillis);
+    }
+
+    private void add(String scriptPath, String refreshPath, String eventType, String affectedPath, String movedFrom, long quietMillis) {
+        long window = Math.max(MIN_WINDOW_MS, quietMillis);
+        Batch full = null;
+        synchronized (this) {
+            if (disposed) return;
+            long now = System.currentTimeMillis();
+            Batch batch = batches.get(scriptPath);
+            if (batch == null) {
+                batch = new Batch(refreshPath, now);
+                batches.put(scriptPath, batch);
+            } else {
+                batch.future.cancel(false);
+            }
+            if (movedFrom != null) {
+                String source = batch.events.remove(movedFrom);
+                String sourceOrigin = batch.movedFrom.remove(movedFrom);
+                if (EventDebouncer.CHANGE_NEW.equals(source)) {
+                    eventType = EventDebouncer.CHANGE_NEW; // created and moved on inside the batch
+                    movedFrom = null;
+                } else if (EventDebouncer.CHANGE_MOVE.equals(source)) {
+                    movedFrom = sourceOrigin;
+                }
+            }
+            String previous = batch.events.get(affectedPath);
+            String merged = previous == null ? eventType : EventDebouncer.merge(previous, eventType);
+            if (merged == null) {
+                batch.events.remove(affectedPath);
+                batch.movedFrom.remove(affectedPath);
+            } else {
+                batch.events.put(affectedPath, merged);
+                if (EventDebouncer.CHANGE_MOVE.equals(eventType)) {
+                    batch.movedFrom.put(affectedPath, movedFrom);
+                } else if (!EventDebouncer.CHANGE_MOVE.equals(merged) && !EventDebouncer.CHANGE_DEL.equals(merged)) {
+                    batch.movedFrom.remove(affectedPath);
+                }
+            }
+
+            if (batch.events.size() >= MAX_BATCH_SIZE) {
+                batches.remove(scriptPath); // split: this part runs now, further events open the next batch
+                full = batch;
+            } else {
+                long deadline = batch.firstMillis + EventDebouncer.maxLatencyMillis(window);
+                long delay = Math.max(0, Math.min(now + window, deadline) - now);
+                batch.future = scheduler.schedule(() -> fire(scriptPath), delay, TimeUnit.MILLISECONDS);
+            }
+        }
+        if (full != null) {
+            deliver(scriptPath, full);
+        }
+    }
+
+    private void fire(String scriptPath) {
+        Batch batch;
+        synchronized (this) {
+            batch = batches.remove(scriptPath);
+        }
+        if (batch != null) {
+            deliver(scriptPath, batch);
+        }
+    }
+
+    private void deliver(String scriptPath, Batch batch) {
+        if (batch.events.isEmpty()) return; // everything cancelled out
+        List<Record> records = new ArrayList<>(batch.events.size());
+        batch.events.forEach((path, type) -> {
+            String movedFrom = batch.movedFrom.get(path);
+            if (EventDebouncer.CHANGE_DEL.equals(type) && movedFrom != null) {
+                records.add(new Record(type, movedFrom, null)); // moved in, then deleted
+            } else {
+                records.add(new Record(type, path, movedFrom));
+            }
+        });
+        sink.fire(scriptPath, batch.refreshPath, records);
+    }
+
+    /** Drops all open batches; later submits are ignored. */
+    public synchronized void dispose() {
+        disposed = true;
+        for (Batch batch : batches.values()) {
+            if (batch.future != null) batch.future.cancel(false);
+        }
+        batches.clear();
+    }
+
+    private static final class Batch {
+        final String refreshPath;
+        final long firstMillis;
+        final LinkedHashMap<String, String> events = new LinkedHashMap<>(); // path -> merged kind, in arrival order
+        final Map<String, String> movedFrom = new HashMap<>(); // destination -> source of the moves among events
+        ScheduledFuture<?> future;
+
+        Batch(String refreshPath, long firstMillis) {
+            this.refreshPath = refreshPath;
+            this.firstMillis = firstMillis;
+        }
+    }
+}
@@ -0,0 +1,199 @@
+package com.example.syncfiles.watch;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Coalesces watch events per (script, affected path). An event opens a quiet period; every further event for the same
+ * key merges its kind into the pending one and restarts the period, and the script fires once when the period elapses.
+ * Continuous writes cannot postpone it forever: a pending event fires at the latest {@link #maxLatencyMillis} after
+ * its first event.
+ * <p>
+ * Kinds merge by net effect: New+Mod is New, Mod+Del is Del, Del+New is Mod, and New+Del cancels out (nothing fires).
+ * A move is keyed by its destination and remembers its source: anything followed by a move is a move, a move followed
+ * by Mod stays a move, and a move followed by Del fires as Del of the source. A file created (or moved in) and moved
+ * on again inside the quiet period is reported under its final path only.
+ */
+public final class EventDebouncer {
+    public static final String CHANGE_NEW = "Change New";
+    public static final String CHANGE_MOD = "Change Mod";
+    public static final String CHANGE_DEL = "Change Del";
+    public static final String CHANGE_MOVE = "Change Move";
+
+    private static final long MIN_MAX_LATENCY_MS = 5000;
+
+    public interface Sink {
+        /** {@code movedFrom} is the source path of a {@link #CHANGE_MOVE}, null for all other kinds. */
+        void fire(@NotNull String scriptPath, @NotNull String refreshPath, @NotNull String eventType,
+                  @NotNull String affectedPath, @Nullable String movedFrom);
+    }
+
+    private final ScheduledExecutorService scheduler;
+    private final Sink sink;
+    private final Map<Key, Pending> pending = new HashMap<>(); // guarded by this
+    private boolean disposed = false;
+
+    public EventDebouncer(@NotNull ScheduledExecutorService scheduler, @NotNull Sink sink) {
+        this.scheduler = scheduler;
+        this.sink = sink;
+    }
+
+    /** Upper bound between the first event of a burst and the script launch. */
+    public static long maxLatencyMillis(long quietMillis) {
+        return Math.max(MIN_MAX_LATENCY_MS, quietMillis * 4);
+    }
+
+    /**
+     * Queues an event. {@code refreshPath} is handed back to the sink unchanged (the path to refresh before the script
+     * runs). A quiet period of 0 fires immediately.
+     */
+    public void submit(@NotNull String scriptPath, @NotNull String refreshPath, @NotNull String eventType,
+                       @NotNull String affectedPath, long quietMillis) {
+        if (quietMillis <= 0) {
+            sink.fire(scriptPath, refreshPath, eventType, affectedPath, null);
+            return;
+        }
+        synchronized (this) {
+            if (disposed) return;
+            add(new Key(scriptPath, affectedPath), refreshPath, eventType, null, quietMillis);
+        }
+    }
+
+    /** Queues a move of {@code fromPath} to {@code toPath}, keyed by the destination. */
+    public void submitMove(@NotNull String scriptPath, @NotNull String refreshPath, @NotNull String fromPath,
+                           @NotNull String toPath, long quietMillis) {
+        if (quietMillis <= 0) {
+            sink.fire(scriptPath, refreshPath, CHANGE_MOVE, toPath, fromPath);
+            return;
+        }
+        synchronized (this) {
+            if (disposed) return;
+            String eventType = CHANGE_MOVE;
+            String movedFrom = fromPath;
+            Pending source = pending.remove(new Key(scriptPath, fromPath));
+            if (source != null) {
+                source.future.cancel(false);
+                if (CHANGE_NEW.equals(source.eventType)) {
+                    eventType = CHANGE_NEW; // e.g. an editor's temp file renamed over the target
+                    movedFrom = null;
+                } else if (CHANGE_MOVE.equals(source.eventType)) {
+                    movedFrom = source.movedFrom; // moved twice: report the whole way
+                }
+            }
+            add(new Key(scriptPath, toPath), refreshPath, eventType, movedFrom, quietMillis);
+        }
+    }
+
+    private void add(Key key, String refreshPath, String eventType, String movedFrom, long quietMillis) {
+        long now = System.currentTimeMillis();
+        Pending current = pending.get(key);
+        if (current == null) {
+            current = new Pending(refreshPath, eventType, now);
+            current.movedFrom = movedFrom;
+            pending.put(key, current);
+        } else {
+            current.future.cancel(false);
+            String merged = merge(current.eventType, eventType);
+            if (merged == null) {
+                pending.remove(key); // created and deleted again inside the window
+                return;
+            }
+            current.eventType = merged;
+            if (CHANGE_MOVE.equals(eventType)) {
+                current.movedFrom = movedFrom;
+            } else if (!CHANGE_MOVE.equals(merged) && !CHANGE_DEL.equals(merged)) {
+                current.movedFrom = null;
+            }
+        }
+        long deadline = current.firstMillis + maxLatencyMillis(quietMillis);
+        long delay = Math.max(0, Math.min(now + quietMillis, deadline) - now);
+        current.future = scheduler.schedule(() -> fire(key), delay, TimeUnit.MILLISECONDS);
+    }
+
+    private void fire(Key key) {
+        Pending fired;
+        synchronized (this) {
+            fired = pending.remove(key);
+        }
+        if (fired == null) return;
+        if (CHANGE_DEL.equals(fired.eventType) && fired.movedFrom != null) {
+            sink.fire(key.scriptPath, fired.refreshPath, CHANGE_DEL, fired.movedFrom, null); // moved in, then deleted
+        } else {
+            sink.fire(key.scriptPath, fired.refreshPath, fired.eventType, key.affectedPath, fired.movedFrom);
+        }
+    }
+
+    /** Net effect of {@code previous} followed by {@code next}; null if the two cancel out. */
+    static String merge(String previous, String next) {
+        if (CHANGE_MOVE.equals(next)) {
+            return CHANGE_MOVE;
+        }
+        if (CHANGE_MOVE.equals(previous)) {
+            return CHANGE_DEL.equals(next) ? CHANGE_DEL : CHANGE_MOVE;
+        }
+        if (CHANGE_NEW.equals(previous)) {
+            if (CHANGE_DEL.equals(next)) return null;
+            return CHANGE_NEW;
+        }
+        if (CHANGE_DEL.equals(previous)) {
+            return CHANGE_DEL.equals(next) ? CHANGE_DEL : CHANGE_MOD;
+        }
+        if (CHANGE_MOD.equals(previous)) {
+            return CHANGE_DEL.equals(next) ? CHANGE_DEL : CHANGE_MOD;
+        }
+        return next; // unknown kinds: the latest one wins
+    }
+
+    /** Drops all pending events; later submits are ignored. */
+    public synchronized void dispose() {
+        disposed = true;
+        for (Pending p : pending.values()) {
+            p.future.cancel(false);
+        }
+        pending.clear();
+    }
+
+    private static final class Key {
+        final String scriptPath;
+        final String affectedPath;
+
+        Key(String scriptPath, String affectedPath) {
+            this.scriptPath = scriptPath;
+            this.affectedPath = affectedPath;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof Key)) return false;
+            Key that = (Key) o;
+            return scriptPath.equals(that.scriptPath) && affectedPath.equals(that.affectedPath);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(scriptPath, affectedPath);
+        }
+    }
+
+    private static final class Pending {
+        final String refreshPath;
+        final long firstMillis;
+        String eventType;
+        String movedFrom; // source of a move, kept while the merged kind is a move or a delete
+        ScheduledFuture<?> future;
+
+        Pending(String refreshPath, String eventType, long firstMillis) {
+            this.refreshPath = refreshPath;
+            this.eventType = eventType;
+            this.firstMillis = firstMillis;
+        }
+    }
+}
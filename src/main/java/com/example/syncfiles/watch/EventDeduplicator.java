@@ -0,0 +1,104 @@
+package com.example.syncfiles.watch;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Dedupe stage of the event pipeline. The same change is usually reported twice: by the native watcher and, once the
+ * IDE has refreshed the file, by the VFS (or the other way round for a save from the editor). An event is a duplicate
+ * if an event of the same kind on the same path came from the other source less than {@link #WINDOW_MS} ago.
+ * <p>
+ * A match consumes the earlier event, so every change pairs with at most one counterpart and a second real change
+ * inside the window still gets through. Repeats from the same source are left to the debouncer, which merges them
+ * without losing the last one. A move also matches a delete of its source plus a create of its destination, because
+ * only one of the two sources may have paired them.
+ */
+public final class EventDeduplicator {
+    public static final String SOURCE_NATIVE = "native";
+    public static final String SOURCE_VFS = "vfs";
+    public static final long WINDOW_MS = 2000;
+    private static final int MAX_KEYS = 10_000;
+
+    // "kind\npath" -> last sighting, oldest first; guarded by this
+    private final LinkedHashMap<String, Seen> seen = new LinkedHashMap<>();
+    private long duplicates = 0;
+
+    /** Records the event and returns true if the other source already reported it. */
+    public synchronized boolean isDuplicate(@NotNull String source, @NotNull String eventType, @NotNull String path,
+                                            @Nullable String movedFrom) {
+        long now = System.currentTimeMillis();
+        evict(now);
+        boolean duplicate;
+        if (movedFrom == null) {
+            duplicate = consume(source, key(eventType, path));
+        } else {
+            String newKey = key(EventDebouncer.CHANGE_NEW, path);
+            String delKey = key(EventDebouncer.CHANGE_DEL, movedFrom);
+            duplicate = consume(source, key(EventDebouncer.CHANGE_MOVE, path))
+                    || (seenElsewhere(source, newKey) && seenElsewhere(source, delKey) && consume(source, newKey) && consume(source, delKey));
+        }
+        if (duplicate) {
+            duplicates++;
+            return true;
+        }
+        if (movedFrom == null) {
+            record(source, key(eventType, path), now);
+        } else {
+            record(source, key(EventDebouncer.CHANGE_MOVE, path), now);
+            record(source, key(EventDebouncer.CHANGE_NEW, path), now);
+            record(source, key(EventDebouncer.CHANGE_DEL, movedFrom), now);
+        }
+        return false;
+    }
+
+    /** Events dropped because the other source had already reported them. */
+    public synchronized long getDuplicateCount() {
+        return duplicates;
+    }
+
+    public synchronized void clear() {
+        seen.clear();
+    }
+
+    private boolean seenElsewhere(String source, String key) {
+        Seen previous = seen.get(key);
+        return previous != null && !previous.source.equals(source);
+    }
+
+    private boolean consume(String source, String key) {
+        if (!seenElsewhere(source, key)) return false;
+        seen.remove(key);
+        return true;
+    }
+
+    private void record(String source, String key, long now) {
+        seen.remove(key); // re-insert at the end, keeping the map ordered by time
+        seen.put(key, new Seen(source, now));
+    }
+
+    private void evict(long now) {
+        for (Iterator<Map.Entry<String, Seen>> it = seen.entrySet().iterator(); it.hasNext(); ) {
+            Map.Entry<String, Seen> entry = it.next();
+            if (now - entry.getValue().millis < WINDOW_MS && seen.size() < MAX_KEYS) break;
+            it.remove();
+        }
+    }
+
+    private static String key(String eventType, String path) {
+        return eventType + '\n' + path;
+    }
+
+    private static final class Seen {
+        final String source;
+        final long millis;
+
+        Seen(String source, long millis) {
+            this.source = source;
+            this.millis = millis;
+        }
+    }
+}
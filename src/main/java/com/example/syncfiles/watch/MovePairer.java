@@ -0,0 +1,135 @@
+package com.example.syncfiles.watch;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Turns the delete + create pair the kernel reports for a rename into one move. A deleted regular file whose last
+ * snapshot entry is known is held back for {@link #WINDOW_MS}; a file created meanwhile (in the same or another
+ * watched directory) with the same inode, size and mtime completes the pair, and {@link Sink#onMove} runs instead of
+ * a delete and a create. A held delete nobody claims is handed on unchanged when its window passes.
+ * <p>
+ * Directories are not paired: their contents would need to be re-walked either way. Deletes in directories without a
+ * snapshot (too large, polled) pass through at once.
+ */
+public final class MovePairer {
+    public static final long WINDOW_MS = 200;
+    // Deletes beyond this are not held (a mass delete is not a rename); candidates are scanned linearly
+    private static final int MAX_HELD = 1024;
+
+    public interface Sink {
+        void onDelete(@NotNull Path dir, @NotNull Path name);
+
+        /** Both paths absolute. */
+        void onMove(@NotNull Path from, @NotNull Path to);
+    }
+
+    private final DirectorySnapshots snapshots;
+    private final ScheduledExecutorService scheduler;
+    private final Sink sink;
+    private final List<Held> held = new ArrayList<>(); // guarded by this
+    private long paired = 0; // guarded by this
+
+    public MovePairer(@NotNull DirectorySnapshots snapshots, @NotNull ScheduledExecutorService scheduler, @NotNull Sink sink) {
+        this.snapshots = snapshots;
+        this.scheduler = scheduler;
+        this.sink = sink;
+    }
+
+    /**
+     * Called for a delete before the snapshot forgets the entry. Returns true if the delete is held back and will
+     * reach the sink later, false if the caller should handle it now.
+     */
+    public boolean hold(@NotNull Path dir, @NotNull Path name) {
+        DirectorySnapshots.Entry entry = snapshots.get(dir, name);
+        if (entry == null || entry.directory) return false;
+        Held delete = new Held(dir, name, entry);
+        synchronized (this) {
+            if (held.size() >= MAX_HELD) return false;
+            held.add(delete);
+            delete.future = scheduler.schedule(() -> release(delete), WINDOW_MS, TimeUnit.MILLISECONDS);
+        }
+        return true;
+    }
+
+    /**
+     * Called for a create. Returns true if it completed a move (the sink got it), false if the caller should handle
+     * it as a create. A held delete of the same path that does not match is handed on first, so the sink sees the
+     * delete before the create.
+     */
+    public boolean pair(@NotNull Path dir, @NotNull Path name) {
+        synchronized (this) {
+            if (held.isEmpty()) return false;
+        }
+        Path created = dir.resolve(name);
+        DirectorySnapshots.Entry entry = DirectorySnapshots.read(created);
+        Held match = null;
+        Held samePath = null;
+        synchronized (this) {
+            for (Iterator<Held> it = held.iterator(); it.hasNext(); ) {
+                Held candidate = it.next();
+                if (entry != null && candidate.entry.sameFileAs(entry)) {
+                    match = candidate;
+                } else if (candidate.dir.equals(dir) && candidate.name.equals(name)) {
+                    samePath = candidate;
+                } else {
+                    continue;
+                }
+                it.remove();
+                candidate.future.cancel(false);
+                if (match != null) {
+                    paired++;
+                    break;
+                }
+            }
+        }
+        if (samePath != null) {
+            sink.onDelete(samePath.dir, samePath.name);
+        }
+        if (match != null) {
+            sink.onMove(match.dir.resolve(match.name), created);
+            return true;
+        }
+        return false;
+    }
+
+    private void release(Held delete) {
+        synchronized (this) {
+            if (!held.remove(delete)) return;
+        }
+        sink.onDelete(delete.dir, delete.name);
+    }
+
+    /** Number of delete/create pairs reported as moves. */
+    public synchronized long getPairedMoves() {
+        return paired;
+    }
+
+    /** Drops the held deletes without reporting them. */
+    public synchronized void clear() {
+        for (Held delete : held) {
+            delete.future.cancel(false);
+        }
+        held.clear();
+    }
+
+    private static final class Held {
+        final Path dir;
+        final Path name;
+        final DirectorySnapshots.Entry entry;
+        ScheduledFuture<?> future;
+
+        Held(Path dir, Path name, DirectorySnapshots.Entry entry) {
+            this.dir = dir;
+            this.name = name;
+            this.entry = entry;
+        }
+    }
+}
@@ -0,0 +1,151 @@
+package com.example.syncfiles.watch;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Include/exclude glob filter of a watch entry, compiled once when the configuration is loaded and evaluated on the
+ * watcher thread before an event is debounced or queued.
+ * <p>
+ * Patterns are separated by {@code ;} or line breaks. A pattern without {@code /} is matched against names: an
+ * exclude pattern against every path segment below the watched directory (so {@code __pycache__} drops everything
+ * inside such a directory), an include pattern against the file name. A pattern with {@code /} is matched against the
+ * path relative to the watched directory, with the usual {@code *} / {@code **} glob semantics: a {@code **}
+ * segment also matches no directory at all, so {@code **}{@code /*.py} matches {@code a.py} and
+ * {@code src/**}{@code /*.py} matches {@code src/a.py} (the JDK glob alone does not). With no include patterns
+ * everything not excluded passes.
+ */
+public final class PathFilter {
+    public static final PathFilter ACCEPT_ALL = new PathFilter(List.of(), List.of(), List.of(), List.of());
+    private static final int MAX_OPTIONAL_SEGMENTS = 4;
+
+    private final List<PathMatcher> includeNames;
+    private final List<PathMatcher> includePaths;
+    private final List<PathMatcher> excludeNames;
+    private final List<PathMatcher> excludePaths;
+
+    private PathFilter(List<PathMatcher> includeNames, List<PathMatcher> includePaths,
+                       List<PathMatcher> excludeNames, List<PathMatcher> excludePaths) {
+        this.includeNames = includeNames;
+        this.includePaths = includePaths;
+        this.excludeNames = excludeNames;
+        this.excludePaths = excludePaths;
+    }
+
+    /**
+     * Compiles the include and exclude lists.
+     *
+     * @throws IllegalArgumentException if a pattern is not a valid glob
+     */
+    public static @NotNull PathFilter compile(@Nullable String includes, @Nullable String excludes) {
+        List<String> includePatterns = split(includes);
+        List<String> excludePatterns = split(excludes);
+        if (includePatterns.isEmpty() && excludePatterns.isEmpty()) {
+            return ACCEPT_ALL;
+        }
+        List<PathMatcher> includeNames = new ArrayList<>();
+        List<PathMatcher> includePaths = new ArrayList<>();
+        List<PathMatcher> excludeNames = new ArrayList<>();
+        List<PathMatcher> excludePaths = new ArrayList<>();
+        for (String pattern : includePatterns) {
+            (pattern.contains("/") ? includePaths : includeNames).add(matcher(pattern));
+        }
+        for (String pattern : excludePatterns) {
+            (pattern.contains("/") ? excludePaths : excludeNames).add(matcher(pattern));
+        }
+        return new PathFilter(List.copyOf(includeNames), List.copyOf(includePaths), List.copyOf(excludeNames), List.copyOf(excludePaths));
+    }
+
+    /** Splits a pattern list on {@code ;} and line breaks, dropping blanks. */
+    public static @NotNull List<String> split(@Nullable String patterns) {
+        List<String> result = new ArrayList<>();
+        if (patterns == null) return result;
+        for (String pattern : patterns.split("[;\\r\\n]")) {
+            String trimmed = pattern.trim().replace('\\', '/');
+            if (!trimmed.isEmpty()) result.add(trimmed);
+        }
+        return result;
+    }
+
+    private static PathMatcher matcher(String pattern) {
+        String glob = pattern.startsWith("/") ? pattern.substring(1) : pattern;
+        Set<String> variants = new LinkedHashSet<>();
+        addVariants(glob, 0, variants);
+        List<PathMatcher> matchers = new ArrayList<>(variants.size());
+        for (String variant : variants) {
+            matchers.add(FileSystems.getDefault().getPathMatcher("glob:" + variant));
+        }
+        if (matchers.size() == 1) return matchers.get(0);
+        return path -> {
+            for (PathMatcher matcher : matchers) {
+                if (matcher.matches(path)) return true;
+            }
+            return false;
+        };
+    }
+
+    /**
+     * Adds {@code glob} with every {@code **}{@code /} segment from {@code from} on both kept and left out, since the
+     * JDK requires {@code **}{@code /} to match at least one directory. Beyond {@link #MAX_OPTIONAL_SEGMENTS} segments
+     * only all-kept and all-left-out are added.
+     */
+    private static void addVariants(String glob, int from, Set<String> variants) {
+        int optional = 0;
+        for (int i = glob.indexOf("**/", from); i >= 0; i = glob.indexOf("**/", i + 3)) {
+            if (i == 0 || glob.charAt(i - 1) == '/') optional++;
+        }
+        if (optional > MAX_OPTIONAL_SEGMENTS) {
+            variants.add(glob);
+            variants.add(glob.replace("/**/", "/").replaceFirst("^\\*\\*/", ""));
+            return;
+        }
+        for (int i = glob.indexOf("**/", from); i >= 0; i = glob.indexOf("**/", i + 3)) {
+            if (i == 0 || glob.charAt(i - 1) == '/') {
+                addVariants(glob, i + 3, variants);                                  // kept
+                addVariants(glob.substring(0, i) + glob.substring(i + 3), i, variants); // left out
+                return;
+            }
+        }
+        variants.add(glob);
+    }
+
+    public boolean isAcceptAll() {
+        return this == ACCEPT_ALL;
+    }
+
+    /** True if an event on {@code path} belongs to the watch on {@code root} (the watched directory or file). */
+    public boolean accepts(@NotNull Path root, @NotNull Path path) {
+        if (this == ACCEPT_ALL) return true;
+        Path relative = path.startsWith(root) && !path.equals(root) ? root.relativize(path) : path.getFileName();
+        if (relative == null) return true;
+
+        for (PathMatcher matcher : excludePaths) {
+            if (matcher.matches(relative)) return false;
+        }
+        if (!excludeNames.isEmpty()) {
+            for (Path segment : relative) {
+                for (PathMatcher matcher : excludeNames) {
+                    if (matcher.matches(segment)) return false;
+                }
+            }
+        }
+
+        if (includeNames.isEmpty() && includePaths.isEmpty()) return true;
+        Path fileName = relative.getFileName();
+        for (PathMatcher matcher : includeNames) {
+            if (fileName != null && matcher.matches(fileName)) return true;
+        }
+        for (PathMatcher matcher : includePaths) {
+            if (matcher.matches(relative)) return true;
+        }
+        return false;
+    }
+}
@@ -0,0 +1,85 @@
+package com.example.syncfiles.watch;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Immutable trie of watched paths by path segment, for deciding in the VFS event hot path whether an event concerns
+ * any watch at all. Built once per configuration change from absolute, '/'-separated paths; a lookup walks the
+ * event path's segments once, without parsing a {@link java.nio.file.Path} or touching the file system.
+ * <p>
+ * Matching respects segment boundaries ({@code /a/src} does not match {@code /a/src2/x}). An event path relates to
+ * the watches if it is a watched path, lies below one, or is an ancestor of one (deleting or moving a parent
+ * directory removes the watched path with it). Segments are compared case-insensitively where the file system
+ * usually is (Windows, macOS); the exact match happens later in {@link WatchIndex}.
+ */
+public final class PathTrie {
+    private static final PathTrie EMPTY = new PathTrie(new Node(), true);
+
+    private final Node root;
+    private final boolean caseSensitive;
+
+    private PathTrie(Node root, boolean caseSensitive) {
+        this.root = root;
+        this.caseSensitive = caseSensitive;
+    }
+
+    public static PathTrie empty() {
+        return EMPTY;
+    }
+
+    public static @NotNull PathTrie build(@NotNull Collection<String> paths, boolean caseSensitive) {
+        if (paths.isEmpty()) return EMPTY;
+        PathTrie trie = new PathTrie(new Node(), caseSensitive);
+        for (String path : paths) {
+            Node node = trie.root;
+            int i = 0;
+            int n = path.length();
+            while (i < n) {
+                int slash = path.indexOf('/', i);
+                if (slash < 0) slash = n;
+                if (slash > i) {
+                    node = node.children.computeIfAbsent(trie.fold(path.substring(i, slash)), s -> new Node());
+                }
+                i = slash + 1;
+            }
+            if (node != trie.root) node.watched = true;
+        }
+        return trie;
+    }
+
+    /** True if {@code path} (absolute, '/'-separated) is watched, lies below a watched path or contains one. */
+    public boolean relates(@NotNull String path) {
+        Node node = root;
+        int i = 0;
+        int n = path.length();
+        while (i < n) {
+            int slash = path.indexOf('/', i);
+            if (slash < 0) slash = n;
+            if (slash > i) {
+                node = node.children.get(fold(path.substring(i, slash)));
+                if (node == null) return false;
+                if (node.watched) return true;
+            }
+            i = slash + 1;
+        }
+        return node != root; // an ancestor of at least one watched path
+    }
+
+    public boolean isEmpty() {
+        return root.children.isEmpty();
+    }
+
+    private String fold(String segment) {
+        return caseSensitive ? segment : segment.toLowerCase(Locale.ROOT);
+    }
+
+    private static final class Node {
+        final Map<String, Node> children = new HashMap<>(4); // not modified after build()
+        boolean watched;
+    }
+}
@@ -0,0 +1,239 @@
+package com.example.syncfiles.watch;
+
+import com.intellij.openapi.diagnostic.Logger;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.IOException;
+import java.nio.file.FileStore;
+import java.nio.file.FileVisitOption;
+import java.nio.file.FileVisitResult;
+import java.nio.file.FileVisitor;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Polling backend for directories where kernel notifications are unreliable (NFS, SSHFS and other FUSE mounts,
+ * some container bind mounts). Every polled directory is listed on its own adaptive interval, starting at
+ * {@link #MIN_INTERVAL_MS} and doubling up to {@link #MAX_INTERVAL_MS} while nothing changes; a change resets it.
+ * <p>
+ * The last listing of a directory is kept as sorted parallel arrays (names, sizes, mtimes, directory flags), and two
+ * listings are compared with a single merge pass, so a scan costs one directory read plus time linear in its size.
+ * Differences are reported as {@link DirectorySnapshots.Change}s, the same model used to replay overflowed native
+ * events.
+ */
+public final class PollingWatcher {
+    private static final Logger LOG = Logger.getInstance(PollingWatcher.class);
+    public static final long MIN_INTERVAL_MS = 1000;
+    public static final long MAX_INTERVAL_MS = 10_000;
+
+    // File system types (FileStore.type()) on which inotify/FSEvents do not see all changes
+    private static final Set<String> REMOTE_FS_TYPES = Set.of("nfs", "nfs4", "cifs", "smb", "smbfs", "smb2", "smb3",
+            "9p", "virtiofs", "fakeowner", "sshfs", "afpfs", "webdav", "davfs");
+
+    public interface Sink {
+        void onChanges(@NotNull Path dir, @NotNull List<DirectorySnapshots.Change> changes);
+    }
+
+    private final ScheduledExecutorService scheduler;
+    private final Sink sink;
+    private final String logPrefix;
+    private final Map<Path, Poll> polls = new ConcurrentHashMap<>();
+    private volatile boolean disposed = false;
+
+    public PollingWatcher(@NotNull String projectName, @NotNull ScheduledExecutorService scheduler, @NotNull Sink sink) {
+        this.logPrefix = "[" + projectName + "] ";
+        this.scheduler = scheduler;
+        this.sink = sink;
+    }
+
+    /** True if {@code dir} lies on a file system whose changes native watching cannot be relied on for. */
+    public static boolean isRemoteFileSystem(@NotNull Path dir) {
+        try {
+            FileStore store = Files.getFileStore(dir);
+            String type = store.type().toLowerCase(Locale.ROOT);
+            return REMOTE_FS_TYPES.contains(type) || type.equals("fuse") || type.startsWith("fuse.");
+        } catch (IOException | SecurityException e) {
+            return false;
+        }
+    }
+
+    /** Starts polling {@code dir}; the current listing is the baseline, so no events are reported for it. */
+    public void add(@NotNull Path dir) {
+        if (disposed || polls.containsKey(dir)) return;
+        Poll poll = new Poll(dir, Listing.read(dir));
+        if (polls.putIfAbsent(dir, poll) == null) {
+            poll.schedule(MIN_INTERVAL_MS);
+        }
+    }
+
+    public void remove(@NotNull Path dir) {
+        Poll poll = polls.remove(dir);
+        if (poll != null) poll.cancel();
+    }
+
+    public boolean isPolled(@NotNull Path dir) {
+        return polls.containsKey(dir);
+    }
+
+    public int size() {
+        return polls.size();
+    }
+
+    public void clear() {
+        for (Poll poll : polls.values()) {
+            poll.cancel();
+        }
+        polls.clear();
+    }
+
+    public void dispose() {
+        disposed = true;
+        clear();
+    }
+
+    private final class Poll {
+        final Path dir;
+        Listing last;          // only touched by this poll's scans, which never overlap
+        long intervalMs = MIN_INTERVAL_MS;
+        volatile ScheduledFuture<?> future;
+        volatile boolean cancelled = false;
+
+        Poll(Path dir, Listing baseline) {
+            this.dir = dir;
+            this.last = baseline;
+        }
+
+        void schedule(long delayMs) {
+            if (cancelled || disposed) return;
+            future = scheduler.schedule(this::scan, delayMs, TimeUnit.MILLISECONDS);
+        }
+
+        void cancel() {
+            cancelled = true;
+            ScheduledFuture<?> f = future;
+            if (f != null) f.cancel(false);
+        }
+
+        private void scan() {
+            if (cancelled || disposed) return;
+            Listing current = Listing.read(dir);
+            List<DirectorySnapshots.Change> changes = last.diff(current);
+            last = current;
+            if (changes.isEmpty()) {
+                intervalMs = Math.min(MAX_INTERVAL_MS, intervalMs * 2);
+            } else {
+                intervalMs = MIN_INTERVAL_MS;
+                LOG.debug(logPrefix + "Polling found " + changes.size() + " changes in '" + dir + "'.");
+                try {
+                    sink.onChanges(dir, changes);
+                } catch (Throwable t) {
+                    LOG.error(logPrefix + "Handling polled changes in '" + dir + "' failed: " + t.getMessage(), t);
+                }
+            }
+            schedule(intervalMs);
+        }
+    }
+
+    /** One directory listing as sorted parallel arrays. */
+    static final class Listing {
+        static final Listing EMPTY = new Listing(new String[0], new long[0], new long[0], new boolean[0]);
+
+        final String[] names;
+        final long[] sizes;
+        final long[] modified;
+        final boolean[] directories;
+
+        private Listing(String[] names, long[] sizes, long[] modified, boolean[] directories) {
+            this.names = names;
+            this.sizes = sizes;
+            this.modified = modified;
+            this.directories = directories;
+        }
+
+        /** Lists {@code dir} with one read; an unreadable or missing directory lists as empty. */
+        static Listing read(Path dir) {
+            TreeMap<String, BasicFileAttributes> entries = new TreeMap<>();
+            try {
+                Files.walkFileTree(dir, EnumSet.noneOf(FileVisitOption.class), 1, new FileVisitor<>() {
+                    @Override
+                    public FileVisitResult preVisitDirectory(Path d, BasicFileAttributes attrs) {
+                        return FileVisitResult.CONTINUE;
+                    }
+
+                    @Override
+                    public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+                        // at depth 1 subdirectories are reported here as well
+                        entries.put(file.getFileName().toString(), attrs);
+                        return FileVisitResult.CONTINUE;
+                    }
+
+                    @Override
+                    public FileVisitResult visitFileFailed(Path file, IOException exc) {
+                        return FileVisitResult.CONTINUE;
+                    }
+
+                    @Override
+                    public FileVisitResult postVisitDirectory(Path d, IOException exc) {
+                        return FileVisitResult.CONTINUE;
+                    }
+                });
+            } catch (IOException e) {
+                return EMPTY;
+            }
+            int n = entries.size();
+            String[] names = new String[n];
+            long[] sizes = new long[n];
+            long[] modified = new long[n];
+            boolean[] directories = new boolean[n];
+            int i = 0;
+            for (Map.Entry<String, BasicFileAttributes> entry : entries.entrySet()) {
+                BasicFileAttributes attrs = entry.getValue();
+                names[i] = entry.getKey();
+                sizes[i] = attrs.size();
+                modified[i] = attrs.lastModifiedTime().toMillis();
+                directories[i] = attrs.isDirectory();
+                i++;
+            }
+            return new Listing(names, sizes, modified, directories);
+        }
+
+        /** Merges both sorted listings once and returns what changed from this one to {@code next}. */
+        List<DirectorySnapshots.Change> diff(Listing next) {
+            List<DirectorySnapshots.Change> changes = new ArrayList<>();
+            int i = 0;
+            int j = 0;
+            while (i < names.length || j < next.names.length) {
+                int cmp = i == names.length ? 1 : j == next.names.length ? -1 : names[i].compareTo(next.names[j]);
+                if (cmp < 0) {
+                    changes.add(new DirectorySnapshots.Change(EventDebouncer.CHANGE_DEL, Path.of(names[i]), directories[i]));
+                    i++;
+                } else if (cmp > 0) {
+                    changes.add(new DirectorySnapshots.Change(EventDebouncer.CHANGE_NEW, Path.of(next.names[j]), next.directories[j]));
+                    j++;
+                } else {
+                    if (directories[i] != next.directories[j]) {
+                        changes.add(new DirectorySnapshots.Change(EventDebouncer.CHANGE_DEL, Path.of(names[i]), directories[i]));
+                        changes.add(new DirectorySnapshots.Change(EventDebouncer.CHANGE_NEW, Path.of(next.names[j]), next.directories[j]));
+                    } else if (!directories[i] && (sizes[i] != next.sizes[j] || modified[i] != next.modified[j])) {
+                        changes.add(new DirectorySnapshots.Change(EventDebouncer.CHANGE_MOD, Path.of(names[i]), false));
+                    }
+                    i++;
+                    j++;
+                }
+            }
+            return changes;
+        }
+    }
+}
@@ -0,0 +1,352 @@
+package com.example.syncfiles.watch;
+
+import com.google.gson.JsonObject;
+import com.intellij.openapi.diagnostic.Logger;
+import com.intellij.util.concurrency.AppExecutorUtil;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * Resident execution mode of a watch entry: one long-lived handler process per script, fed over stdin, so the
+ * interpreter start and module imports are paid once instead of per event.
+ * <p>
+ * Protocol: the handler is started as {@code python script Resident} with {@code SYNCFILES_RESIDENT=1}. Every event is
+ * written as one JSON line {@code {"id": 7, "event": "Change Mod", "path": "..."}}; the handler answers
+ * {@code ack 7} on stdout once it has handled it. A {@code "Change Move"} carries its source path as {@code "from"}.
+ * Lines {@code SYNCFILES_OUTPUT <path>} declare files the handler writes, other stdout lines are logged. When stdin is
+ * closed the handler should exit.
+ * <p>
+ * For the {@link SelfWriteGuard} every event is a run of the script from {@link #send} until it is acknowledged or
+ * dropped, so events the handler causes in its own watched paths do not feed back into it.
+ * <p>
+ * Supervision: at most {@link #MAX_IN_FLIGHT} events are unacknowledged at a time, further events wait in a queue of
+ * at most {@link #MAX_QUEUED} (the oldest are dropped beyond that). A crashed handler is restarted and gets its
+ * unacknowledged events again, up to {@link #MAX_RESTARTS} restarts per minute. After {@link #IDLE_TIMEOUT_MS}
+ * without events the handler is shut down; the next event starts it again.
+ * <p>
+ * Writes to the handler's stdin happen on a writer executor of their own, never under this object's lock or on the
+ * thread that delivers the event: a handler that stops reading must not block event delivery or its own ack reader.
+ */
+public final class ResidentHandler {
+    private static final Logger LOG = Logger.getInstance(ResidentHandler.class);
+    public static final int MAX_IN_FLIGHT = 64;
+    public static final int MAX_QUEUED = 5000;
+    private static final long IDLE_TIMEOUT_MS = TimeUnit.MINUTES.toMillis(5);
+    private static final long EXIT_GRACE_MS = 2000;
+    private static final int MAX_RESTARTS = 3;
+    private static final long RESTART_WINDOW_MS = TimeUnit.MINUTES.toMillis(1);
+
+    private final String scriptPath;
+    private final String logPrefix;
+    private final Supplier<ProcessBuilder> processFactory;
+    private final Listener listener;
+    private final SelfWriteGuard selfWrites;
+    // Sequential: lines reach the pipe in the order pump() produced them, a close after the last line
+    private final ExecutorService writer = AppExecutorUtil.createBoundedApplicationPoolExecutor("SyncFiles Resident Handler Writer", 1);
+
+    // all fields below guarded by this
+    private Process process;
+    private BufferedWriter stdin;
+    private long nextId = 1;
+    private final Map<Long, Event> inFlight = new LinkedHashMap<>();
+    private final Deque<Event> queued = new ArrayDeque<>();
+    private final Deque<Long> restartTimes = new ArrayDeque<>();
+    private ScheduledFuture<?> idleTimer;
+    private SelfWriteGuard.Run lastRun;
+    private boolean shutdown = false;
+
+    public interface Listener {
+        /** Called with the affected path of every acknowledged event. */
+        void onAcked(@NotNull String path);
+
+        /** The handler declared {@code rawPath} (as printed) as a file it writes while handling {@code run}. */
+        void onOutput(@NotNull SelfWriteGuard.Run run, @NotNull String rawPath);
+    }
+
+    /**
+     * @param processFactory creates the handler's process builder (interpreter, script, environment, working dir);
+     *                       returns null if the interpreter or script is not usable
+     */
+    public ResidentHandler(@NotNull String projectName, @NotNull String scriptPath,
+                           @NotNull Supplier<ProcessBuilder> processFactory, @NotNull SelfWriteGuard selfWrites,
+                           @NotNull Listener listener) {
+        this.scriptPath = scriptPath;
+        this.logPrefix = "[" + projectName + "][" + scriptPath.substring(scriptPath.lastIndexOf('/') + 1) + "] ";
+        this.processFactory = processFactory;
+        this.selfWrites = selfWrites;
+        this.listener = listener;
+    }
+
+    public String getScriptPath() {
+        return scriptPath;
+    }
+
+    /** {@code movedFrom} is the source path of a move, null for other events. */
+    public synchronized void send(@NotNull String eventType, @NotNull String path, @Nullable String movedFrom) {
+        if (shutdown) return;
+        if (queued.size() >= MAX_QUEUED) {
+            Event dropped = queued.removeFirst();
+            selfWrites.runFinished(dropped.run);
+            LOG.warn(logPrefix + "Resident handler is " + MAX_QUEUED + " events behind, dropping '" + dropped.eventType + "' on " + dropped.path);
+        }
+        queued.addLast(new Event(nextId++, eventType, path, movedFrom, selfWrites.runStarted(scriptPath)));
+        restartIdleTimer();
+        if (process == null && !start()) {
+            return;
+        }
+        pump();
+    }
+
+    /** Stops the handler for good; pending events are discarded. */
+    public synchronized void shutdown() {
+        shutdown = true;
+        cancelIdleTimer();
+        if (!inFlight.isEmpty() || !queued.isEmpty()) {
+            LOG.info(logPrefix + "Shutting down resident handler with " + (inFlight.size() + queued.size()) + " unhandled events.");
+        }
+        finishAll(inFlight.values());
+        inFlight.clear();
+        finishAll(queued);
+        queued.clear();
+        stopProcess();
+    }
+
+    private boolean start() {
+        ProcessBuilder pb = processFactory.get();
+        if (pb == null) {
+            LOG.warn(logPrefix + "Cannot start resident handler, dropping " + queued.size() + " events.");
+            finishAll(queued);
+            queued.clear();
+            return false;
+        }
+        try {
+            Process started = pb.start();
+            process = started;
+            stdin = new BufferedWriter(new OutputStreamWriter(started.getOutputStream(), StandardCharsets.UTF_8));
+            AppExecutorUtil.getAppExecutorService().execute(() -> readStdout(started));
+            AppExecutorUtil.getAppExecutorService().execute(() -> readStderr(started));
+            LOG.info(logPrefix + "Resident handler started (pid " + started.pid() + ").");
+            return true;
+        } catch (IOException e) {
+            LOG.warn(logPrefix + "Failed to start resident handler: " + e.getMessage() + ". Dropping " + queued.size() + " events.");
+            finishAll(queued);
+            queued.clear();
+            return false;
+        }
+    }
+
+    /** Moves queued events into the in-flight window while it has room and hands their lines to the writer. */
+    private void pump() {
+        if (process == null) return;
+        StringBuilder lines = new StringBuilder();
+        while (inFlight.size() < MAX_IN_FLIGHT && !queued.isEmpty()) {
+            Event event = queued.removeFirst();
+            JsonObject line = new JsonObject();
+            line.addProperty("id", event.id);
+            line.addProperty("event", event.eventType);
+            line.addProperty("path", event.path);
+            if (event.movedFrom != null) line.addProperty("from", event.movedFrom);
+            inFlight.put(event.id, event);
+            lines.append(line).append('\n');
+        }
+        if (lines.length() == 0) return;
+        BufferedWriter out = stdin;
+        writer.execute(() -> {
+            try {
+                out.write(lines.toString());
+                out.flush();
+            } catch (IOException e) {
+                // The reader thread sees the exit and restarts the handler with everything still in flight.
+                LOG.info(logPrefix + "Writing to resident handler failed: " + e.getMessage());
+            }
+        });
+    }
+
+    private void readStdout(Process owner) {
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(owner.getInputStream(), StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.startsWith("ack ")) {
+                    acknowledge(owner, line.substring(4).trim());
+                } else if (line.startsWith(SelfWriteGuard.OUTPUT_PREFIX)) {
+                    declareOutput(line.substring(SelfWriteGuard.OUTPUT_PREFIX.length()).trim());
+                } else if (!line.isBlank()) {
+                    LOG.info(logPrefix + line);
+                }
+            }
+        } catch (IOException e) {
+            LOG.debug(logPrefix + "Resident handler stdout closed: " + e.getMessage());
+        }
+        int exitCode;
+        try {
+            exitCode = owner.waitFor();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return;
+        }
+        handleExit(owner, exitCode);
+    }
+
+    private void readStderr(Process owner) {
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(owner.getErrorStream(), StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                LOG.warn(logPrefix + line);
+            }
+        } catch (IOException ignored) {
+            // process ended
+        }
+    }
+
+    private void acknowledge(Process owner, String idText) {
+        Event acked;
+        synchronized (this) {
+            if (owner != process) return;
+            try {
+                acked = inFlight.remove(Long.parseLong(idText));
+                if (acked != null) lastRun = acked.run; // outputs printed after the ack still belong to it
+            } catch (NumberFormatException e) {
+                LOG.warn(logPrefix + "Malformed ack from resident handler: 'ack " + idText + "'");
+                return;
+            }
+            pump();
+        }
+        if (acked != null) {
+            selfWrites.runFinished(acked.run);
+            listener.onAcked(acked.path);
+        }
+    }
+
+    /** Attributes a declared output to the events in flight; the guard tracks busy scripts, not single runs. */
+    private void declareOutput(String rawPath) {
+        if (rawPath.isEmpty()) return;
+        SelfWriteGuard.Run run;
+        synchronized (this) {
+            Event current = inFlight.isEmpty() ? null : inFlight.values().iterator().next();
+            run = current != null ? current.run : lastRun;
+        }
+        if (run != null) listener.onOutput(run, rawPath);
+    }
+
+    private void finishAll(Collection<Event> events) {
+        for (Event event : events) {
+            selfWrites.runFinished(event.run);
+        }
+    }
+
+    private synchronized void handleExit(Process owner, int exitCode) {
+        if (owner != process) return; // an old process stopped on purpose
+        process = null;
+        stdin = null;
+        if (shutdown) return;
+
+        // Unacknowledged events go first again, in their original order.
+        List<Event> unacked = new ArrayList<>(inFlight.values());
+        inFlight.clear();
+        for (int i = unacked.size() - 1; i >= 0; i--) {
+            queued.addFirst(unacked.get(i));
+        }
+        if (queued.isEmpty()) {
+            LOG.info(logPrefix + "Resident handler exited with code " + exitCode + ".");
+            return;
+        }
+
+        long now = System.currentTimeMillis();
+        while (!restartTimes.isEmpty() && now - restartTimes.peekFirst() > RESTART_WINDOW_MS) {
+            restartTimes.removeFirst();
+        }
+        if (restartTimes.size() >= MAX_RESTARTS) {
+            LOG.warn(logPrefix + "Resident handler crashed (exit code " + exitCode + ") " + MAX_RESTARTS +
+                    " times within a minute; dropping " + queued.size() + " events. It is started again on the next event.");
+            finishAll(queued);
+            queued.clear();
+            return;
+        }
+        restartTimes.addLast(now);
+        LOG.warn(logPrefix + "Resident handler exited with code " + exitCode + " while " + queued.size() + " events were pending; restarting.");
+        if (start()) {
+            pump();
+        }
+    }
+
+    private void restartIdleTimer() {
+        cancelIdleTimer();
+        idleTimer = AppExecutorUtil.getAppScheduledExecutorService().schedule(this::stopIfIdle, IDLE_TIMEOUT_MS, TimeUnit.MILLISECONDS);
+    }
+
+    private void cancelIdleTimer() {
+        if (idleTimer != null) {
+            idleTimer.cancel(false);
+            idleTimer = null;
+        }
+    }
+
+    private synchronized void stopIfIdle() {
+        if (process == null) return;
+        if (!inFlight.isEmpty() || !queued.isEmpty()) {
+            restartIdleTimer(); // still working on a backlog
+            return;
+        }
+        LOG.info(logPrefix + "Resident handler idle for " + TimeUnit.MILLISECONDS.toMinutes(IDLE_TIMEOUT_MS) + " min, stopping it.");
+        stopProcess();
+    }
+
+    /** Closes stdin so the handler can exit by itself and destroys it if it is still alive after a grace period. */
+    private void stopProcess() {
+        Process stopping = process;
+        process = null;
+        if (stopping == null) return;
+        BufferedWriter out = stdin;
+        stdin = null;
+        if (out != null) {
+            // after the lines already handed to the writer; if it is stuck on a full pipe, destroy() below frees it
+            writer.execute(() -> {
+                try {
+                    out.close();
+                } catch (IOException ignored) {
+                    // already gone
+                }
+            });
+        }
+        AppExecutorUtil.getAppScheduledExecutorService().schedule(() -> {
+            if (stopping.isAlive()) {
+                LOG.info(logPrefix + "Resident handler did not exit after stdin was closed, destroying it.");
+                stopping.destroy();
+            }
+        }, EXIT_GRACE_MS, TimeUnit.MILLISECONDS);
+    }
+
+    private static final class Event {
+        final long id;
+        final String eventType;
+        final String path;
+        final String movedFrom;
+        final SelfWriteGuard.Run run;
+
+        Event(long id, String eventType, String path, String movedFrom, SelfWriteGuard.Run run) {
+            this.id = id;
+            this.eventType = eventType;
+            this.path = path;
+            this.movedFrom = movedFrom;
+            this.run = run;
+        }
+    }
+}
@@ -0,0 +1,383 @@
+package com.example.syncfiles.watch;
+
+import com.intellij.openapi.diagnostic.Logger;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs watch scripts with at most {@code maxConcurrent} processes at a time and at most {@link #MAX_QUEUED} runs
+ * waiting, instead of one platform thread per event. Each run gets a virtual thread, so a run blocked on its Python
+ * process costs no pooled thread.
+ * <p>
+ * Every run belongs to a lane (one per script) with its own limit: 1 runs the script's events one after the other,
+ * N allows N overlapping runs. A latest-wins lane keeps only the newest event: submitting cancels the running
+ * process and drops the waiting runs of that lane.
+ * <p>
+ * When the queue is full the overflow policy decides:
+ * <ul>
+ *     <li>{@link #POLICY_COALESCE}: a waiting run with the same key (script + path) is replaced by the new one;
+ *     without such a run the new one is rejected.</li>
+ *     <li>{@link #POLICY_DROP_OLDEST}: the oldest waiting run is dropped.</li>
+ *     <li>{@link #POLICY_BLOCK}: the project's dispatcher thread waits for room, at most {@link #BLOCK_TIMEOUT_MS},
+ *     and the run is rejected after that.</li>
+ * </ul>
+ * {@link #submit} never blocks: it is called on the shared watcher thread and inside VFS event delivery, so it only
+ * hands the run to a dispatcher thread of its own, which queues it and is the only thread that ever waits. At most
+ * {@link #MAX_DISPATCH_PENDING} submissions wait for the dispatcher; more are rejected.
+ * <p>
+ * Dropped and rejected runs never start; their {@code onDropped} callback runs instead. Rejected counts new runs that
+ * were refused, dropped counts waiting runs the overflow policy discarded or replaced.
+ */
+public final class ScriptRunQueue {
+    private static final Logger LOG = Logger.getInstance(ScriptRunQueue.class);
+
+    public static final String POLICY_COALESCE = "coalesce";
+    public static final String POLICY_DROP_OLDEST = "drop-oldest";
+    public static final String POLICY_BLOCK = "block";
+    public static final String[] POLICIES = {POLICY_COALESCE, POLICY_DROP_OLDEST, POLICY_BLOCK};
+
+    public static final int DEFAULT_MAX_CONCURRENT = 4;
+    public static final int MAX_CONCURRENT_LIMIT = 64;
+    public static final int MAX_QUEUED = 256;
+    private static final long BLOCK_TIMEOUT_MS = 10_000;
+    private static final int MAX_DISPATCH_PENDING = 4 * MAX_QUEUED;
+
+    /** A script run; blocks until its process has exited. */
+    public interface Task {
+        void run(@NotNull Execution execution);
+    }
+
+    /** Handle of a started run, used to stop its process when a newer event supersedes it. */
+    public interface Execution {
+        /** Registers the started process; destroyed right away if the run was already cancelled. */
+        void attach(@NotNull Process process);
+
+        boolean isCancelled();
+    }
+
+    private final String logPrefix;
+    private final ExecutorService executor = Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("SyncFiles-script-", 0).factory());
+    private final ExecutorService dispatcher;
+    private final AtomicInteger dispatchPending = new AtomicInteger();
+
+    // all guarded by this
+    private int maxConcurrent = DEFAULT_MAX_CONCURRENT;
+    private String policy = POLICY_COALESCE;
+    private final Deque<Run> queued = new ArrayDeque<>();
+    private final Map<String, List<Run>> runningByLane = new HashMap<>();
+    private int active = 0;
+    private long rejected = 0;
+    private long policyDropped = 0;
+    private long superseded = 0;
+    private long completed = 0;
+    private boolean shutdown = false;
+
+    public ScriptRunQueue(@NotNull String projectName) {
+        this.logPrefix = "[" + projectName + "] ";
+        this.dispatcher = Executors.newSingleThreadExecutor(Thread.ofPlatform().daemon().name("SyncFiles-dispatch-" + projectName).factory());
+    }
+
+    /** Applies new limits; a lower maximum takes effect as running scripts finish. */
+    public synchronized void configure(int maxConcurrent, @Nullable String policy) {
+        this.maxConcurrent = Math.max(1, Math.min(MAX_CONCURRENT_LIMIT, maxConcurrent));
+        this.policy = isKnownPolicy(policy) ? policy : POLICY_COALESCE;
+        startRuns();
+        notifyAll();
+    }
+
+    public static boolean isKnownPolicy(@Nullable String policy) {
+        for (String known : POLICIES) {
+            if (known.equals(policy)) return true;
+        }
+        return false;
+    }
+
+    /**
+     * Queues {@code task} in {@code lane}, which runs at most {@code laneLimit} tasks at a time. With
+     * {@code latestWins} the lane's running task is cancelled and its waiting tasks are dropped first. {@code key}
+     * identifies runs that may be coalesced, null for runs that never are. {@code onDropped} runs if the task is
+     * rejected or dropped before it started. Returns at once; the run is queued by the dispatcher thread.
+     */
+    public void submit(@NotNull String lane, int laneLimit, boolean latestWins, @Nullable String key,
+                       @NotNull Task task, @Nullable Runnable onDropped) {
+        Run run = new Run(lane, Math.max(1, laneLimit), key, task, onDropped);
+        if (dispatchPending.incrementAndGet() > MAX_DISPATCH_PENDING) {
+            dispatchPending.decrementAndGet();
+            reject(run);
+            return;
+        }
+        try {
+            dispatcher.execute(() -> {
+                dispatchPending.decrementAndGet();
+                enqueue(run, latestWins);
+            });
+        } catch (RejectedExecutionException e) {
+            dispatchPending.decrementAndGet();
+            reject(run); // shut down
+        }
+    }
+
+    private void reject(Run run) {
+        synchronized (this) {
+            rejected++;
+        }
+        runQuietly(run.onDropped);
+    }
+
+    /** Runs on the dispatcher thread; may wait for room under {@link #POLICY_BLOCK}. */
+    private void enqueue(Run run, boolean latestWins) {
+        String lane = run.lane;
+        List<Run> dropped = new ArrayList<>();
+        boolean accepted = true;
+        synchronized (this) {
+            if (shutdown) {
+                accepted = false;
+            } else {
+                if (latestWins) {
+                    supersede(lane, dropped);
+                }
+                if (queued.size() >= MAX_QUEUED) {
+                    accepted = makeRoom(run, dropped);
+                } else {
+                    queued.addLast(run);
+                }
+            }
+            startRuns();
+        }
+        if (!accepted) runQuietly(run.onDropped);
+        for (Run droppedRun : dropped) {
+            runQuietly(droppedRun.onDropped);
+        }
+    }
+
+    /** Cancels the running tasks of {@code lane} and moves its waiting tasks to {@code dropped}. */
+    private void supersede(String lane, List<Run> dropped) {
+        for (Run running : runningByLane.getOrDefault(lane, List.of())) {
+            if (running.cancel()) {
+                superseded++;
+                LOG.info(logPrefix + "Newer event for '" + lane + "', stopping the run still in progress.");
+            }
+        }
+        for (Iterator<Run> it = queued.iterator(); it.hasNext(); ) {
+            Run waiting = it.next();
+            if (waiting.lane.equals(lane)) {
+                it.remove();
+                dropped.add(waiting);
+                superseded++;
+            }
+        }
+    }
+
+    /** Applies the overflow policy for {@code run}; returns false if it was rejected. */
+    private boolean makeRoom(Run run, List<Run> dropped) {
+        boolean accepted = true;
+        int droppedBefore = dropped.size();
+        switch (policy) {
+            case POLICY_DROP_OLDEST -> {
+                dropped.add(queued.removeFirst());
+                queued.addLast(run);
+            }
+            case POLICY_BLOCK -> {
+                long deadline = System.currentTimeMillis() + BLOCK_TIMEOUT_MS;
+                try {
+                    while (!shutdown && queued.size() >= MAX_QUEUED && POLICY_BLOCK.equals(policy)) {
+                        long remaining = deadline - System.currentTimeMillis();
+                        if (remaining <= 0) break;
+                        wait(remaining);
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                accepted = !shutdown && queued.size() < MAX_QUEUED;
+                if (accepted) queued.addLast(run);
+            }
+            default -> {
+                Run same = run.key != null ? replaceQueued(run) : null;
+                if (same != null) {
+                    dropped.add(same);
+                } else {
+                    accepted = false;
+                }
+            }
+        }
+        if (!accepted) rejected++;
+        policyDropped += dropped.size() - droppedBefore;
+        long overflows = rejected + policyDropped;
+        if (!accepted || dropped.size() > droppedBefore) {
+            if (overflows == 1 || overflows % 100 == 0) {
+                LOG.warn(logPrefix + "Script queue full (" + MAX_QUEUED + " waiting, " + active + " running, policy '" + policy +
+                        "'); " + rejected + " runs rejected and " + policyDropped + " waiting runs dropped so far.");
+            }
+        }
+        return accepted;
+    }
+
+    /** Replaces the waiting run with the same key, keeping its place in the queue; returns the replaced run. */
+    private Run replaceQueued(Run run) {
+        Deque<Run> rebuilt = new ArrayDeque<>(queued.size());
+        Run replaced = null;
+        for (Run waiting : queued) {
+            if (replaced == null && run.key.equals(waiting.key)) {
+                replaced = waiting;
+                rebuilt.addLast(run);
+            } else {
+                rebuilt.addLast(waiting);
+            }
+        }
+        if (replaced != null) {
+            queued.clear();
+            queued.addAll(rebuilt);
+        }
+        return replaced;
+    }
+
+    /** Starts waiting runs in queue order, skipping runs whose lane is at its limit. */
+    private void startRuns() {
+        for (Iterator<Run> it = queued.iterator(); it.hasNext() && !shutdown && active < maxConcurrent; ) {
+            Run run = it.next();
+            List<Run> laneRuns = runningByLane.computeIfAbsent(run.lane, l -> new ArrayList<>(1));
+            if (laneRuns.size() >= run.laneLimit) continue;
+            it.remove();
+            laneRuns.add(run);
+            active++;
+            executor.execute(() -> execute(run));
+        }
+    }
+
+    private void execute(Run run) {
+        try {
+            run.task.run(run);
+        } catch (Throwable t) {
+            LOG.error(logPrefix + "Watch script run failed: " + t.getMessage(), t);
+        } finally {
+            synchronized (this) {
+                active--;
+                completed++;
+                List<Run> laneRuns = runningByLane.get(run.lane);
+                if (laneRuns != null) {
+                    laneRuns.remove(run);
+                    if (laneRuns.isEmpty()) runningByLane.remove(run.lane);
+                }
+                startRuns();
+                notifyAll(); // room for blocked submitters
+            }
+        }
+    }
+
+    private void runQuietly(Runnable callback) {
+        if (callback == null) return;
+        try {
+            callback.run();
+        } catch (Throwable t) {
+            LOG.warn(logPrefix + "Cleanup of a dropped script run failed: " + t.getMessage(), t);
+        }
+    }
+
+    public synchronized int getQueueDepth() {
+        return queued.size();
+    }
+
+    public synchronized int getActiveRuns() {
+        return active;
+    }
+
+    /** New runs refused: queue full (and no room made by the policy), dispatcher backlog full, or shut down. */
+    public synchronized long getRejectedRuns() {
+        return rejected;
+    }
+
+    /** Waiting runs discarded or replaced by the overflow policy to make room for newer ones. */
+    public synchronized long getPolicyDroppedRuns() {
+        return policyDropped;
+    }
+
+    /** Runs cancelled or dropped because a latest-wins lane got a newer event. */
+    public synchronized long getSupersededRuns() {
+        return superseded;
+    }
+
+    public synchronized long getCompletedRuns() {
+        return completed;
+    }
+
+    /** Drops waiting runs and waits up to {@code timeoutMillis} for running scripts; returns false if some still run. */
+    public boolean shutdown(long timeoutMillis) {
+        Deque<Run> dropped;
+        synchronized (this) {
+            shutdown = true;
+            dropped = new ArrayDeque<>(queued);
+            queued.clear();
+            notifyAll();
+        }
+        for (Run run : dropped) {
+            runQuietly(run.onDropped);
+        }
+        dispatcher.shutdown(); // pending submissions see the shutdown and are dropped
+        executor.shutdown();
+        try {
+            if (executor.awaitTermination(timeoutMillis, TimeUnit.MILLISECONDS)) {
+                return true;
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        executor.shutdownNow();
+        return false;
+    }
+
+    private static final class Run implements Execution {
+        final String lane;
+        final int laneLimit;
+        final String key;
+        final Task task;
+        final Runnable onDropped;
+        private Process process; // guarded by this run
+        private boolean cancelled;
+
+        Run(String lane, int laneLimit, String key, Task task, Runnable onDropped) {
+            this.lane = lane;
+            this.laneLimit = laneLimit;
+            this.key = key;
+            this.task = task;
+            this.onDropped = onDropped;
+        }
+
+        @Override
+        public synchronized void attach(@NotNull Process process) {
+            this.process = process;
+            if (cancelled) destroy(process);
+        }
+
+        @Override
+        public synchronized boolean isCancelled() {
+            return cancelled;
+        }
+
+        /** Returns true if this call cancelled the run. */
+        synchronized boolean cancel() {
+            if (cancelled) return false;
+            cancelled = true;
+            if (process != null) destroy(process);
+            return true;
+        }
+
+        private static void destroy(Process process) {
+            // Child processes first: a script that spawned a compiler would otherwise leave it running
+            process.descendants().forEach(ProcessHandle::destroy);
+            process.destroy();
+        }
+    }
+}
@@ -0,0 +1,240 @@
+package com.example.syncfiles.watch;
+
+import com.intellij.openapi.diagnostic.Logger;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.InvalidPathException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Breaks watch-script feedback loops: events a script causes in its own watched paths must not run it again.
+ * <p>
+ * A script is busy from the start of its first run until {@link #SETTLE_MS} after its last overlapping run exited.
+ * Events that would trigger a busy script are held (the last one per path). When the busy period ends, events on the
+ * script's outputs are suppressed and all others are released to the pipeline as one follow-up. Outputs are
+ * <ul>
+ *     <li>paths the runs declared (stdout lines {@code SYNCFILES_OUTPUT <path>}), and</li>
+ *     <li>paths learned from an undeclared loop: a path released after one busy period, written again during the run
+ *     it caused (its mtime lies inside the run window) and not touched after that run exited. A learned path is only
+ *     suppressed while the same evidence holds and is forgotten {@link #LEARNED_TTL_MS} after it last did.</li>
+ * </ul>
+ * Only declared paths are certain. An edit that lands on the same file inside two consecutive runs of an undeclared
+ * script looks exactly like a self-write and is suppressed; scripts that declare their outputs are never learned and
+ * never lose such edits. Latest-wins scripts are not held ({@code hold == false} in {@link #admit}); events on their
+ * declared or learned outputs are suppressed at once. A busy script holds at most {@link #MAX_HELD} paths; events on
+ * more paths are passed on at once.
+ */
+public final class SelfWriteGuard {
+    private static final Logger LOG = Logger.getInstance(SelfWriteGuard.class);
+    public static final String OUTPUT_PREFIX = "SYNCFILES_OUTPUT ";
+    public static final long SETTLE_MS = 1000;
+    public static final long LEARNED_TTL_MS = TimeUnit.MINUTES.toMillis(10);
+    private static final int MAX_HELD = 10_000;
+    // File systems round mtimes down (to 1 s, FAT to 2 s); a write right after the run started may predate it
+    private static final long MTIME_SLACK_MS = 2000;
+
+    /** One script run (or one event of a resident handler); declare the files it writes through it. */
+    public final class Run {
+        private final String scriptPath;
+
+        private Run(String scriptPath) {
+            this.scriptPath = scriptPath;
+        }
+
+        /** {@code path} absolute, with forward slashes, as events report it. */
+        public void declareOutput(@NotNull String path) {
+            synchronized (SelfWriteGuard.this) {
+                Busy busy = busyScripts.get(scriptPath);
+                if (busy != null) busy.declared.add(path);
+            }
+        }
+    }
+
+    private final String logPrefix;
+    private final ScheduledExecutorService scheduler;
+    private final Map<String, Busy> busyScripts = new HashMap<>(); // guarded by this
+    // Script -> learned output path -> expiry (epoch millis); guarded by this
+    private final Map<String, Map<String, Long>> learnedOutputs = new HashMap<>();
+    // Script -> paths released after its last busy period, candidates for learning in the next one; guarded by this
+    private final Map<String, Set<String>> lastReleased = new HashMap<>();
+    private long suppressed = 0; // guarded by this
+
+    public SelfWriteGuard(@NotNull String projectName, @NotNull ScheduledExecutorService scheduler) {
+        this.logPrefix = "[" + projectName + "] ";
+        this.scheduler = scheduler;
+    }
+
+    public synchronized @NotNull Run runStarted(@NotNull String scriptPath) {
+        Busy busy = busyScripts.computeIfAbsent(scriptPath, s -> new Busy(System.currentTimeMillis()));
+        busy.activeRuns++;
+        if (busy.settle != null) {
+            busy.settle.cancel(false);
+            busy.settle = null;
+        }
+        return new Run(scriptPath);
+    }
+
+    public synchronized void runFinished(@NotNull Run run) {
+        Busy busy = busyScripts.get(run.scriptPath);
+        if (busy == null || --busy.activeRuns > 0) return;
+        busy.lastRunEndMillis = System.currentTimeMillis();
+        busy.settle = scheduler.schedule(() -> settle(run.scriptPath, busy), SETTLE_MS, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Passes an event for {@code scriptPath} on {@code path} on: {@code submit} runs now if the script is idle; if it
+     * is busy it is suppressed when {@code path} is a declared output, otherwise held until the script settles. With
+     * {@code hold == false} it is not held but run now, unless {@code path} is a learned output.
+     */
+    public void admit(@NotNull String scriptPath, @NotNull String path, boolean hold, @NotNull Runnable submit) {
+        synchronized (this) {
+            Busy busy = busyScripts.get(scriptPath);
+            if (busy != null) {
+                if (busy.declared.contains(path) || (!hold && isLearned(scriptPath, path, System.currentTimeMillis()))) {
+                    suppressed++;
+                    return;
+                }
+                if (hold && (busy.held.containsKey(path) || busy.held.size() < MAX_HELD)) {
+                    busy.held.remove(path); // keep the latest event per path, in arrival order
+                    busy.held.put(path, new Held(submit, System.currentTimeMillis()));
+                    return;
+                }
+            }
+        }
+        submit.run();
+    }
+
+    private void settle(String scriptPath, Busy busy) {
+        Map<String, Held> held;
+        Set<String> previous;
+        synchronized (this) {
+            if (busyScripts.get(scriptPath) != busy || busy.activeRuns > 0) return;
+            busyScripts.remove(scriptPath);
+            held = busy.held;
+            previous = lastReleased.getOrDefault(scriptPath, Set.of());
+        }
+
+        // File system checks outside the lock, which the event threads need for admit()
+        Set<String> selfWritten = new HashSet<>();
+        for (Map.Entry<String, Held> entry : held.entrySet()) {
+            if (!busy.declared.contains(entry.getKey()) && writtenByRun(entry.getKey(), entry.getValue(), busy)) {
+                selfWritten.add(entry.getKey());
+            }
+        }
+
+        List<Runnable> released = new ArrayList<>();
+        int dropped = 0;
+        int learned = 0;
+        synchronized (this) {
+            long now = System.currentTimeMillis();
+            Set<String> releasedPaths = new HashSet<>();
+            for (Map.Entry<String, Held> entry : held.entrySet()) {
+                String path = entry.getKey();
+                if (busy.declared.contains(path)) {
+                    dropped++;
+                } else if (busy.declared.isEmpty() && selfWritten.contains(path)
+                        && (previous.contains(path) || isLearned(scriptPath, path, now))) {
+                    // released last time, then rewritten by the run it caused: the script writes this file itself
+                    if (!isLearned(scriptPath, path, now)) learned++;
+                    learnedOutputs.computeIfAbsent(scriptPath, s -> new HashMap<>()).put(path, now + LEARNED_TTL_MS);
+                    dropped++;
+                } else {
+                    released.add(entry.getValue().submit);
+                    releasedPaths.add(path);
+                }
+            }
+            if (releasedPaths.isEmpty()) {
+                lastReleased.remove(scriptPath);
+            } else {
+                lastReleased.put(scriptPath, releasedPaths);
+            }
+            suppressed += dropped;
+        }
+        if (dropped > 0) {
+            LOG.info(logPrefix + "Suppressed " + dropped + " events caused by '" + scriptPath + "' itself" +
+                    (learned > 0 ? " (" + learned + " paths recognised as its outputs after a repeated self-write; print '" + OUTPUT_PREFIX + "<path>' per written file to avoid the extra run)." : "."));
+        }
+        if (!released.isEmpty()) {
+            LOG.debug(logPrefix + "Releasing " + released.size() + " events held while '" + scriptPath + "' ran.");
+        }
+        for (Runnable submit : released) {
+            submit.run();
+        }
+    }
+
+    /**
+     * Evidence that the busy period's runs wrote {@code path}: the event arrived while a run was active (nothing touched
+     * the file after the last run exited) and the file's mtime lies inside the run window.
+     */
+    private static boolean writtenByRun(String path, Held held, Busy busy) {
+        if (held.eventMillis > busy.lastRunEndMillis) return false;
+        try {
+            long modified = Files.getLastModifiedTime(Path.of(path)).toMillis();
+            return modified >= busy.startedMillis - MTIME_SLACK_MS && modified <= busy.lastRunEndMillis;
+        } catch (IOException | InvalidPathException e) {
+            return false; // deleted or unreadable: no evidence, release it
+        }
+    }
+
+    /** Guarded by this; drops expired entries of the script on the way. */
+    private boolean isLearned(String scriptPath, String path, long now) {
+        Map<String, Long> outputs = learnedOutputs.get(scriptPath);
+        if (outputs == null) return false;
+        for (Iterator<Long> it = outputs.values().iterator(); it.hasNext(); ) {
+            if (it.next() < now) it.remove();
+        }
+        if (outputs.isEmpty()) learnedOutputs.remove(scriptPath);
+        return outputs.containsKey(path);
+    }
+
+    /** Events not delivered because a script caused them. */
+    public synchronized long getSuppressedCount() {
+        return suppressed;
+    }
+
+    /** Forgets busy scripts, their held events and everything learned about their outputs (watcher stopped). */
+    public synchronized void clear() {
+        for (Busy busy : busyScripts.values()) {
+            if (busy.settle != null) busy.settle.cancel(false);
+        }
+        busyScripts.clear();
+        lastReleased.clear();
+        learnedOutputs.clear();
+    }
+
+    private static final class Busy {
+        final long startedMillis;
+        long lastRunEndMillis = Long.MAX_VALUE; // set when the last overlapping run exits
+        int activeRuns;
+        final Set<String> declared = new HashSet<>();
+        final LinkedHashMap<String, Held> held = new LinkedHashMap<>(); // path -> latest event
+        ScheduledFuture<?> settle;
+
+        Busy(long startedMillis) {
+            this.startedMillis = startedMillis;
+        }
+    }
+
+    private static final class Held {
+        final Runnable submit;
+        final long eventMillis;
+
+        Held(Runnable submit, long eventMillis) {
+            this.submit = submit;
+            this.eventMillis = eventMillis;
+        }
+    }
+}
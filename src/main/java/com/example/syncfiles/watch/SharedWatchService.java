@@ -0,0 +1,320 @@
+package com.example.syncfiles.watch;
+
+import com.intellij.openapi.Disposable;
+import com.intellij.openapi.application.ApplicationManager;
+import com.intellij.openapi.components.Service;
+import com.intellij.openapi.diagnostic.Logger;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * One native {@link WatchService} and one watcher thread for the whole IDE, shared by the file watchers of all open
+ * projects. Directories are registered once per real path and reference-counted by their subscribers; each subscriber
+ * gets the events under the path it subscribed with, so a directory reached through a symlink by one project and
+ * directly by another still costs a single kernel watch (inotify instances and watches are capped per user on Linux).
+ * <p>
+ * The number of kernel watches is capped by a budget: on Linux a quarter of {@code fs.inotify.max_user_watches} (the
+ * rest belongs to the IDE's own file watcher and other programs of the user), elsewhere {@link #DEFAULT_WATCH_BUDGET}.
+ * Registrations have a {@link Priority}: config files always get a watch, explicitly listed directories until the
+ * budget is used up, subtree directories of recursive entries only until {@link #getSubtreeBudget()}, which keeps room
+ * for explicit paths added later. A refused subscription throws {@link BudgetExceededException}, and so does a
+ * registration the kernel itself refuses (ENOSPC), so callers can fall back to polling.
+ * <p>
+ * Listener callbacks run on the shared watcher thread and must not block for long.
+ */
+@Service(Service.Level.APP)
+public final class SharedWatchService implements Disposable {
+    private static final Logger LOG = Logger.getInstance(SharedWatchService.class);
+
+    public static final int DEFAULT_WATCH_BUDGET = 8192;
+    private static final int MIN_WATCH_BUDGET = 256;
+    private static final Path INOTIFY_MAX_USER_WATCHES = Path.of("/proc/sys/fs/inotify/max_user_watches");
+
+    /** Order in which registrations are served when watches run short. */
+    public enum Priority {
+        /** Directory of a config file: always watched. */
+        CONFIG,
+        /** Directory listed in a watch entry, or the root of a recursive entry. */
+        EXPLICIT,
+        /** Directory found below the root of a recursive entry. */
+        SUBTREE
+    }
+
+    /** A subscription was refused because the watch budget (or the kernel's own limit) is used up. */
+    public static final class BudgetExceededException extends IOException {
+        public BudgetExceededException(String message) {
+            super(message);
+        }
+    }
+
+    public interface Listener {
+        /** Events of one key, {@code dir} being the path the listener subscribed with. */
+        void onEvents(@NotNull Path dir, @NotNull List<WatchEvent<?>> events);
+
+        /** The directory's key became invalid (directory deleted, unmounted, ...); its subscription is gone. */
+        void onDirectoryInvalid(@NotNull Path dir);
+    }
+
+    // all guarded by this
+    private WatchService watchService;
+    private Thread watcherThread;
+    private final Map<Path, Registration> byRealPath = new HashMap<>();
+    private final Map<WatchKey, Registration> byKey = new HashMap<>();
+    private final Map<Path, Path> realPathBySubscribedPath = new HashMap<>();
+    private boolean disposed = false;
+    private final int watchBudget = readWatchBudget();
+    private int kernelLimit = -1; // watch count at which the kernel last refused a registration, -1 if it never did
+
+    public static SharedWatchService getInstance() {
+        return ApplicationManager.getApplication().getService(SharedWatchService.class);
+    }
+
+    /** A quarter of the per-user inotify limit on Linux, {@link #DEFAULT_WATCH_BUDGET} where there is none to read. */
+    private static int readWatchBudget() {
+        try {
+            if (Files.isReadable(INOTIFY_MAX_USER_WATCHES)) {
+                long limit = Long.parseLong(Files.readString(INOTIFY_MAX_USER_WATCHES, StandardCharsets.US_ASCII).trim());
+                int budget = (int) Math.max(MIN_WATCH_BUDGET, Math.min(Integer.MAX_VALUE, limit / 4));
+                LOG.info("fs.inotify.max_user_watches is " + limit + "; SyncFiles uses at most " + budget + " watches.");
+                return budget;
+            }
+        } catch (IOException | NumberFormatException e) {
+            LOG.warn("Cannot read " + INOTIFY_MAX_USER_WATCHES + ": " + e.getMessage());
+        }
+        return DEFAULT_WATCH_BUDGET;
+    }
+
+    /**
+     * Subscribes {@code listener} to events in {@code dir}. Returns true if this created a new kernel watch, false if
+     * the directory (under this or another path) was already watched for some subscriber. Sharing an existing watch is
+     * never refused.
+     *
+     * @throws BudgetExceededException if a new watch would exceed what {@code priority} may use
+     */
+    public synchronized boolean subscribe(@NotNull Path dir, @NotNull Listener listener, @NotNull Priority priority) throws IOException {
+        if (disposed) throw new IOException("Watch service is disposed");
+        Path realPath = realPathBySubscribedPath.get(dir);
+        if (realPath == null) {
+            try {
+                realPath = dir.toRealPath(); // resolved once per path, never per event
+            } catch (IOException e) {
+                realPath = dir.toAbsolutePath().normalize();
+            }
+        }
+        Registration registration = byRealPath.get(realPath);
+        boolean created = false;
+        if (registration == null || !registration.key.isValid()) {
+            // The watcher thread has not yet processed an invalidated key: take over its subscribers under a new key
+            Registration stale = registration;
+            if (stale != null) {
+                byRealPath.remove(realPath);
+                byKey.remove(stale.key);
+            }
+            try {
+                registration = register(dir, realPath, priority);
+            } catch (IOException e) {
+                if (stale != null) { // keep it, so its subscribers still get onDirectoryInvalid
+                    byRealPath.put(realPath, stale);
+                    byKey.put(stale.key, stale);
+                }
+                throw e;
+            }
+            if (stale != null) {
+                registration.subscribers.putAll(stale.subscribers);
+                LOG.info("Re-registered invalid watch for '" + realPath + "' with " + stale.subscribers.size() + " subscribers.");
+            }
+            created = true;
+        }
+        realPathBySubscribedPath.put(dir, realPath);
+        registration.subscribers.computeIfAbsent(listener, l -> new HashSet<>()).add(dir);
+        return created;
+    }
+
+    /** Creates the kernel watch for {@code dir} within the budget of {@code priority}. */
+    private Registration register(Path dir, Path realPath, Priority priority) throws IOException {
+        int limit = priority == Priority.SUBTREE ? getSubtreeBudget() : priority == Priority.EXPLICIT ? watchBudget : Integer.MAX_VALUE;
+        if (byRealPath.size() >= limit) {
+            throw new BudgetExceededException("Watch budget for " + priority + " directories used up (" + byRealPath.size() + "/" + limit + ")");
+        }
+        WatchKey key;
+        try {
+            key = dir.register(ensureStarted(), StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_DELETE, StandardWatchEventKinds.ENTRY_MODIFY);
+        } catch (IOException e) {
+            // JDK on Linux: "User limit of inotify watches reached" (ENOSPC)
+            String message = e.getMessage();
+            if (message != null && message.contains("inotify watches")) {
+                kernelLimit = byRealPath.size();
+                LOG.warn("Kernel refused a new inotify watch with " + kernelLimit + " SyncFiles watches in use: " + message);
+                throw new BudgetExceededException(message);
+            }
+            throw e;
+        }
+        Registration registration = new Registration(realPath, key);
+        byRealPath.put(realPath, registration);
+        byKey.put(key, registration);
+        return registration;
+    }
+
+    /** Drops one subscription; the kernel watch is cancelled when its last subscriber is gone. */
+    public synchronized void unsubscribe(@NotNull Path dir, @NotNull Listener listener) {
+        Path realPath = realPathBySubscribedPath.get(dir);
+        Registration registration = realPath != null ? byRealPath.get(realPath) : null;
+        if (registration == null) return;
+        Set<Path> dirs = registration.subscribers.get(listener);
+        if (dirs == null || !dirs.remove(dir)) return;
+        if (dirs.isEmpty()) registration.subscribers.remove(listener);
+        if (registration.subscribers.isEmpty()) {
+            cancel(registration);
+        }
+    }
+
+    /** Drops every subscription of {@code listener} (its project closes or stops watching). */
+    public synchronized void unsubscribeAll(@NotNull Listener listener) {
+        for (Registration registration : new ArrayList<>(byRealPath.values())) {
+            if (registration.subscribers.remove(listener) != null && registration.subscribers.isEmpty()) {
+                cancel(registration);
+            }
+        }
+    }
+
+    /** Number of directories currently watched by the kernel for all projects together. */
+    public synchronized int getWatchedDirectoryCount() {
+        return byRealPath.size();
+    }
+
+    /** Maximum number of kernel watches for explicitly listed directories. */
+    public int getWatchBudget() {
+        return watchBudget;
+    }
+
+    /** Maximum number of kernel watches once subtree directories are counted; a tenth of the budget stays reserved. */
+    public int getSubtreeBudget() {
+        return watchBudget - Math.max(MIN_WATCH_BUDGET / 4, watchBudget / 10);
+    }
+
+    /** True if the kernel ran out of watches at some point, i.e. other programs use most of the user's limit. */
+    public synchronized boolean isKernelLimitReached() {
+        return kernelLimit >= 0;
+    }
+
+    private void cancel(Registration registration) {
+        registration.key.cancel();
+        byRealPath.remove(registration.realPath);
+        byKey.remove(registration.key);
+        realPathBySubscribedPath.values().removeIf(registration.realPath::equals);
+    }
+
+    private WatchService ensureStarted() throws IOException {
+        if (watchService == null) {
+            watchService = FileSystems.getDefault().newWatchService();
+            WatchService service = watchService;
+            watcherThread = new Thread(() -> run(service), "SyncFiles-NativeFileWatcher");
+            watcherThread.setDaemon(true);
+            watcherThread.start();
+            LOG.info("Shared native WatchService started.");
+        }
+        return watchService;
+    }
+
+    private void run(WatchService service) {
+        while (!Thread.currentThread().isInterrupted()) {
+            WatchKey key;
+            try {
+                key = service.take();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            } catch (ClosedWatchServiceException e) {
+                break;
+            }
+
+            List<WatchEvent<?>> events = key.pollEvents();
+            Map<Listener, Set<Path>> subscribers;
+            synchronized (this) {
+                Registration registration = byKey.get(key);
+                subscribers = registration != null ? copy(registration.subscribers) : Map.of();
+            }
+            for (Map.Entry<Listener, Set<Path>> entry : subscribers.entrySet()) {
+                for (Path dir : entry.getValue()) {
+                    try {
+                        entry.getKey().onEvents(dir, events);
+                    } catch (Throwable t) {
+                        LOG.error("Watch listener failed for '" + dir + "': " + t.getMessage(), t);
+                    }
+                }
+            }
+
+            if (!key.reset()) {
+                synchronized (this) {
+                    Registration registration = byKey.get(key);
+                    if (registration != null) {
+                        cancel(registration);
+                    }
+                }
+                for (Map.Entry<Listener, Set<Path>> entry : subscribers.entrySet()) {
+                    for (Path dir : entry.getValue()) {
+                        entry.getKey().onDirectoryInvalid(dir);
+                    }
+                }
+            }
+        }
+        LOG.info("Shared native watcher thread finished.");
+    }
+
+    private static Map<Listener, Set<Path>> copy(Map<Listener, Set<Path>> subscribers) {
+        Map<Listener, Set<Path>> copy = new HashMap<>();
+        subscribers.forEach((listener, dirs) -> copy.put(listener, Set.copyOf(dirs)));
+        return copy;
+    }
+
+    @Override
+    public void dispose() {
+        WatchService service;
+        Thread thread;
+        synchronized (this) {
+            disposed = true;
+            service = watchService;
+            thread = watcherThread;
+            watchService = null;
+            watcherThread = null;
+            byRealPath.clear();
+            byKey.clear();
+            realPathBySubscribedPath.clear();
+        }
+        if (thread != null) thread.interrupt();
+        if (service != null) {
+            try {
+                service.close();
+            } catch (IOException e) {
+                LOG.warn("Error closing shared WatchService: " + e.getMessage(), e);
+            }
+        }
+    }
+
+    private static final class Registration {
+        final Path realPath;
+        final WatchKey key;
+        final Map<Listener, Set<Path>> subscribers = new HashMap<>(); // listener -> paths it subscribed with
+
+        Registration(Path realPath, WatchKey key) {
+            this.realPath = realPath;
+            this.key = key;
+        }
+    }
+}
@@ -0,0 +1,96 @@
+package com.example.syncfiles.watch;
+
+import com.intellij.openapi.diagnostic.Logger;
+import com.intellij.openapi.vfs.LocalFileSystem;
+import org.jetbrains.annotations.NotNull;
+
+import java.nio.file.Files;
+import java.nio.file.InvalidPathException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.LinkedHashSet;
+import java.util.Set;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Coalesces the VFS refreshes requested while handling watch events. Paths are collected and, {@link #FLUSH_MS} after
+ * the first request of a burst, refreshed with one asynchronous, non-recursive
+ * {@link LocalFileSystem#refreshNioFiles} call for the deduplicated set; a path that no longer exists is replaced by its
+ * parent. Nothing runs on the EDT and no documents are saved, so an event storm costs one refresh per interval
+ * instead of one EDT round trip per file.
+ */
+public final class VfsRefreshQueue {
+    private static final Logger LOG = Logger.getInstance(VfsRefreshQueue.class);
+    public static final long FLUSH_MS = 200;
+
+    private final String logPrefix;
+    private final ScheduledExecutorService scheduler;
+    private Set<Path> pending = new LinkedHashSet<>(); // guarded by this
+    private ScheduledFuture<?> flush;                  // guarded by this, set while paths are pending
+    private boolean disposed = false;                  // guarded by this
+    private long requested = 0;                        // guarded by this
+    private long refreshed = 0;                        // guarded by this
+
+    public VfsRefreshQueue(@NotNull String projectName, @NotNull ScheduledExecutorService scheduler) {
+        this.logPrefix = "[" + projectName + "] ";
+        this.scheduler = scheduler;
+    }
+
+    /** Queues {@code path} (absolute) for the next batched refresh; invalid paths are ignored. */
+    public void request(@NotNull String path) {
+        try {
+            request(Paths.get(path));
+        } catch (InvalidPathException e) {
+            LOG.debug(logPrefix + "VFS Refresh: ignoring invalid path: " + path);
+        }
+    }
+
+    public synchronized void request(@NotNull Path path) {
+        if (disposed) return;
+        requested++;
+        pending.add(path);
+        if (flush == null) {
+            flush = scheduler.schedule(this::flush, FLUSH_MS, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private void flush() {
+        Set<Path> paths;
+        synchronized (this) {
+            paths = pending;
+            pending = new LinkedHashSet<>();
+            flush = null;
+            if (disposed || paths.isEmpty()) return;
+        }
+        Set<Path> toRefresh = new LinkedHashSet<>(paths.size() * 2);
+        for (Path path : paths) {
+            Path parent = path.getParent();
+            toRefresh.add(Files.exists(path) || parent == null ? path : parent);
+        }
+        synchronized (this) {
+            refreshed += toRefresh.size();
+        }
+        LOG.debug(logPrefix + "VFS Refresh: " + toRefresh.size() + " paths in one batch (" + paths.size() + " requested).");
+        LocalFileSystem.getInstance().refreshNioFiles(toRefresh, true, false, null);
+    }
+
+    /** Refresh requests received, counting every duplicate. */
+    public synchronized long getRequestedCount() {
+        return requested;
+    }
+
+    /** Paths actually handed to the VFS after deduplication. */
+    public synchronized long getRefreshedCount() {
+        return refreshed;
+    }
+
+    /** Drops pending paths; later requests are ignored. */
+    public synchronized void dispose() {
+        disposed = true;
+        if (flush != null) flush.cancel(false);
+        flush = null;
+        pending.clear();
+    }
+}
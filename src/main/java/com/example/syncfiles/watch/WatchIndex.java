@@ -0,0 +1,122 @@
+package com.example.syncfiles.watch;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Immutable lookup structure for matching native watch events against the configured watches. Built once per
+ * reconfiguration from pre-parsed paths and published through a volatile field, so matching an event needs no lock
+ * and no file system call: one hash lookup for the exact path, one for the parent directory, and one per ancestor for
+ * recursive directory watches.
+ *
+ * @param <T> the watch description handed back on a match
+ */
+public final class WatchIndex<T> {
+    private static final WatchIndex<?> EMPTY = new Builder<>().build();
+
+    private final Map<Path, List<T>> exact;       // watched path itself (files, and directories replaced/deleted as a whole)
+    private final Map<Path, List<T>> children;    // directory watch -> direct children
+    private final Map<Path, List<T>> descendants; // recursive directory watch -> everything below
+    private final Set<String> configPaths;        // plugin config files (compared as normalized strings)
+
+    private WatchIndex(Builder<T> builder) {
+        this.exact = freeze(builder.exact);
+        this.children = freeze(builder.children);
+        this.descendants = freeze(builder.descendants);
+        this.configPaths = Set.copyOf(builder.configPaths);
+    }
+
+    @SuppressWarnings("unchecked")
+    public static <T> WatchIndex<T> empty() {
+        return (WatchIndex<T>) EMPTY;
+    }
+
+    public static <T> Builder<T> builder() {
+        return new Builder<>();
+    }
+
+    /** All watches an event on {@code affected} (absolute, normalized) belongs to; each watch at most once. */
+    public @NotNull List<T> match(@NotNull Path affected) {
+        List<T> result = null;
+        result = addAll(result, exact.get(affected));
+        Path parent = affected.getParent();
+        if (parent != null) {
+            result = addAll(result, children.get(parent));
+        }
+        if (!descendants.isEmpty()) {
+            for (Path ancestor = parent; ancestor != null; ancestor = ancestor.getParent()) {
+                result = addAll(result, descendants.get(ancestor));
+            }
+        }
+        return result != null ? result : Collections.emptyList();
+    }
+
+    /** True if {@code dir} is a recursively watched directory or lies below one. */
+    public boolean isUnderRecursiveWatch(@NotNull Path dir) {
+        if (descendants.isEmpty()) return false;
+        for (Path ancestor = dir; ancestor != null; ancestor = ancestor.getParent()) {
+            if (descendants.containsKey(ancestor)) return true;
+        }
+        return false;
+    }
+
+    public boolean isConfigPath(@NotNull String normalizedPath) {
+        return configPaths.contains(normalizedPath);
+    }
+
+    public boolean isEmpty() {
+        return exact.isEmpty() && configPaths.isEmpty();
+    }
+
+    private static <T> List<T> addAll(List<T> result, List<T> matches) {
+        if (matches == null) return result;
+        if (result == null) return new ArrayList<>(matches);
+        result.addAll(matches);
+        return result;
+    }
+
+    private static <T> Map<Path, List<T>> freeze(Map<Path, List<T>> map) {
+        Map<Path, List<T>> copy = new HashMap<>(map.size() * 2);
+        map.forEach((path, list) -> copy.put(path, List.copyOf(list)));
+        return Collections.unmodifiableMap(copy);
+    }
+
+    public static final class Builder<T> {
+        private final Map<Path, List<T>> exact = new HashMap<>();
+        private final Map<Path, List<T>> children = new HashMap<>();
+        private final Map<Path, List<T>> descendants = new HashMap<>();
+        private final Set<String> configPaths = new HashSet<>();
+
+        private Builder() {
+        }
+
+        /**
+         * Adds a watch on {@code path}. For a directory watch events on its direct children (or, if
+         * {@code recursive}, on anything below it) match as well.
+         */
+        public Builder<T> add(@NotNull Path path, @NotNull T watch, boolean directory, boolean recursive) {
+            exact.computeIfAbsent(path, k -> new ArrayList<>()).add(watch);
+            if (directory) {
+                (recursive ? descendants : children).computeIfAbsent(path, k -> new ArrayList<>()).add(watch);
+            }
+            return this;
+        }
+
+        public Builder<T> addConfigPath(@NotNull String normalizedPath) {
+            configPaths.add(normalizedPath);
+            return this;
+        }
+
+        public WatchIndex<T> build() {
+            return new WatchIndex<>(this);
+        }
+    }
+}
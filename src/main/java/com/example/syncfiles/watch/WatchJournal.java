@@ -0,0 +1,256 @@
+package com.example.syncfiles.watch;
+
+import com.intellij.openapi.diagnostic.Logger;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.InvalidPathException;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Persists the {@link DirectorySnapshots} of a project across IDE sessions, so that changes made while the watcher was
+ * not running (IDE closed, project still opening) can be replayed when it starts.
+ * <p>
+ * Two files in a per-project directory outside the project (the IDE system directory): {@link #STATE_FILE} holds all listings as of the last {@link #save}, and
+ * {@link #JOURNAL_FILE} is an append-only log of every listing change since then (one entry re-read, one directory
+ * listed or dropped). The journal is folded into a new state file when it grows past {@link #MAX_JOURNAL_BYTES} and
+ * whenever the watcher stops. Reading tolerates a torn last record, as left by a crash.
+ * <p>
+ * Entries are stored without their file key, so after a restart changes are told apart by size and mtime alone.
+ */
+public final class WatchJournal {
+    private static final Logger LOG = Logger.getInstance(WatchJournal.class);
+    public static final String STATE_FILE = "syncFilesWatchState.bin";
+    public static final String JOURNAL_FILE = "syncFilesWatchJournal.bin";
+    public static final long MAX_JOURNAL_BYTES = 8L * 1024 * 1024;
+
+    private static final int STATE_MAGIC = 0x53465331;   // "SFS1"
+    private static final int JOURNAL_MAGIC = 0x53464A31; // "SFJ1"
+    private static final byte OP_ENTRY = 1;
+    private static final byte OP_REMOVE = 2;
+    private static final byte OP_LISTING = 3;
+    private static final byte OP_FORGET = 4;
+
+    private final String logPrefix;
+    private final Path stateDir;
+    private final DirectorySnapshots snapshots;
+    private DataOutputStream journal; // open between save() and close(), guarded by this
+
+    /**
+     * {@code stateDir} must not be watched, or every append raises an event that is journaled again; events in it are
+     * ignored all the same. Null or missing disables the journal.
+     */
+    public WatchJournal(@NotNull String projectName, @Nullable Path stateDir, @NotNull DirectorySnapshots snapshots) {
+        this.logPrefix = "[" + projectName + "] ";
+        this.stateDir = stateDir != null && Files.isDirectory(stateDir) ? stateDir : null;
+        this.snapshots = snapshots;
+    }
+
+    /**
+     * Reads the listings persisted by the last session and compares them with what {@link DirectorySnapshots} records
+     * now. Only directories recorded in both are compared: a directory that was not watched before has no history, and
+     * one that is no longer watched does not matter. Call before {@link #save}, which replaces the persisted state.
+     */
+    public synchronized @NotNull Map<Path, List<DirectorySnapshots.Change>> catchUp() {
+        Map<Path, List<DirectorySnapshots.Change>> missed = new LinkedHashMap<>();
+        if (stateDir == null) return missed;
+        Map<Path, Map<Path, DirectorySnapshots.Entry>> persisted = readPersisted();
+        for (Map.Entry<Path, Map<Path, DirectorySnapshots.Entry>> dir : persisted.entrySet()) {
+            List<DirectorySnapshots.Change> changes = snapshots.changesSince(dir.getKey(), dir.getValue());
+            if (!changes.isEmpty()) missed.put(dir.getKey(), changes);
+        }
+        return missed;
+    }
+
+    /** Writes all current listings as the new state and starts an empty journal. */
+    public synchronized void save() {
+        if (stateDir == null) return;
+        closeJournal();
+        Path state = stateDir.resolve(STATE_FILE);
+        Path temp = stateDir.resolve(STATE_FILE + ".tmp");
+        try {
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp)))) {
+                out.writeInt(STATE_MAGIC);
+                Map<Path, Map<Path, DirectorySnapshots.Entry>> listings = new HashMap<>(snapshots.listings());
+                out.writeInt(listings.size());
+                for (Map.Entry<Path, Map<Path, DirectorySnapshots.Entry>> dir : listings.entrySet()) {
+                    out.writeUTF(dir.getKey().toString());
+                    writeListing(out, dir.getValue());
+                }
+            }
+            Files.move(temp, state, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            journal = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(stateDir.resolve(JOURNAL_FILE),
+                    StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)));
+            journal.writeInt(JOURNAL_MAGIC);
+            journal.flush();
+        } catch (IOException e) {
+            LOG.warn(logPrefix + "Cannot save the watch state to '" + stateDir + "': " + e.getMessage());
+            closeJournal();
+        }
+    }
+
+    /** Saves the current listings and stops journaling until the next {@link #save}. */
+    public synchronized void close() {
+        if (journal == null) return;
+        save();
+        closeJournal();
+    }
+
+    /** Logs the recorded state of {@code dir/name} after {@link DirectorySnapshots#update}. */
+    public synchronized void record(@NotNull Path dir, @NotNull Path name) {
+        if (journal == null || dir.equals(stateDir)) return;
+        DirectorySnapshots.Entry entry = snapshots.get(dir, name);
+        write(out -> {
+            out.writeByte(entry != null ? OP_ENTRY : OP_REMOVE);
+            out.writeUTF(dir.toString());
+            out.writeUTF(name.toString());
+            if (entry != null) writeEntry(out, entry);
+        });
+    }
+
+    /** Logs the whole listing of {@code dir} after it was taken or re-read. */
+    public synchronized void recordDirectory(@NotNull Path dir) {
+        if (journal == null || dir.equals(stateDir)) return;
+        Map<Path, DirectorySnapshots.Entry> listing = snapshots.listings().get(dir);
+        write(out -> {
+            out.writeByte(listing != null ? OP_LISTING : OP_FORGET);
+            out.writeUTF(dir.toString());
+            if (listing != null) writeListing(out, listing);
+        });
+    }
+
+    /** Logs that {@code dir} is no longer watched. */
+    public synchronized void forgetDirectory(@NotNull Path dir) {
+        if (journal == null) return;
+        write(out -> {
+            out.writeByte(OP_FORGET);
+            out.writeUTF(dir.toString());
+        });
+    }
+
+    private interface Record {
+        void writeTo(DataOutputStream out) throws IOException;
+    }
+
+    private void write(Record record) {
+        try {
+            record.writeTo(journal);
+            journal.flush();
+        } catch (IOException e) {
+            LOG.warn(logPrefix + "Cannot append to the watch journal, stopping it until the next save: " + e.getMessage());
+            closeJournal();
+            return;
+        }
+        if (journal.size() > MAX_JOURNAL_BYTES) {
+            save(); // fold the journal into a new state file
+        }
+    }
+
+    private void closeJournal() {
+        if (journal == null) return;
+        try {
+            journal.close();
+        } catch (IOException e) {
+            LOG.debug(logPrefix + "Closing the watch journal failed: " + e.getMessage());
+        }
+        journal = null;
+    }
+
+    private Map<Path, Map<Path, DirectorySnapshots.Entry>> readPersisted() {
+        Map<Path, Map<Path, DirectorySnapshots.Entry>> listings = new HashMap<>();
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(stateDir.resolve(STATE_FILE))))) {
+            if (in.readInt() != STATE_MAGIC) {
+                LOG.warn(logPrefix + "Ignoring watch state of an unknown format.");
+                return listings;
+            }
+            int dirs = in.readInt();
+            for (int i = 0; i < dirs; i++) {
+                Path dir = Path.of(in.readUTF());
+                listings.put(dir, readListing(in));
+            }
+        } catch (NoSuchFileException e) {
+            return listings; // first session with the journal
+        } catch (IOException | InvalidPathException e) {
+            LOG.warn(logPrefix + "Cannot read the watch state, no catch-up this time: " + e.getMessage());
+            return new HashMap<>();
+        }
+
+        int applied = 0;
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(stateDir.resolve(JOURNAL_FILE))))) {
+            if (in.readInt() != JOURNAL_MAGIC) return listings;
+            while (true) {
+                byte op = in.readByte();
+                Path dir = Path.of(in.readUTF());
+                switch (op) {
+                    case OP_ENTRY -> {
+                        Path name = Path.of(in.readUTF());
+                        DirectorySnapshots.Entry entry = readEntry(in);
+                        Map<Path, DirectorySnapshots.Entry> listing = listings.get(dir);
+                        if (listing != null) listing.put(name, entry);
+                    }
+                    case OP_REMOVE -> {
+                        Path name = Path.of(in.readUTF());
+                        Map<Path, DirectorySnapshots.Entry> listing = listings.get(dir);
+                        if (listing != null) listing.remove(name);
+                    }
+                    case OP_LISTING -> listings.put(dir, readListing(in));
+                    case OP_FORGET -> listings.remove(dir);
+                    default -> throw new IOException("unknown journal record " + op);
+                }
+                applied++;
+            }
+        } catch (NoSuchFileException | EOFException e) {
+            // no journal, or its end (possibly a record torn by a crash)
+        } catch (IOException | InvalidPathException e) {
+            LOG.warn(logPrefix + "Watch journal damaged after " + applied + " records, using what was read: " + e.getMessage());
+        }
+        LOG.debug(logPrefix + "Read watch state of " + listings.size() + " directories and " + applied + " journal records.");
+        return listings;
+    }
+
+    private static void writeListing(DataOutputStream out, Map<Path, DirectorySnapshots.Entry> listing) throws IOException {
+        Map<Path, DirectorySnapshots.Entry> copy = new HashMap<>(listing);
+        out.writeInt(copy.size());
+        for (Map.Entry<Path, DirectorySnapshots.Entry> entry : copy.entrySet()) {
+            out.writeUTF(entry.getKey().toString());
+            writeEntry(out, entry.getValue());
+        }
+    }
+
+    private static Map<Path, DirectorySnapshots.Entry> readListing(DataInputStream in) throws IOException {
+        int count = in.readInt();
+        Map<Path, DirectorySnapshots.Entry> listing = new HashMap<>(Math.min(count, DirectorySnapshots.MAX_ENTRIES) * 2);
+        for (int i = 0; i < count; i++) {
+            Path name = Path.of(in.readUTF());
+            listing.put(name, readEntry(in));
+        }
+        return listing;
+    }
+
+    private static void writeEntry(DataOutputStream out, DirectorySnapshots.Entry entry) throws IOException {
+        out.writeLong(entry.size);
+        out.writeLong(entry.modifiedMillis);
+        out.writeBoolean(entry.directory);
+    }
+
+    private static DirectorySnapshots.Entry readEntry(DataInputStream in) throws IOException {
+        long size = in.readLong();
+        long modified = in.readLong();
+        boolean directory = in.readBoolean();
+        return new DirectorySnapshots.Entry(size, modified, null, directory);
+    }
+}